@@ -2,50 +2,99 @@ package uk.co.compendiumdev.thingifier.core;
 
 import uk.co.compendiumdev.thingifier.core.domain.datapopulator.DataPopulator;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.Cardinality;
-import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipDefinition;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipVector;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.indexes.DefinitionNames;
+import uk.co.compendiumdev.thingifier.core.indexes.GuidDirectory;
+import uk.co.compendiumdev.thingifier.core.journal.Journal;
+import uk.co.compendiumdev.thingifier.core.journal.JournalBatch;
+import uk.co.compendiumdev.thingifier.core.journal.JournalEntry;
+import uk.co.compendiumdev.thingifier.core.journal.JournalReplay;
+import uk.co.compendiumdev.thingifier.core.query.QueryPlans;
+import uk.co.compendiumdev.thingifier.core.reporting.DeletionReport;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/*
+    Reading while other requests change the model:
+
+    - the values of an instance are read from one published version, an
+      amend is seen all at once or not at all
+    - an instance is added with the values it was created with
+    - relationships are read from a copy, taken under the instance's
+      relationships monitor, so a read never fails part way
+
+    There is no version of the whole model, a request which changes several
+    instances e.g. POST /projects/:id/tasks, creating the todo then relating
+    it to the project, is seen one step at a time.
+ */
 public class EntityRelModel {
 
     private DataPopulator initialDataGenerator;
     private final ConcurrentHashMap<String, Thing> things;
     private final ConcurrentHashMap<String, RelationshipDefinition> relationships;
+    private final GuidDirectory guidDirectory;
+    private volatile Journal journal;
+    // built when first needed after things or relationships are defined
+    private volatile DefinitionNames definitionNames;
+    private final QueryPlans queryPlans;
 
     public EntityRelModel(){
         things = new ConcurrentHashMap<String, Thing>();
         relationships = new ConcurrentHashMap<String, RelationshipDefinition>();
+        guidDirectory = new GuidDirectory();
+        definitionNames = null;
+        queryPlans = new QueryPlans(this);
         initialDataGenerator=null; // todo consider having a default random data generator
     }
 
     public Thing createThing(final String thingName, final String pluralName) {
         Thing aThing = Thing.create(thingName, pluralName);
+        aThing.useGuidDirectory(guidDirectory);
+        if(journal!=null){
+            aThing.useJournal(journal);
+        }
         things.put(thingName, aThing);
+        definitionNames = null;
         return aThing;
     }
 
+    public DefinitionNames getDefinitionNames() {
+        DefinitionNames names = definitionNames;
+        if(names==null){
+            names = new DefinitionNames(things.values(), relationships);
+            definitionNames = names;
+        }
+        return names;
+    }
+
+    public QueryPlans getQueryPlans() {
+        return queryPlans;
+    }
+
     public List<Thing> getThings() {
         return new ArrayList<Thing>(things.values());
     }
 
     public boolean hasThingNamed(final String aName) {
-        return things.containsKey(aName);
+        return getDefinitionNames().getThingNamed(aName)!=null;
     }
 
     public ThingInstance findThingInstanceByGuid(final String thingGUID) {
-        for (Thing aThing : things.values()) {
-            ThingInstance instance = aThing.findInstanceByField(FieldValue.is("guid", thingGUID));
-            if (instance != null) {
-                return instance;
-            }
-        }
-        return null;
+        return guidDirectory.findInstance(thingGUID);
+    }
+
+    public Thing findThingForInstanceGuid(final String thingGUID) {
+        return guidDirectory.findThing(thingGUID);
     }
 
     public Thing getThingNamed(final String aName) {
@@ -58,12 +107,7 @@ public class EntityRelModel {
     }
 
     public Thing getThingWithPluralNamed(final String term) {
-        for (Thing aThing : things.values()) {
-            if (aThing.definition().getPlural().equalsIgnoreCase(term)) {
-                return aThing;
-            }
-        }
-        return null;
+        return getDefinitionNames().getThingWithPluralNamed(term);
     }
 
     public Thing getThingNamedSingularOrPlural(final String term) {
@@ -77,22 +121,56 @@ public class EntityRelModel {
         return thing;
     }
 
-    public void deleteThing(final ThingInstance aThingInstance) {
-        // delete a thing and all related things with mandatory relationships
+    /*
+        Delete a thing and all related things with mandatory relationships.
+
+        The things to delete are found with a worklist rather than by recursion,
+        each instance is visited once so cycles and deep chains of mandatory
+        relationships are safe.
+
+        The dependents of an instance are those its relationships had when it
+        was deleted, found under the instance locks after it was marked deleted,
+        so a dependent connected while the delete runs is deleted with it, and
+        nothing can be connected afterwards.
+     */
+    public DeletionReport deleteThing(final ThingInstance aThingInstance) {
+        final long startTime = System.nanoTime();
+        final DeletionReport report = new DeletionReport();
+
         final Thing aThing = getThingNamed(aThingInstance.getEntity().getName());
 
         if(aThing==null){
             // if it was a hanging thing, not managed by EntityRelModel
-            return;
+            return report;
+        }
+
+        if(aThing.findInstanceByGUID(aThingInstance.getGUID())==null){
+            // report the missing instance the way Thing does
+            aThing.deleteInstance(aThingInstance.getGUID());
         }
 
         // we may also have to delete things which are mandatorily related i.e. can't exist on their own
-        final List<ThingInstance> otherThingsToDelete = aThing.deleteInstance(aThingInstance.getGUID());
+        final Set<ThingInstance> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        final Deque<ThingInstance> worklist = new ArrayDeque<>();
+        visited.add(aThingInstance);
+        worklist.add(aThingInstance);
+
+        while(!worklist.isEmpty()){
+            final ThingInstance deleteMe = worklist.poll();
+            final Thing owner = getThingNamed(deleteMe.getEntity().getName());
+            if(owner==null || owner.findInstanceByGUID(deleteMe.getGUID())!=deleteMe){
+                continue;
+            }
 
-        // TODO: Warning recursion with no 'cut off' if any cyclical relationships then this might fail
-        for(ThingInstance deleteMe : otherThingsToDelete){
-            deleteThing(deleteMe);
+            for(ThingInstance dependent : owner.deleteInstance(deleteMe.getGUID())){
+                if(visited.add(dependent)){
+                    worklist.add(dependent);
+                }
+            }
+            report.addDeleted(deleteMe);
         }
+
+        return report.setDurationNanos(System.nanoTime()-startTime);
     }
 
     public List<String> getThingNames() {
@@ -102,12 +180,119 @@ public class EntityRelModel {
     }
 
     public void clearAllData() {
-        // clear all instance data
+        clearAllData(false);
+    }
+
+    /*
+        Clear all instance data without cascading deletes, every instance is
+        going so their relationships go with them
+     */
+    public void clearAllData(final boolean resetIds) {
+        // the journal from the clear on has all the data, so the journal does not grow with each clear
+        final long cleared = startJournalSegment();
+        JournalBatch.recordTogether(() -> {
+            guidDirectory.clear();
+            for (Thing aThing : things.values()) {
+                aThing.clearInstances(resetIds);
+            }
+        });
+        dropJournalSegmentsBefore(cleared);
+    }
+
+    /*
+        Rebuild the data from the journal, or when the journal is empty start
+        it with the data we already have, then record every change to it.
+
+        Returns the number of journal entries replayed.
+     */
+    public int useJournal(final Journal aJournal) {
+        return useJournal(aJournal, 0);
+    }
+
+    /*
+        As useJournal, when the data was loaded from a snapshot taken at a
+        segment of the journal only the entries from that segment on are
+        replayed onto the data. A snapshot taken before the journal was used
+        is at segment 0, the journal replaces its data.
+
+        The snapshot may have been copied while changes were made, so it can already
+        have some of the changes replayed, and until they all are an instance
+        can hold a unique value another instance held first. The indexes are
+        built once the replay is done.
+     */
+    public int useJournal(final Journal aJournal, final long snapshotSegment) {
+        final JournalReplay replay = new JournalReplay(this);
+
+        if(snapshotSegment>0){
+            try{
+                aJournal.readFrom(snapshotSegment, entry -> {
+                    if(replay.countReplayed()==0){
+                        for (Thing aThing : things.values()) {
+                            aThing.suspendIndexes();
+                        }
+                    }
+                    replay.replay(entry);
+                });
+            }finally{
+                for (Thing aThing : things.values()) {
+                    aThing.resumeIndexes();
+                }
+            }
+        }else{
+            aJournal.readFrom(0, entry -> {
+                if(replay.countReplayed()==0){
+                    clearAllData(true);
+                }
+                replay.replay(entry);
+            });
+
+            if(replay.countReplayed()==0){
+                recordCurrentData(aJournal);
+            }
+        }
+
+        journal = aJournal;
+        for (Thing aThing : things.values()) {
+            aThing.useJournal(aJournal);
+        }
+
+        return replay.countReplayed();
+    }
+
+    private void recordCurrentData(final Journal aJournal) {
+        final List<JournalEntry> currentData = new ArrayList<>();
+        for (Thing aThing : things.values()) {
+            for(ThingInstance instance : aThing.getInstances()){
+                currentData.add(aThing.creationEntryFor(instance));
+            }
+        }
+        // every instance exists before any relationship is made
         for (Thing aThing : things.values()) {
-            for(ThingInstance instance : aThing.getInstances()) {
-                deleteThing(instance);
+            for(ThingInstance instance : aThing.getInstances()){
+                currentData.addAll(aThing.connectionEntriesFor(instance));
             }
         }
+        aJournal.recordAll(currentData);
+    }
+
+    /*
+        the changes made from now on are in a new segment of the journal,
+        returns its number, 0 when there is no journal
+     */
+    public long startJournalSegment() {
+        final Journal recordTo = journal;
+        return recordTo==null ? 0 : recordTo.startSegment();
+    }
+
+    /*
+        the journal segments before this one are no longer needed,
+        a snapshot taken at the segment is durable
+     */
+    public void dropJournalSegmentsBefore(final long segment) {
+        final Journal recordTo = journal;
+        if(recordTo!=null && segment>0){
+            recordTo.dropSegmentsBefore(segment);
+        }
     }
 
     // data generation
@@ -136,24 +321,13 @@ public class EntityRelModel {
                                 to,
                                 of));
         relationships.put(named, relationship);
+        // the reversed name is given after the relationship is defined
+        relationship.setReversalListener(() -> definitionNames = null);
+        definitionNames = null;
         return relationship;
     }
 
     public boolean hasRelationshipNamed(final String relationshipName) {
-        if (relationships.containsKey(relationshipName.toLowerCase())) {
-            return true;
-        }
-
-        // perhaps it is a reverse relationship?
-        for (RelationshipDefinition defn : relationships.values()) {
-            if (defn.isTwoWay()) {
-                if (defn.getReversedRelationship().getName().equalsIgnoreCase(relationshipName)) {
-                    return true;
-                }
-            }
-
-        }
-
-        return false;
+        return getDefinitionNames().isRelationshipNamed(relationshipName);
     }
 }
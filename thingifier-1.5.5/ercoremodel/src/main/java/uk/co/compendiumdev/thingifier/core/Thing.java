@@ -3,21 +3,45 @@ package uk.co.compendiumdev.thingifier.core;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.OffHeapTextStore;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipVector;
+import uk.co.compendiumdev.thingifier.core.domain.instances.FieldChange;
+import uk.co.compendiumdev.thingifier.core.domain.instances.InstanceFieldsListener;
+import uk.co.compendiumdev.thingifier.core.domain.instances.InstanceGeneration;
+import uk.co.compendiumdev.thingifier.core.domain.instances.InstanceLocks;
+import uk.co.compendiumdev.thingifier.core.domain.instances.RelationshipInstance;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstanceRelationshipsListener;
+import uk.co.compendiumdev.thingifier.core.indexes.GuidDirectory;
+import uk.co.compendiumdev.thingifier.core.indexes.InstanceIndexes;
+import uk.co.compendiumdev.thingifier.core.indexes.NumericRange;
+import uk.co.compendiumdev.thingifier.core.journal.Journal;
+import uk.co.compendiumdev.thingifier.core.journal.JournalBatch;
+import uk.co.compendiumdev.thingifier.core.journal.JournalEntry;
+import uk.co.compendiumdev.thingifier.core.reporting.ValidationReport;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 
 final public class Thing {
 
     private final ThingDefinition definition;
-    private Map<String, ThingInstance> instances = new ConcurrentHashMap<>();
+    private final Map<String, ThingInstance> instances = new ConcurrentHashMap<>();
+    private final InstanceIndexes indexes;
+    // when managed by an EntityRelModel, the model wide guid lookup
+    private GuidDirectory guidDirectory;
+    // when the model is persisted, where the changes are recorded
+    private volatile Journal journal;
+    // the instances added since we were last cleared
+    private volatile InstanceGeneration generation = new InstanceGeneration();
 
     private Thing(ThingDefinition thingDefinition) {
         this.definition = thingDefinition;
+        this.indexes = new InstanceIndexes(definition, instances.values());
     }
 
     public static Thing create(String name, String plural) {
@@ -25,6 +49,17 @@ final public class Thing {
         return thing;
     }
 
+    void useGuidDirectory(final GuidDirectory directory) {
+        this.guidDirectory = directory;
+        for(ThingInstance instance : instances.values()){
+            directory.add(instance.getGUID(), this, instance);
+        }
+    }
+
+    void useJournal(final Journal aJournal) {
+        this.journal = aJournal;
+    }
+
     public ThingInstance createInstance() {
         return ThingInstance.create(definition);
     }
@@ -33,11 +68,339 @@ final public class Thing {
         return ThingInstance.create(definition, guid);
     }
 
+    /*
+        Adding an instance which has the guid, or any unique field value, of
+        another instance throws an IllegalArgumentException and the instance is not added
+
+        A change the journal refuses is not made. A change the journal accepted
+        is made, and can be seen, before it is durable, so when the journal then
+        fails to write it the change is kept, later changes may depend on it,
+        and the UncheckedIOException from the journal is thrown. The journal
+        refuses every change after that, see FileJournal.
+     */
     public Thing addInstance(ThingInstance instance) {
-        instances.put(instance.getGUID(), instance);
+        // the creation is durable once the instance is no longer locked
+        return JournalBatch.recordTogether(() -> add(instance));
+    }
+
+    private Thing add(final ThingInstance instance) {
+        final String guid = instance.getGUID();
+        final ThingInstance existing = instances.putIfAbsent(guid, instance);
+        if(existing!=null && existing!=instance){
+            throw new IllegalArgumentException(
+                    String.format("Found Existing item with %s of %s", "guid", guid));
+        }
+
+        try{
+            indexes.added(instance);
+        }catch(IllegalArgumentException e){
+            instances.remove(guid, instance);
+            throw e;
+        }
+
+        // once we are cleared, changes to the instance must not reach our indexes or journal
+        final InstanceGeneration addedIn = generation;
+
+        // no change to the values can be made, or recorded, before the creation is recorded
+        synchronized (instance.getFields()) {
+            try{
+                record(() -> creationEntryFor(instance));
+            }catch(RuntimeException e){
+                // an instance the journal refused is not added
+                indexes.removed(instance);
+                instances.remove(guid, instance);
+                throw e;
+            }
+            instance.getFields().setListener(new FieldsIndexer(instance, addedIn));
+        }
+        instance.getRelationships().setListener(new RelationshipsJournaller(instance, addedIn));
+        instance.setGeneration(addedIn);
+        instance.setDeleted(false);
+
+        if(guidDirectory!=null){
+            guidDirectory.add(guid, this, instance);
+        }
         return this;
     }
 
+    /*
+        Add the instances restored from a snapshot, before the model is used.
+        Nothing else can see them yet, so they are not locked, checked or
+        journalled one at a time, and the indexes are built once from all of them.
+     */
+    public void restoreInstances(final List<ThingInstance> restored) {
+        final InstanceGeneration addedIn = generation;
+        for(ThingInstance instance : restored){
+            final String guid = instance.getGUID();
+            if(instances.putIfAbsent(guid, instance)!=null){
+                throw new IllegalArgumentException(
+                        String.format("Found Existing item with %s of %s", "guid", guid));
+            }
+            instance.getFields().setListener(new FieldsIndexer(instance, addedIn));
+            instance.getRelationships().setListener(new RelationshipsJournaller(instance, addedIn));
+            instance.setGeneration(addedIn);
+            instance.setDeleted(false);
+            if(guidDirectory!=null){
+                guidDirectory.add(guid, this, instance);
+            }
+        }
+        indexes.clear();
+        indexes.build();
+    }
+
+    // unique values are not checked, and the indexes not kept, until they are resumed
+    void suspendIndexes() {
+        indexes.suspend();
+    }
+
+    void resumeIndexes() {
+        indexes.resume();
+    }
+
+    // keep the indexes in step with the values of the instances we manage
+    private void fieldValueChanging(final ThingInstance instance, final Field field,
+                                    final FieldValue from, final FieldValue to) {
+
+        indexes.changing(instance, field, from, to);
+
+        if(field.getName().equalsIgnoreCase("guid") && from!=null && to!=null){
+            changeGuid(instance, from.asString(), to.asString());
+        }
+
+        // object values are not journalled, the guid is still the guid before the change
+        if(to==null || to.asObject()==null){
+            try{
+                record(() -> amendEntryFor(instance.getGUID(), field, to));
+            }catch(RuntimeException e){
+                // a change which is not journalled is not made
+                indexes.changing(instance, field, to, from);
+                if(field.getName().equalsIgnoreCase("guid") && from!=null && to!=null){
+                    changeGuid(instance, to.asString(), from.asString());
+                }
+                throw e;
+            }
+        }
+
+        compactStoredTextOf(field);
+    }
+
+    /*
+        the changes are all indexed and journalled, or none of them are
+     */
+    private void fieldValuesChanging(final ThingInstance instance, final List<FieldChange> changes) {
+
+        // the values being changed are visible to us, so the guid before the change is found from the changes
+        String guid = instance.getGUID();
+        FieldChange guidChange = null;
+        for(FieldChange change : changes){
+            if(change.getField().getName().equalsIgnoreCase("guid") &&
+                    change.getFrom()!=null && change.getTo()!=null){
+                guidChange = change;
+                guid = change.getFrom().asString();
+            }
+        }
+
+        if(guidChange!=null){
+            changeGuid(instance, guid, guidChange.getTo().asString());
+        }
+
+        try{
+            indexes.changingTogether(instance, changes);
+        }catch(RuntimeException e){
+            if(guidChange!=null){
+                changeGuid(instance, guidChange.getTo().asString(), guid);
+            }
+            throw e;
+        }
+
+        for(FieldChange change : changes){
+            compactStoredTextOf(change.getField());
+        }
+
+        final Journal recordTo = journal;
+        if(recordTo==null){
+            return;
+        }
+
+        final List<JournalEntry> entries = new ArrayList<>();
+        for(FieldChange change : changes){
+            final FieldValue to = change.getTo();
+            if(to==null || to.asObject()==null){
+                entries.add(amendEntryFor(guid, change.getField(), to));
+            }
+            if(change==guidChange){
+                guid = to.asString();
+            }
+        }
+
+        try{
+            JournalBatch.queued(recordTo.enqueue(entries));
+        }catch(RuntimeException e){
+            // a change which is not journalled is not made
+            final List<FieldChange> undo = new ArrayList<>();
+            for(FieldChange change : changes){
+                undo.add(change.undone());
+            }
+            indexes.changingTogether(instance, undo);
+            if(guidChange!=null){
+                changeGuid(instance, guidChange.getTo().asString(), guidChange.getFrom().asString());
+            }
+            throw e;
+        }
+    }
+
+    /*
+        Once the store of a field held off heap has had more text stored than was
+        in use when it was last compacted, the text of the values of our instances
+        is moved to new chunks, so the chunks of replaced text can be freed. The
+        store limits how often this happens, so the text moved is in proportion
+        to the text stored. Nothing is locked, a value changed meanwhile is kept.
+     */
+    private void compactStoredTextOf(final Field field) {
+        final OffHeapTextStore store = field.getOffHeapStore();
+        if(store==null || !store.startCompacting()){
+            return;
+        }
+        try{
+            for(ThingInstance instance : instances.values()){
+                final FieldValue value = instance.getFields().getAssignedValue(field);
+                final FieldValue moved = store.moved(value);
+                if(moved!=value){
+                    instance.getFields().replaceValue(field, value, moved);
+                }
+            }
+        }finally{
+            store.compacted();
+        }
+    }
+
+    private JournalEntry amendEntryFor(final String guid, final Field field, final FieldValue to) {
+        return JournalEntry.amend(definition.getName(), guid,
+                                    field.getName(), to==null ? null : to.asString());
+    }
+
+    private final class FieldsIndexer implements InstanceFieldsListener {
+
+        private final ThingInstance instance;
+        private final InstanceGeneration addedIn;
+
+        private FieldsIndexer(final ThingInstance instance, final InstanceGeneration addedIn){
+            this.instance = instance;
+            this.addedIn = addedIn;
+        }
+
+        @Override
+        public void changing(final Field field, final FieldValue from, final FieldValue to) {
+            if(!addedIn.isCleared()){
+                fieldValueChanging(instance, field, from, to);
+            }
+        }
+
+        @Override
+        public void changingTogether(final List<FieldChange> changes) {
+            if(!addedIn.isCleared()){
+                fieldValuesChanging(instance, changes);
+            }
+        }
+    }
+
+    private void record(final Supplier<JournalEntry> entry) {
+        final Journal recordTo = journal;
+        if(recordTo!=null){
+            JournalBatch.queued(recordTo.enqueue(Collections.singletonList(entry.get())));
+        }
+    }
+
+    /*
+        the entry which recreates the instance, with its assigned values
+     */
+    public JournalEntry creationEntryFor(final ThingInstance instance) {
+        final List<String> fieldValues = new ArrayList<>();
+        for(Field field : definition.getFields()){
+            final FieldValue value = instance.getFields().getAssignedValue(field.getName());
+            if(value!=null && value.asObject()==null && !field.getName().equalsIgnoreCase("guid")){
+                fieldValues.add(field.getName());
+                fieldValues.add(value.asString());
+            }
+        }
+        return JournalEntry.create(definition.getName(), instance.getGUID(), fieldValues);
+    }
+
+    /*
+        the entries which recreate the relationships made from the instance
+     */
+    public List<JournalEntry> connectionEntriesFor(final ThingInstance instance) {
+        final List<JournalEntry> entries = new ArrayList<>();
+        for(RelationshipInstance relationship : instance.getRelationships().getRelationshipsFromThis()){
+            entries.add(JournalEntry.connect(definition.getName(), instance.getGUID(),
+                                                relationshipNameFor(relationship), relationship.getTo().getGUID()));
+        }
+        return entries;
+    }
+
+    /*
+        the name to connect with to recreate a relationship made from one of our instances
+     */
+    public String relationshipNameFor(final RelationshipInstance relationship) {
+        final RelationshipVector vector = relationship.getRelationship().getFromRelationship();
+        if(vector.getFrom().definition()==definition){
+            return vector.getName();
+        }
+        return relationship.getRelationship().getReversedRelationship().getName();
+    }
+
+    private final class RelationshipsJournaller implements ThingInstanceRelationshipsListener {
+
+        private final ThingInstance instance;
+        private final InstanceGeneration addedIn;
+
+        private RelationshipsJournaller(final ThingInstance instance, final InstanceGeneration addedIn){
+            this.instance = instance;
+            this.addedIn = addedIn;
+        }
+
+        @Override
+        public void connected(final String relationshipName, final ThingInstance to) {
+            if(!addedIn.isCleared()){
+                record(() -> JournalEntry.connect(definition.getName(), instance.getGUID(),
+                                                    relationshipName, to.getGUID()));
+            }
+        }
+
+        @Override
+        public void disconnected(final String relationshipName, final ThingInstance from) {
+            if(!addedIn.isCleared()){
+                record(() -> JournalEntry.disconnect(definition.getName(), instance.getGUID(),
+                                                    relationshipName, from.getGUID()));
+            }
+        }
+
+        @Override
+        public void disconnectedAll() {
+            if(!addedIn.isCleared()){
+                record(() -> JournalEntry.disconnectAll(definition.getName(), instance.getGUID()));
+            }
+        }
+    }
+
+    private void changeGuid(final ThingInstance instance, final String from, final String to) {
+        if(from.equals(to)){
+            return;
+        }
+
+        final ThingInstance existing = instances.putIfAbsent(to, instance);
+        if(existing!=null && existing!=instance){
+            throw new IllegalArgumentException(
+                    String.format("Found Existing item with %s of %s", "guid", to));
+        }
+        instances.remove(from, instance);
+
+        if(guidDirectory!=null){
+            guidDirectory.remove(from, instance);
+            guidDirectory.add(to, this, instance);
+        }
+    }
+
     /* create and add */
     public ThingInstance createManagedInstance() {
         final ThingInstance instance = ThingInstance.create(definition);
@@ -52,6 +415,19 @@ final public class Thing {
 
     public ThingInstance findInstanceByField(FieldValue fieldValue) {
 
+        // ids, the guid and unique fields are indexed so don't need to scan
+        final Field field = definition.getField(fieldValue.getName());
+        if(field!=null && field.getType()==FieldType.ID){
+            return indexes.findById(field, fieldValue.asString());
+        }
+        if(field!=null && field.getName().equalsIgnoreCase("guid")){
+            return findInstanceByGUID(fieldValue.asString());
+        }
+        if(field!=null && indexes.isIndexedAsUnique(field) &&
+                fieldValue.asString()!=null && !fieldValue.asString().trim().isEmpty()){
+            return indexes.findUnique(field, fieldValue.asString());
+        }
+
         for (ThingInstance thing : instances.values()) {
             if (thing.getFieldValue(fieldValue.getName())
                     .asString().contentEquals(fieldValue.asString())) {
@@ -62,6 +438,88 @@ final public class Thing {
         return null;
     }
 
+    /*
+        The instances with the value for an indexed or unique field,
+        null when the field is not indexed and the instances would need to be scanned
+     */
+    public Set<ThingInstance> findInstancesByIndexedField(final FieldValue fieldValue) {
+        final Field field = definition.getField(fieldValue.getName());
+        if(field==null){
+            return null;
+        }
+
+        if(field.isIndexed()){
+            return indexes.findEqual(field, fieldValue.asString());
+        }
+
+        if(field.isUnique() && fieldValue.asString()!=null && !fieldValue.asString().trim().isEmpty()){
+            final ThingInstance instance = findInstanceByField(fieldValue);
+            if(instance==null){
+                return Collections.emptySet();
+            }
+            return Collections.singleton(instance);
+        }
+
+        return null;
+    }
+
+    /*
+        The instances with a numeric value in the range for a field with a range index,
+        null when the field has no range index and the instances would need to be scanned
+     */
+    public Set<ThingInstance> findInstancesInRange(final String fieldName, final NumericRange range) {
+        final Field field = definition.getField(fieldName);
+        if(field==null || !indexes.hasRangeIndex(field)){
+            return null;
+        }
+        return indexes.findInRange(field, range);
+    }
+
+    /*
+        Reads all the instances in the order of a field with a range index, null when
+        the field has no range index or not every instance has a numeric value
+     */
+    public Supplier<Stream<ThingInstance>> findInstancesInOrderOf(final String fieldName, final boolean descending) {
+        final Field field = definition.getField(fieldName);
+        if(field==null || !indexes.hasRangeIndex(field)){
+            return null;
+        }
+        return indexes.inRangeOrder(field, descending);
+    }
+
+    /*
+        The instances using all the terms in their searchable fields, with the number
+        of times they use the terms, null when the thing has no searchable fields
+     */
+    public Map<ThingInstance, Integer> searchInstances(final List<String> terms) {
+        if(!indexes.hasSearchableFields()){
+            return null;
+        }
+        return indexes.search(terms);
+    }
+
+    /*
+        would the unique field values of the candidate clash with any instance other than the owner,
+        owner is null when the candidate would be a new instance
+     */
+    public ValidationReport validateUniqueValues(final ThingInstance candidate, final ThingInstance owner) {
+        ValidationReport report = new ValidationReport();
+
+        for(Field field : definition.getUniqueFields()){
+            final FieldValue value = candidate.getFields().getAssignedValue(field.getName());
+            if(value==null || value.asString()==null || value.asString().trim().isEmpty()){
+                continue;
+            }
+            final ThingInstance existing = findInstanceByField(value);
+            if(existing!=null && existing!=owner){
+                report.setValid(false);
+                report.addErrorMessage(String.format("Found Existing item with %s of %s",
+                                                field.getName(), value.asString()));
+            }
+        }
+        return report;
+    }
+
     public ThingInstance findInstanceByGUID(String instanceFieldValue) {
 
         if (instances.containsKey(instanceFieldValue)) {
@@ -85,23 +543,89 @@ final public class Thing {
      * @return
      */
     public List<ThingInstance> deleteInstance(String guid) {
+        // the delete and the relationship removals are one change to a snapshot
+        return JournalBatch.recordTogether(() -> delete(guid));
+    }
 
-        if (!instances.containsKey(guid)) {
-            throw new IndexOutOfBoundsException(
-                    String.format("Could not find a %s with GUID %s",
-                            definition.getName(), guid));
-        }
+    private List<ThingInstance> delete(final String guid) {
 
         ThingInstance item = instances.get(guid);
 
-        instances.remove(guid);
+        if (item==null) {
+            throw couldNotFindError(guid);
+        }
+
+        InstanceLocks.whileLocked(item, () -> {
+            if(!instances.remove(guid, item)){
+                // deleted by another request
+                throw couldNotFindError(guid);
+            }
+            indexes.removed(item);
+            item.getFields().setListener(null);
+            // the delete recreates the relationship removals when the journal is replayed
+            item.getRelationships().setListener(null);
+            if(guidDirectory!=null){
+                guidDirectory.remove(guid, item);
+            }
+            // nothing can be related to the item from now on
+            item.setDeleted(true);
+            record(() -> JournalEntry.delete(definition.getName(), guid));
+            return item;
+        });
 
+        // the relationships lock the item and each related instance in turn
         final List<ThingInstance> alsoDelete = item.getRelationships().removeAllRelationships();
 
 
         return alsoDelete;
     }
 
+    /*
+        Drop every instance and the indexes in one go, rather than deleting
+        the instances one at a time.
+
+        Relationships are not removed, so this is for clearing all the things
+        in a model together e.g. EntityRelModel.clearAllData
+
+        The cleared instances are not visited, they all report that they are
+        deleted, so nothing can be related to them, and their changes are ignored.
+     */
+    public void clearInstances(final boolean resetIds) {
+        JournalBatch.recordTogether(() -> clear(resetIds));
+    }
+
+    private void clear(final boolean resetIds) {
+        final InstanceGeneration cleared = generation;
+        generation = new InstanceGeneration();
+        cleared.clear();
+
+        instances.clear();
+        indexes.clear();
+
+        if(resetIds){
+            for(Field idField : definition.getFieldsOfType(FieldType.ID)){
+                idField.resetNextId();
+            }
+        }
+
+        record(() -> JournalEntry.clear(definition.getName(), resetIds, nextIds()));
+    }
+
+    private List<String> nextIds() {
+        final List<String> nextIds = new ArrayList<>();
+        for(Field idField : definition.getFieldsOfType(FieldType.ID)){
+            nextIds.add(idField.getName());
+            nextIds.add(String.valueOf(idField.peekNextId()));
+        }
+        return nextIds;
+    }
+
+    private IndexOutOfBoundsException couldNotFindError(final String guid) {
+        return new IndexOutOfBoundsException(
+                String.format("Could not find a %s with GUID %s",
+                        definition.getName(), guid));
+    }
+
     /*
 
         Definition abstractions
@@ -128,10 +652,7 @@ final public class Thing {
         if(instance==null){
             final List<Field> idFields = definition.getFieldsOfType(FieldType.ID);
             if(!idFields.isEmpty()) {
-                instance = findInstanceByField(
-                        FieldValue.is(
-                                (idFields.get(0)).getName(),
-                                instanceGuid));
+                instance = indexes.findById(idFields.get(0), instanceGuid);
             }
         }
         return instance;
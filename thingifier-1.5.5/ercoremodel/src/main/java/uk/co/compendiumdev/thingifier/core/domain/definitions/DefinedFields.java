@@ -2,18 +2,35 @@ package uk.co.compendiumdev.thingifier.core.domain.definitions;
 
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.indexes.NameTable;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class DefinedFields {
 
     private Map<String, Field> fields = new ConcurrentHashMap<>();
     // to control field order
     private List<String> orderedFieldNames = new ArrayList<>();
+    // each field has a fixed slot in the values of an instance, slots are never reused
+    private Map<String, Integer> slots = new ConcurrentHashMap<>();
+    private List<Field> fieldsInSlots = new CopyOnWriteArrayList<>();
+    private Map<Field, Integer> slotsByField = new ConcurrentHashMap<>();
+
+    // read only copies, rebuilt when a field is added, so reads do not copy
+    private volatile List<String> fieldNamesView = Collections.emptyList();
+    private volatile List<Field> fieldsView = Collections.emptyList();
+    // fields and slots by name, read without lower casing the name
+    private volatile NameTable<Field> fieldsByName = NameTable.empty();
+    private volatile NameTable<Integer> slotsByName = NameTable.empty();
+    // changed when a field is added, or a field changes how it is indexed
+    private final AtomicInteger indexingVersion = new AtomicInteger();
 
     @Override
     public String toString() {
@@ -29,18 +46,86 @@ public class DefinedFields {
     }
 
     public void addField(final Field aField) {
-        fields.put(aField.getName().toLowerCase(), aField);
+        final String key = aField.getName().toLowerCase();
+        fields.put(key, aField);
         orderedFieldNames.add(aField.getName());
+
+        synchronized (fieldsInSlots){
+            final Integer slot = slots.get(key);
+            if(slot==null){
+                fieldsInSlots.add(aField);
+                slots.put(key, fieldsInSlots.size()-1);
+                slotsByField.put(aField, fieldsInSlots.size()-1);
+            }else{
+                slotsByField.remove(fieldsInSlots.get(slot));
+                fieldsInSlots.set(slot, aField);
+                slotsByField.put(aField, slot);
+            }
+
+            final List<Field> orderedFields = new ArrayList<>();
+            for(String fieldName : orderedFieldNames){
+                orderedFields.add(fields.get(fieldName.toLowerCase()));
+            }
+            fieldNamesView = Collections.unmodifiableList(new ArrayList<>(orderedFieldNames));
+            fieldsView = Collections.unmodifiableList(orderedFields);
+            fieldsByName = fieldsByName.with(aField.getName(), aField);
+            slotsByName = slotsByName.with(aField.getName(), slots.get(key));
+        }
+        aField.addedTo(this);
+        indexingChanged();
+    }
+
+    public void indexingChanged() {
+        indexingVersion.incrementAndGet();
     }
 
+    public int getIndexingVersion() {
+        return indexingVersion.get();
+    }
+
+    /*
+        the slot of a field handle from this definition, -1 if the field is not
+        defined here, does not need the name so nothing is lower cased
+     */
+    public int slotOf(final Field field) {
+        final Integer slot = slotsByField.get(field);
+        if(slot==null){
+            return -1;
+        }
+        return slot;
+    }
+
+    /*
+        the slot of the field in the values of an instance, -1 if the field is not defined
+     */
+    public int slotFor(final String fieldName) {
+        final Integer slot = slotsByName.get(fieldName);
+        if(slot==null){
+            return -1;
+        }
+        return slot;
+    }
+
+    public Field getFieldInSlot(final int slot) {
+        return fieldsInSlots.get(slot);
+    }
+
+    public int countSlots() {
+        return fieldsInSlots.size();
+    }
+
+    // the names can not be amended, the list is shared by all callers
     public List<String> getFieldNames() {
-        ArrayList<String> fieldNames = new ArrayList<>();
-        fieldNames.addAll(orderedFieldNames);
-        return fieldNames;
+        return fieldNamesView;
+    }
+
+    // the fields in field order, the list can not be amended
+    public List<Field> getFields() {
+        return fieldsView;
     }
 
     public boolean hasFieldNameDefined(final String fieldName) {
-        return fields.keySet().contains(fieldName.toLowerCase());
+        return fieldsByName.contains(fieldName);
     }
 
     public DefinedFields addFields(final Field... theseFields) {
@@ -51,10 +136,7 @@ public class DefinedFields {
     }
 
     public Field getField(final String fieldName) {
-        if (hasFieldNameDefined(fieldName)) {
-            return fields.get(fieldName.toLowerCase());
-        }
-        return null;
+        return fieldsByName.get(fieldName);
     }
 
     public List<Field> getFieldsOfType(final FieldType... types) {
@@ -81,4 +163,26 @@ public class DefinedFields {
 
         return fieldNames;
     }
+
+    /*
+        unique fields in field order, ids and guid are always unique
+     */
+    public List<Field> getUniqueFields() {
+        List<Field> uniqueFields = new ArrayList<>();
+        for(String fieldName : orderedFieldNames){
+            final Field field = fields.get(fieldName.toLowerCase());
+            if(field.isUnique()){
+                uniqueFields.add(field);
+            }
+        }
+        return uniqueFields;
+    }
+
+    public List<String> getUniqueFieldNames() {
+        List<String> fieldNames = new ArrayList<>();
+        for(Field field : getUniqueFields()){
+            fieldNames.add(field.getName());
+        }
+        return fieldNames;
+    }
 }
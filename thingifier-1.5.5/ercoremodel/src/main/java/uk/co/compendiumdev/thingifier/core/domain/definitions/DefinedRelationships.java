@@ -1,43 +1,47 @@
 package uk.co.compendiumdev.thingifier.core.domain.definitions;
 
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipVector;
+import uk.co.compendiumdev.thingifier.core.indexes.NameTable;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
+/*
+    Relationships are looked up by name on every request so they are held
+    in a frozen table, rebuilt when a relationship is added, and the lists
+    returned are shared and can not be amended.
+ */
 public class DefinedRelationships {
 
-    private Map<String, List<RelationshipVector>> relationships;
+    private volatile NameTable<List<RelationshipVector>> relationships;
 
     public DefinedRelationships(){
-        this.relationships = new ConcurrentHashMap<>();
+        this.relationships = NameTable.empty();
     }
 
     public boolean hasRelationship(final String relationshipName) {
-        return relationships.containsKey(relationshipName.toLowerCase());
+        return relationships.contains(relationshipName);
     }
 
-    public void addRelationship(final RelationshipVector relationship) {
-        List<RelationshipVector> relationshipsWithThisName = relationships.get(relationship.getName());
-        if (relationshipsWithThisName == null) {
-            // there is no relationship with this name
-            relationshipsWithThisName = new ArrayList<>();
-            relationships.put(relationship.getName(), relationshipsWithThisName);
+    public synchronized void addRelationship(final RelationshipVector relationship) {
+        final List<RelationshipVector> relationshipsWithThisName = new ArrayList<>();
+        final List<RelationshipVector> existing = relationships.get(relationship.getName());
+        if (existing != null) {
+            relationshipsWithThisName.addAll(existing);
         }
 
         relationshipsWithThisName.add(relationship);
+        relationships = relationships.with(relationship.getName(),
+                Collections.unmodifiableList(relationshipsWithThisName));
     }
 
     public List<RelationshipVector> getRelationships(final String relationshipName) {
 
-        String seekName = relationshipName.toLowerCase();
-
-        if(!relationships.containsKey(seekName)){
-            return new ArrayList<>();
+        final List<RelationshipVector> myrelationships = relationships.get(relationshipName);
+        if(myrelationships==null){
+            return Collections.emptyList();
         }
 
-        List<RelationshipVector> myrelationships = relationships.get(seekName);
-        return new ArrayList<>(myrelationships);
+        return myrelationships;
     }
 
     public Set<RelationshipVector> getRelationships() {
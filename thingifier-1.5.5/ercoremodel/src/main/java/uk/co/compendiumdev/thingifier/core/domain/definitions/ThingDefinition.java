@@ -59,6 +59,14 @@ public class ThingDefinition {
         return fields.getFieldNames();
     }
 
+    public List<Field> getFields() {
+        return fields.getFields();
+    }
+
+    public int getIndexingVersion() {
+        return fields.getIndexingVersion();
+    }
+
     public boolean hasFieldNameDefined(String fieldName) {
         return fields.hasFieldNameDefined(fieldName);
     }
@@ -80,6 +88,14 @@ public class ThingDefinition {
         return  fields.getFieldNamesOfType(types);
     }
 
+    public List<Field> getUniqueFields() {
+        return fields.getUniqueFields();
+    }
+
+    public List<String> getUniqueFieldNames() {
+        return fields.getUniqueFieldNames();
+    }
+
     public DefinedRelationships related(){
         return definedRelationships;
     }
@@ -104,6 +120,19 @@ public class ThingDefinition {
         return new InstanceFields(fields);
     }
 
+    // the values are in the slots given by slotFor
+    public InstanceFields instantiateFields(final FieldValue[] values) {
+        return new InstanceFields(fields, values);
+    }
+
+    public int slotFor(final String fieldName) {
+        return fields.slotFor(fieldName);
+    }
+
+    public int countSlots() {
+        return fields.countSlots();
+    }
+
     /*
         given a list of field values,
         if any of those match an id field
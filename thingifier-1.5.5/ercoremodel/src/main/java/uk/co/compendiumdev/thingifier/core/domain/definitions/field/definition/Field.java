@@ -4,10 +4,14 @@ import uk.co.compendiumdev.thingifier.core.reporting.ValidationReport;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.DefinedFields;
 import uk.co.compendiumdev.thingifier.core.domain.randomdata.RandomString;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValueDictionary;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.OffHeapTextStore;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.validation.ValidationRule;
 
 import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 // todo: beginning to think that we should have an XField for each field type
 // e.g. IdField, StringField, etc. - possibly with an interface or abstract
@@ -21,9 +25,15 @@ public final class Field {
     private final Set<String> fieldExamples;
 
     private boolean fieldIsOptional;
+    private boolean fieldIsUnique;
+    private boolean fieldIsIndexed;
+    private boolean fieldIsSearchable;
+    // counts changes to how any field is indexed, so lists of indexed fields know to be rebuilt
 
     // default value for the field
     private String defaultValue;
+    // defaults are immutable so every read shares one value
+    private volatile FieldValue defaultFieldValue;
     private List<ValidationRule> validationRules;
     private boolean truncateStringIfTooLong;
 
@@ -36,7 +46,13 @@ public final class Field {
     private DefinedFields objectDefinition;
 
 
-    private int nextId; // only used for id fields
+    private final AtomicInteger nextId; // only used for id fields
+    // shared values for low cardinality fields, null for other fields
+    private final FieldValueDictionary dictionary;
+    // where the text of the values is held when stored off heap, null for other fields
+    private volatile OffHeapTextStore offHeapStore;
+    // the definitions using this field, told when the field changes how it is indexed
+    private final List<DefinedFields> definedIn = new CopyOnWriteArrayList<>();
     private int truncatedStringLength;
 
     // todo: rather than all these fields, consider moving to more validation rules
@@ -47,6 +63,9 @@ public final class Field {
         this.type = type;
         validationRules = new ArrayList<>();
         fieldIsOptional = true;
+        fieldIsUnique = false;
+        fieldIsIndexed = false;
+        fieldIsSearchable = false;
         truncateStringIfTooLong=false;
         truncatedStringLength=-1;
         fieldExamples = new HashSet<>();
@@ -55,7 +74,12 @@ public final class Field {
         maximumFloatValue = Float.MAX_VALUE;
         minimumFloatValue = Float.MIN_VALUE;
         allowedNullable=false;
-        nextId=1;
+        nextId = new AtomicInteger(1);
+        if(type==FieldType.BOOLEAN || type==FieldType.ENUM){
+            dictionary = new FieldValueDictionary(name, type);
+        }else{
+            dictionary = null;
+        }
     }
 
     public static Field is(String name) {
@@ -70,38 +94,82 @@ public final class Field {
         return name;
     }
 
+    // ids are allocated atomically so concurrent creation never shares an id
     public String getNextIdValue() {
-        int id = nextId;
-        nextId++;
-        return String.valueOf(id);
+        return String.valueOf(nextId.getAndIncrement());
+    }
+
+    // the id the next instance will be given, without allocating it
+    public int peekNextId() {
+        return nextId.get();
     }
 
     // an external way to set the next id
     public void ensureNextIdAbove(final String value) {
         try{
             final int desiredId = Integer.parseInt(value);
-            if(nextId<=desiredId){
-                nextId=desiredId+1;
+            if(desiredId==Integer.MAX_VALUE){
+                // there is no id above this to use
+                return;
             }
+            nextId.accumulateAndGet(desiredId + 1, Math::max);
         }catch(Exception e){
             // ignore conversion errors
         }
     }
 
+    // start allocating ids from 1 again, only safe when no instances use the ids
+    public void resetNextId() {
+        nextId.set(1);
+    }
+
     public Field withDefaultValue(String aDefaultValue) {
         this.defaultValue = aDefaultValue;
+        this.defaultFieldValue = null;
         fieldExamples.add(aDefaultValue);
         return this;
     }
 
     public FieldValue getDefaultValue() {
+        FieldValue value = defaultFieldValue;
+        if(value==null){
+            value = createDefaultValue();
+            defaultFieldValue = value;
+        }
+        return value;
+    }
+
+    private FieldValue createDefaultValue() {
         // todo: allow configuration of allowedNullable
         // todo: handle defaults of object and array
         if(defaultValue==null && !allowedNullable){
             // get the definition default
-            return FieldValue.is(name, type.getDefault());
+            return encoded(FieldValue.is(name, type, type.getDefault()));
         }
-        return FieldValue.is(name, defaultValue);
+        return encoded(FieldValue.is(name, type, defaultValue));
+    }
+
+    /*
+        BOOLEAN and ENUM fields have few distinct values, so instances share
+        one value from the field's dictionary rather than each holding a copy,
+        and fields stored off heap move the text of the value to their store
+     */
+    public FieldValue encoded(final FieldValue value) {
+        if(dictionary!=null){
+            return dictionary.canonical(value);
+        }
+        final OffHeapTextStore store = offHeapStore;
+        if(store!=null){
+            return store.stored(value);
+        }
+        return value;
+    }
+
+    public int dictionaryCodeFor(final String value) {
+        if(dictionary==null){
+            return FieldValueDictionary.NOT_ENCODED;
+        }
+        return dictionary.codeFor(value);
     }
 
     public boolean hasDefaultValue() {
@@ -286,6 +354,86 @@ public final class Field {
         return this;
     }
 
+    /*
+        no two instances of a Thing can have the same value for a unique field,
+        ids and guids are always unique, empty values are not checked
+     */
+    public Field makeUnique() {
+        fieldIsUnique = true;
+        indexingChanged();
+        return this;
+    }
+
+    private void indexingChanged() {
+        for(DefinedFields definition : definedIn){
+            definition.indexingChanged();
+        }
+    }
+
+    /*
+        called by the definition the field is added to
+     */
+    public void addedTo(final DefinedFields definition) {
+        if(!definedIn.contains(definition)){
+            definedIn.add(definition);
+        }
+    }
+
+    public boolean isUnique(){
+        return fieldIsUnique || type==FieldType.ID || type==FieldType.GUID;
+    }
+
+    /*
+        an indexed field can be filtered on without scanning all the instances
+     */
+    public Field makeIndexed() {
+        fieldIsIndexed = true;
+        indexingChanged();
+        return this;
+    }
+
+    public boolean isIndexed(){
+        return fieldIsIndexed && type!=FieldType.OBJECT;
+    }
+
+    /*
+        the words in a searchable STRING field can be found with a keyword search
+     */
+    public Field makeSearchable() {
+        fieldIsSearchable = true;
+        indexingChanged();
+        return this;
+    }
+
+    public boolean isSearchable(){
+        return fieldIsSearchable && type==FieldType.STRING;
+    }
+
+    /*
+        the text of a STRING field's values is held outside the heap,
+        for large models with long text where the heap is mostly values
+     */
+    public Field storeOffHeap() {
+        if(type==FieldType.STRING && offHeapStore==null){
+            offHeapStore = new OffHeapTextStore(name);
+        }
+        return this;
+    }
+
+    public boolean isStoredOffHeap(){
+        return offHeapStore!=null;
+    }
+
+    // null when the values are held on the heap
+    public OffHeapTextStore getOffHeapStore(){
+        return offHeapStore;
+    }
+
+    public long countBytesStoredOffHeap(){
+        final OffHeapTextStore store = offHeapStore;
+        return store==null ? 0 : store.countBytesStored();
+    }
+
     /*
        todo: consider adding Formatting Rules
         instead of truncateString To -
@@ -1,7 +1,19 @@
 package uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance;
 
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
 import uk.co.compendiumdev.thingifier.core.domain.instances.InstanceFields;
 
+import java.nio.ByteBuffer;
+
+/*
+    A value is always held as a String, when created for a field type
+    the INTEGER, ID, FLOAT and BOOLEAN values are also parsed once, so
+    asInteger, asFloat and asBoolean do not parse the String on every call.
+
+    The text of a value from an OffHeapTextStore is held outside the heap,
+    and the String is created each time the value is read, textEquals and
+    textStartsWith compare the text without creating it.
+ */
 public final class FieldValue {
 
     private final String fieldName; // should this be name or should it be a Field reference?
@@ -10,17 +22,66 @@ public final class FieldValue {
     // todo: list of strings for an array
     // todo: list of InstanceFields for an array of objects
 
+    // the parsed value, when typedAs is not null
+    private final FieldType typedAs;
+    private final int integerValue;
+    private final float floatValue;
+    private final boolean booleanValue;
+
+    // the code of a shared value from a FieldValueDictionary
+    private final int dictionaryCode;
+
+    // the buffer holding the text when stored off heap, the integerValue is where the text is
+    private final ByteBuffer storedIn;
+
     private FieldValue(String fieldName, String fieldValue) {
+        this(fieldName, fieldValue, null, 0, 0.0F, false, FieldValueDictionary.NOT_ENCODED);
+    }
+
+    private FieldValue(final String fieldName, final String fieldValue,
+                       final FieldType typedAs, final int integerValue,
+                       final float floatValue, final boolean booleanValue,
+                       final int dictionaryCode) {
         this.fieldName = fieldName;
         this.valueOfField = fieldValue;
         this.objectValue = null;
+        this.typedAs = typedAs;
+        this.integerValue = integerValue;
+        this.floatValue = floatValue;
+        this.booleanValue = booleanValue;
+        this.dictionaryCode = dictionaryCode;
+        this.storedIn = null;
+    }
+
+    private FieldValue(final String fieldName, final ByteBuffer storedIn, final int storedAt) {
+        this.fieldName = fieldName;
+        this.valueOfField = null;
+        this.objectValue = null;
+        this.typedAs = null;
+        this.integerValue = storedAt;
+        this.floatValue = 0.0F;
+        this.booleanValue = false;
+        this.dictionaryCode = FieldValueDictionary.NOT_ENCODED;
+        this.storedIn = storedIn;
+    }
+
+    static FieldValue storedOffHeap(final String fieldName, final ByteBuffer storedIn, final int storedAt) {
+        return new FieldValue(fieldName, storedIn, storedAt);
+    }
+
+    ByteBuffer storedIn() {
+        return storedIn;
+    }
+
+    int storedAt() {
+        return integerValue;
     }
 
     @Override
     public String toString() {
         String string =  "FieldValue{" +
                 "fieldName='" + fieldName + "'" +
-                ", fieldValue='" + valueOfField + "'";
+                ", fieldValue='" + asString() + "'";
         if(objectValue!=null){
             string = string + ",{ " + objectValue.toString() + " }";
         }
@@ -33,6 +94,42 @@ public final class FieldValue {
         return new FieldValue(fieldName, fieldValue);
     }
 
+    /*
+        a value which can't be parsed as the type is kept as a String,
+        it will fail validation against the type
+     */
+    public static FieldValue is(final String fieldName, final FieldType type, final String fieldValue) {
+        if(type==null || fieldValue==null){
+            return new FieldValue(fieldName, fieldValue);
+        }
+
+        try {
+            switch (type) {
+                case INTEGER:
+                case ID:
+                    return new FieldValue(fieldName, fieldValue, type,
+                            Integer.parseInt(fieldValue), 0.0F, false,
+                            FieldValueDictionary.NOT_ENCODED);
+                case FLOAT:
+                    return new FieldValue(fieldName, fieldValue, type,
+                            0, Float.parseFloat(fieldValue), false,
+                            FieldValueDictionary.NOT_ENCODED);
+                case BOOLEAN:
+                    if (fieldValue.equalsIgnoreCase("true") || fieldValue.equalsIgnoreCase("false")) {
+                        return new FieldValue(fieldName, fieldValue, type,
+                                0, 0.0F, fieldValue.equalsIgnoreCase("true"),
+                                FieldValueDictionary.NOT_ENCODED);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }catch(NumberFormatException e){
+            // not a value of the type
+        }
+        return new FieldValue(fieldName, fieldValue);
+    }
+
     public static FieldValue is(String fieldName, InstanceFields objectValue) {
         final FieldValue value = new FieldValue(fieldName, "");
         value.setValue(objectValue);
@@ -52,35 +149,124 @@ public final class FieldValue {
     public FieldValue cloned() {
         if(objectValue!=null){
             return FieldValue.is(fieldName, objectValue.cloned());
+        }else if(storedIn!=null){
+            // the stored text is never changed so can be shared
+            return new FieldValue(fieldName, storedIn, integerValue);
         }else{
-            return FieldValue.is(fieldName, valueOfField);
+            // no need to parse the value again
+            return new FieldValue(fieldName, valueOfField, typedAs,
+                                    integerValue, floatValue, booleanValue, dictionaryCode);
         }
     }
 
+    FieldValue encodedAs(final int code) {
+        return new FieldValue(fieldName, valueOfField, typedAs,
+                                integerValue, floatValue, booleanValue, code);
+    }
+
+    /*
+        FieldValueDictionary.NOT_ENCODED unless this is a shared dictionary value
+     */
+    public int getDictionaryCode() {
+        return dictionaryCode;
+    }
+
+    public boolean isStoredOffHeap() {
+        return storedIn!=null;
+    }
+
     public String asString() {
+        if(storedIn!=null){
+            return OffHeapTextStore.read(storedIn, integerValue);
+        }
         return valueOfField;
     }
 
+    /*
+        the same as asString().equals(text), without creating the String of a value stored off heap
+     */
+    public boolean textEquals(final String text) {
+        if(storedIn!=null){
+            return text!=null && OffHeapTextStore.matches(storedIn, integerValue, text, false);
+        }
+        return valueOfField!=null && valueOfField.equals(text);
+    }
+
+    public boolean textStartsWith(final String prefix) {
+        if(storedIn!=null){
+            return OffHeapTextStore.matches(storedIn, integerValue, prefix, true);
+        }
+        return valueOfField!=null && valueOfField.startsWith(prefix);
+    }
+
     public InstanceFields asObject() {
         return objectValue;
     }
 
     public float asFloat() {
-        return Float.valueOf(valueOfField);
+        if(typedAs==FieldType.FLOAT){
+            return floatValue;
+        }
+        return Float.valueOf(asString());
     }
 
     public boolean asBoolean() {
-        if (valueOfField.toLowerCase().contentEquals("true")){
+        if(typedAs==FieldType.BOOLEAN){
+            return booleanValue;
+        }
+        final String value = asString();
+        if (value.toLowerCase().contentEquals("true")){
             return true;
         }
-        if(valueOfField.toLowerCase().contentEquals("false")) {
+        if(value.toLowerCase().contentEquals("false")) {
             return false;
         }
 
-        throw new IllegalArgumentException(valueOfField + " is not boolean");
+        throw new IllegalArgumentException(value + " is not boolean");
     }
 
     public int asInteger() {
-        return Integer.valueOf(valueOfField);
+        if(typedAs==FieldType.INTEGER || typedAs==FieldType.ID){
+            return integerValue;
+        }
+        return Integer.valueOf(asString());
+    }
+
+    /*
+        the value as a number of an INTEGER, ID or FLOAT field, for filtering,
+        sorting and range indexing, a value typed when created is not parsed again,
+        NaN when the value is not a number of the type
+     */
+    public double asNumber(final FieldType type) {
+        if(typedAs==type){
+            switch (type){
+                case INTEGER:
+                case ID:
+                    return integerValue;
+                case FLOAT:
+                    // -0.0 and 0.0 are the same value
+                    return floatValue + 0.0;
+                default:
+                    break;
+            }
+        }
+
+        final String value = asString();
+        if(value==null){
+            return Double.NaN;
+        }
+        try{
+            switch (type){
+                case INTEGER:
+                case ID:
+                    return Integer.parseInt(value);
+                case FLOAT:
+                    return Float.parseFloat(value) + 0.0;
+                default:
+                    return Double.parseDouble(value.trim()) + 0.0;
+            }
+        }catch(NumberFormatException e){
+            return Double.NaN;
+        }
     }
 }
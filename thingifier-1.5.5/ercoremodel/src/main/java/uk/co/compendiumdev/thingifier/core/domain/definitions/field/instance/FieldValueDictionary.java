@@ -0,0 +1,80 @@
+package uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance;
+
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    The distinct values of a low cardinality field e.g. a BOOLEAN or ENUM.
+
+    Every instance with the same value shares one immutable FieldValue,
+    and each value has a code so values can be compared by code rather
+    than by String.
+
+    The dictionary stops growing at MAXIMUM_VALUES, values after that
+    are not encoded, so unvalidated values can't grow it without limit.
+ */
+public final class FieldValueDictionary {
+
+    public static final int NOT_ENCODED = -1;
+    private static final int MAXIMUM_VALUES = 256;
+
+    private final String fieldName;
+    private final FieldType type;
+    private final Map<String, FieldValue> values;
+
+    public FieldValueDictionary(final String fieldName, final FieldType type){
+        this.fieldName = fieldName;
+        this.type = type;
+        this.values = new ConcurrentHashMap<>();
+    }
+
+    /*
+        the shared value, or the value itself if it can not be encoded
+     */
+    public FieldValue canonical(final FieldValue value) {
+        if(value==null || value.asString()==null || value.asObject()!=null){
+            return value;
+        }
+        if(value.getDictionaryCode()!=NOT_ENCODED){
+            return value;
+        }
+
+        final FieldValue existing = values.get(value.asString());
+        if(existing!=null){
+            return existing;
+        }
+
+        if(values.size()>=MAXIMUM_VALUES){
+            return value;
+        }
+
+        synchronized (values){
+            return values.computeIfAbsent(value.asString(),
+                    key -> FieldValue.is(fieldName, type, key).encodedAs(values.size()));
+        }
+    }
+
+    public FieldValue canonical(final String value) {
+        return canonical(FieldValue.is(fieldName, type, value));
+    }
+
+    /*
+        the code of the value, NOT_ENCODED if no instance could have the value
+     */
+    public int codeFor(final String value) {
+        if(value==null){
+            return NOT_ENCODED;
+        }
+        final FieldValue existing = values.get(value);
+        if(existing==null){
+            return NOT_ENCODED;
+        }
+        return existing.getDictionaryCode();
+    }
+
+    public int size() {
+        return values.size();
+    }
+}
@@ -0,0 +1,202 @@
+package uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+    The text of a field's values held outside the heap, in direct buffers.
+
+    Values are appended to the current chunk as the length then the UTF-8 bytes,
+    the FieldValue keeps the chunk and where its text is, so a value stored
+    off heap is the FieldValue alone, and the String is only created when the
+    value is read. Values can be compared with text without creating the String.
+
+    Text is never moved or overwritten, so a reader always sees the value it was
+    given. A chunk is freed by the garbage collector once no value refers to it,
+    so when more text has been stored since the store was last compacted than was
+    in use then, the values in use are copied to new chunks with moved, and the
+    owner of the values swaps them in, which frees the chunks of replaced values.
+ */
+public final class OffHeapTextStore {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final int LENGTH_SIZE = 4;
+    // a store is not compacted until it has written this much
+    private static final long COMPACT_AFTER = 4L * CHUNK_SIZE;
+
+    private final String fieldName;
+    private final AtomicLong bytesStored;
+    private final AtomicBoolean compacting;
+    private final AtomicLong bytesInUse;
+    // the bytes stored, and the bytes of the values in use, when the store was last compacted
+    private volatile long storedWhenCompacted;
+    private volatile long inUseWhenCompacted;
+    private ByteBuffer chunk;
+
+    public OffHeapTextStore(final String fieldName){
+        this.fieldName = fieldName;
+        this.bytesStored = new AtomicLong();
+        this.compacting = new AtomicBoolean();
+        this.bytesInUse = new AtomicLong();
+    }
+
+    /*
+        the value with its text off the heap, values which are not text are returned as they are
+     */
+    public FieldValue stored(final FieldValue value) {
+        if(value==null || value.asObject()!=null || value.isStoredOffHeap()){
+            return value;
+        }
+        final String text = value.asString();
+        if(text==null || text.isEmpty()){
+            return value;
+        }
+
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer storedIn;
+        final int storedAt;
+        synchronized (this){
+            storedIn = chunkFor(LENGTH_SIZE + bytes.length);
+            storedAt = storedIn.position();
+            // the text is in place before the value is shared
+            storedIn.putInt(bytes.length).put(bytes);
+        }
+        bytesStored.addAndGet(LENGTH_SIZE + bytes.length);
+
+        return FieldValue.storedOffHeap(fieldName, storedIn, storedAt);
+    }
+
+    // the chunk to write to is positioned where the value goes
+    private ByteBuffer chunkFor(final int size) {
+        if(size > CHUNK_SIZE/4){
+            // large values have a chunk to themselves so they don't waste the rest of a chunk
+            return ByteBuffer.allocateDirect(size);
+        }
+        if(chunk==null || chunk.remaining()<size){
+            chunk = ByteBuffer.allocateDirect(CHUNK_SIZE);
+        }
+        return chunk;
+    }
+
+    /*
+        true for one caller at a time when the values in use should be moved,
+        that caller must call compacted once it has swapped in the moved values,
+        so each compaction copies no more text than was stored since the last
+     */
+    public boolean startCompacting() {
+        final long stored = bytesStored.get();
+        if(stored - storedWhenCompacted < Math.max(inUseWhenCompacted, COMPACT_AFTER)){
+            return false;
+        }
+        if(!compacting.compareAndSet(false, true)){
+            return false;
+        }
+        bytesInUse.set(0);
+        synchronized (this){
+            // values in use are not moved into a chunk shared with replaced values
+            chunk = null;
+        }
+        return true;
+    }
+
+    /*
+        the value with its text copied to the current chunk, the value itself is
+        not changed, values with a chunk to themselves are not moved
+     */
+    public FieldValue moved(final FieldValue value) {
+        if(value==null || !value.isStoredOffHeap()){
+            return value;
+        }
+        final ByteBuffer from = value.storedIn();
+        final int size = LENGTH_SIZE + from.getInt(value.storedAt());
+        bytesInUse.addAndGet(size);
+        if(size==from.capacity()){
+            return value;
+        }
+
+        final ByteBuffer text = from.duplicate();
+        text.limit(value.storedAt() + size).position(value.storedAt());
+        final ByteBuffer storedIn;
+        final int storedAt;
+        synchronized (this){
+            storedIn = chunkFor(size);
+            storedAt = storedIn.position();
+            storedIn.put(text);
+        }
+        bytesStored.addAndGet(size);
+
+        return FieldValue.storedOffHeap(fieldName, storedIn, storedAt);
+    }
+
+    /*
+        the values given to moved are the values in use
+     */
+    public void compacted() {
+        inUseWhenCompacted = bytesInUse.get();
+        storedWhenCompacted = bytesStored.get();
+        compacting.set(false);
+    }
+
+    /*
+        the bytes of text written, including text moved by compacting
+        and the text of values no longer in use
+     */
+    public long countBytesStored() {
+        return bytesStored.get();
+    }
+
+    static String read(final ByteBuffer storedIn, final int storedAt) {
+        final byte[] bytes = new byte[storedIn.getInt(storedAt)];
+        final ByteBuffer text = storedIn.duplicate();
+        text.position(storedAt + LENGTH_SIZE);
+        text.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /*
+        compares the stored text with the text a character at a time, decoding the
+        UTF-8 as it goes, true when they are the same or, for a prefix, the stored
+        text starts with it
+     */
+    static boolean matches(final ByteBuffer storedIn, final int storedAt,
+                           final String text, final boolean prefix) {
+        final int length = storedIn.getInt(storedAt);
+        // a char is one to three bytes, a pair of surrogate chars is four
+        if(!prefix && (length < text.length() || length > 3 * text.length())){
+            return false;
+        }
+        final int end = storedAt + LENGTH_SIZE + length;
+        int at = storedAt + LENGTH_SIZE;
+        int index = 0;
+        while(at<end){
+            if(index==text.length()){
+                return prefix;
+            }
+            final int first = storedIn.get(at) & 0xFF;
+            final int codePoint;
+            if(first < 0x80){
+                codePoint = first;
+                at = at + 1;
+            }else if(first < 0xE0){
+                codePoint = ((first & 0x1F) << 6) | (storedIn.get(at+1) & 0x3F);
+                at = at + 2;
+            }else if(first < 0xF0){
+                codePoint = ((first & 0x0F) << 12) | ((storedIn.get(at+1) & 0x3F) << 6) |
+                                (storedIn.get(at+2) & 0x3F);
+                at = at + 3;
+            }else{
+                codePoint = ((first & 0x07) << 18) | ((storedIn.get(at+1) & 0x3F) << 12) |
+                                ((storedIn.get(at+2) & 0x3F) << 6) | (storedIn.get(at+3) & 0x3F);
+                at = at + 4;
+            }
+
+            if(codePoint!=text.codePointAt(index)){
+                return false;
+            }
+            index = index + Character.charCount(codePoint);
+        }
+        return index==text.length();
+    }
+}
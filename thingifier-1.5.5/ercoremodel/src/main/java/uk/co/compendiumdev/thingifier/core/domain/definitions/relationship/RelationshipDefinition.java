@@ -10,6 +10,8 @@ public class RelationshipDefinition {
      */
     private RelationshipVector fromTo;
     private RelationshipVector toFrom;
+    // told when the relationship is given a reversed name
+    private Runnable reversalListener;
 
     //todo: in theory we don't need 'relationship' since we could just have two vectors
 
@@ -30,9 +32,16 @@ public class RelationshipDefinition {
                 of);
         vector.forRelationship(this);
         toFrom = vector;
+        if(reversalListener!=null){
+            reversalListener.run();
+        }
         return this;
     }
 
+    public void setReversalListener(final Runnable listener) {
+        this.reversalListener = listener;
+    }
+
     public String toString() {
 
         StringBuilder output = new StringBuilder();
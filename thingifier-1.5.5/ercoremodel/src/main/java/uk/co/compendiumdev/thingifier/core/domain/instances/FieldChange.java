@@ -0,0 +1,38 @@
+package uk.co.compendiumdev.thingifier.core.domain.instances;
+
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+
+/*
+    A change to the value of a field, from is null when the field had no
+    assigned value, to is null when the assigned value is being removed.
+ */
+public final class FieldChange {
+
+    private final Field field;
+    private final FieldValue from;
+    private final FieldValue to;
+
+    public FieldChange(final Field field, final FieldValue from, final FieldValue to){
+        this.field = field;
+        this.from = from;
+        this.to = to;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public FieldValue getFrom() {
+        return from;
+    }
+
+    public FieldValue getTo() {
+        return to;
+    }
+
+    // the change which puts the value back
+    public FieldChange undone() {
+        return new FieldChange(field, to, from);
+    }
+}
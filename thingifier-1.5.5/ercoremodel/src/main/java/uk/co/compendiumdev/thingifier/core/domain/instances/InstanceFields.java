@@ -1,5 +1,6 @@
 package uk.co.compendiumdev.thingifier.core.domain.instances;
 
+import uk.co.compendiumdev.thingifier.core.journal.JournalBatch;
 import uk.co.compendiumdev.thingifier.core.reporting.ValidationReport;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.DefinedFields;
@@ -7,28 +8,132 @@ import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.F
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 /*
     InstanceFields is a sparse list, i.e. it might not have a value
     for a specific field, in which case the default from the DefinedFields
     will be used instead.
 
+    Values are held in an array by the slot the DefinedFields gives each
+    field, rather than a map per instance. The array grows if fields are
+    defined after the instance was created.
+
+    A published array is never changed. A single change is made to a copy
+    of the array which is then published, changes made in changeTogether
+    are made to one copy which is published at once. So a reader, or a
+    snapshot, holding the array sees the values as they were, without
+    copying them.
  */
 public class InstanceFields {
 
     private final DefinedFields objectDefinition;
-    private Map<String, FieldValue> values = new HashMap<String, FieldValue>();
+    private volatile FieldValue[] values;
+    private static final AtomicReferenceFieldUpdater<InstanceFields, FieldValue[]> VALUES =
+            AtomicReferenceFieldUpdater.newUpdater(InstanceFields.class, FieldValue[].class, "values");
+    // the unpublished copy, only used by the writer holding the lock
+    private FieldValue[] pending;
+    private final boolean readOnly;
+    private InstanceFieldsListener listener;
 
     public InstanceFields(final DefinedFields objectDefinition) {
+        this(objectDefinition, new FieldValue[objectDefinition.countSlots()], false);
+    }
+
+    /*
+        fields with the values already in their slots e.g. read from a snapshot,
+        the array is used as it is, so it must not be changed after this
+     */
+    public InstanceFields(final DefinedFields objectDefinition, final FieldValue[] values) {
+        this(objectDefinition, values, false);
+    }
+
+    private InstanceFields(final DefinedFields objectDefinition,
+                           final FieldValue[] values, final boolean readOnly) {
         this.objectDefinition = objectDefinition;
+        this.values = values;
+        this.readOnly = readOnly;
+    }
+
+    /*
+        a read only view of the values as they are now, later changes are not seen
+     */
+    public InstanceFields snapshot() {
+        return new InstanceFields(objectDefinition, getValues(), true);
+    }
+
+    /*
+        the values as they are now, read with getFieldValue(values, field),
+        the array does not see later changes so rendering does not copy it.
+        The array must not be changed.
+     */
+    public FieldValue[] getValues() {
+        final FieldValue[] current = currentValues();
+        if(current==values){
+            return current;
+        }
+        // the writer's unpublished copy is still being changed
+        return Arrays.copyOf(current, current.length);
+    }
+
+    /*
+        make several changes, other threads see all of them or none of them.
+        The listener is told about the changes once they have all been made,
+        if it, or any change, throws then none of the changes are published.
+     */
+    public void changeTogether(final Runnable changes) {
+        // the changes are journalled in order under the lock, and waited for after it
+        JournalBatch.recordTogether(() -> changeLockedTogether(changes));
+    }
+
+    private synchronized void changeLockedTogether(final Runnable changes) {
+        if(pending!=null){
+            // already changing together
+            changes.run();
+            return;
+        }
+
+        // compared with the array copied, a value may be replaced in the published array meanwhile
+        final FieldValue[] published = values;
+        pending = Arrays.copyOf(published, Math.max(published.length, objectDefinition.countSlots()));
+        try{
+            changes.run();
+            final List<FieldChange> made = changesMadeTo(published, pending);
+            if(listener!=null && !made.isEmpty()){
+                listener.changingTogether(made);
+            }
+            values = pending;
+        }finally{
+            pending = null;
+        }
+    }
+
+    private List<FieldChange> changesMadeTo(final FieldValue[] published, final FieldValue[] changed) {
+        final List<FieldChange> made = new ArrayList<>();
+        for(int slot=0; slot<changed.length; slot++){
+            final FieldValue from = valueInSlot(published, slot);
+            if(from!=changed[slot]){
+                made.add(new FieldChange(objectDefinition.getFieldInSlot(slot), from, changed[slot]));
+            }
+        }
+        return made;
+    }
+
+    // the writer sees its own unpublished changes
+    private FieldValue[] currentValues() {
+        final FieldValue[] changing = pending;
+        if(changing!=null && Thread.holdsLock(this)){
+            return changing;
+        }
+        return values;
     }
 
     public InstanceFields addIdsToInstance() {
         List<Field>idfields = objectDefinition.getFieldsOfType(FieldType.ID);
         for(Field aField : idfields){
             if(aField.getType()==FieldType.ID){
-                if(!values.containsKey(aField.getName().toLowerCase())) {
-                    addValue(FieldValue.is(aField.getName(), aField.getNextIdValue()));
+                if(getAssignedValue(aField.getName())==null) {
+                    addValue(FieldValue.is(aField.getName(), FieldType.ID, aField.getNextIdValue()));
                 }
             }
         }
@@ -36,52 +141,147 @@ public class InstanceFields {
     }
 
     public void addValue(final FieldValue value) {
-        values.put(value.getName().toLowerCase(), value);
+        final int slot = objectDefinition.slotFor(value.getName());
+        if(slot<0){
+            reportCannotFindFieldError(value.getName());
+        }
+        final FieldValue encoded = objectDefinition.getFieldInSlot(slot).encoded(value);
+        JournalBatch.recordTogether(() -> setValueInSlot(slot, encoded));
+    }
+
+    /*
+        swap a value for the same value held elsewhere, e.g. text moved by an
+        OffHeapTextStore, this is not a change so the listener is not told.
+        Nothing is locked, when the values are changed at the same time the
+        change wins and false is returned.
+     */
+    public boolean replaceValue(final Field field, final FieldValue value, final FieldValue replacement) {
+        final int slot = objectDefinition.slotOf(field);
+        final FieldValue[] published = values;
+        if(readOnly || slot<0 || valueInSlot(published, slot)!=value){
+            return false;
+        }
+        final FieldValue[] replaced = Arrays.copyOf(published, published.length);
+        replaced[slot] = replacement;
+        return VALUES.compareAndSet(this, published, replaced);
+    }
+
+    public void removeValue(final String fieldName) {
+        final int slot = objectDefinition.slotFor(fieldName);
+        if(slot<0){
+            reportCannotFindFieldError(fieldName);
+        }
+        JournalBatch.recordTogether(() -> setValueInSlot(slot, null));
+    }
+
+    // a null value removes the value
+    private synchronized void setValueInSlot(final int slot, final FieldValue value) {
+        if(readOnly){
+            throw new IllegalStateException("Can not change the values of a snapshot");
+        }
+
+        if(pending!=null){
+            // the listener is told when the changes are published
+            if(slot>=pending.length){
+                pending = Arrays.copyOf(pending, objectDefinition.countSlots());
+            }
+            pending[slot] = value;
+            return;
+        }
+
+        if(listener!=null){
+            listener.changing(objectDefinition.getFieldInSlot(slot), getValueInSlot(slot), value);
+        }
+
+        final FieldValue[] published = values;
+        final FieldValue[] changing = Arrays.copyOf(published,
+                                        Math.max(published.length, objectDefinition.countSlots()));
+        changing[slot] = value;
+        // publishes the change
+        values = changing;
+    }
+
+    private FieldValue getValueInSlot(final int slot) {
+        return valueInSlot(currentValues(), slot);
+    }
+
+    private static FieldValue valueInSlot(final FieldValue[] values, final int slot) {
+        if(slot<0 || slot>=values.length){
+            return null;
+        }
+        return values[slot];
+    }
+
+    public void setListener(final InstanceFieldsListener listener) {
+        this.listener = listener;
     }
 
     public FieldValue getAssignedValue(String fieldName) {
-        return values.get(fieldName.toLowerCase());
+        return getValueInSlot(objectDefinition.slotFor(fieldName));
+    }
+
+    public FieldValue getAssignedValue(final Field field) {
+        final int slot = objectDefinition.slotOf(field);
+        if(slot<0){
+            return getAssignedValue(field.getName());
+        }
+        return getValueInSlot(slot);
     }
 
     public FieldValue getFieldValue(String fieldName) {
 
         // todo : support complex fieldNames e.g. person.firstname
 
-        if(!objectDefinition.hasFieldNameDefined(fieldName)){
+        final int slot = objectDefinition.slotFor(fieldName);
+        if(slot<0){
             reportCannotFindFieldError(fieldName);
         }
 
-        // bypass default processing for OBJECT, ARRAY - at the moment
-        // todo: allow defaults for OBJECT, ARRAY, etc.
-        Field field = objectDefinition.getField(fieldName);
-        if(field.getType()==FieldType.OBJECT){
-            getAssignedValue(fieldName);
+        return getValueOrDefault(objectDefinition.getFieldInSlot(slot), getValueInSlot(slot));
+    }
+
+    /*
+        read with a Field from the definition, the read path for rendering
+        collections, does not allocate when the value or a default is returned
+     */
+    public FieldValue getFieldValue(final Field field) {
+        return getFieldValue(currentValues(), field);
+    }
+
+    /*
+        read from values given by getValues
+     */
+    public FieldValue getFieldValue(final FieldValue[] values, final Field field) {
+        final int slot = objectDefinition.slotOf(field);
+        if(slot<0){
+            return getFieldValue(field.getName());
         }
+        return getValueOrDefault(field, valueInSlot(values, slot));
+    }
 
-        // pass back any defaults setup
-        FieldValue assignedValue = getAssignedValue(fieldName);
-        if (assignedValue == null) {
-            // does definition have a default value?
-            if (objectDefinition.getField(fieldName).hasDefaultValue()) {
-                return objectDefinition.getField(fieldName).getDefaultValue();
-            } else {
-                // return the field type default value
-                String defaultVal = objectDefinition.getField(fieldName).getType().getDefault();
-                if (defaultVal != null) {
-                    return FieldValue.is(fieldName, defaultVal);
-                }
-            }
+    private FieldValue getValueOrDefault(final Field field, final FieldValue assignedValue) {
+
+        if (assignedValue != null) {
+            return assignedValue;
+        }
+
+        // todo: allow defaults for OBJECT, ARRAY, etc.
+        // pass back any defaults setup, or the field type default value
+        if (field.hasDefaultValue() || field.getType().getDefault() != null) {
+            return field.getDefaultValue();
         }
 
-        return assignedValue;
+        return null;
     }
 
     public String toString() {
 
         StringBuilder output = new StringBuilder();
 
-        for (Map.Entry<String, FieldValue> entry : values.entrySet()) {
-            output.append("\n\t\t\t\t" + entry.getKey() + " : " + entry.getValue() + "\n");
+        for (FieldValue value : currentValues()) {
+            if(value!=null) {
+                output.append("\n\t\t\t\t" + value.getName().toLowerCase() + " : " + value + "\n");
+            }
         }
 
         return output.toString();
@@ -91,19 +291,24 @@ public class InstanceFields {
     public void deleteAllFieldValuesExcept(List fieldNamesToIgnore) {
 
         Set<String> ignorekeys = new HashSet<>(fieldNamesToIgnore);
-        Set<String> keys = new HashSet(values.keySet());
 
-        for (String key : keys) {
-            if (!ignorekeys.contains(key)) {
-                values.remove(key);
+        changeTogether(() -> {
+            final FieldValue[] current = currentValues();
+            for (int slot = 0; slot < current.length; slot++) {
+                final FieldValue value = current[slot];
+                if (value!=null && !ignorekeys.contains(value.getName().toLowerCase())) {
+                    setValueInSlot(slot, null);
+                }
             }
-        }
+        });
     }
 
     public InstanceFields cloned(){
         final InstanceFields clone = new InstanceFields(objectDefinition);
-        for(FieldValue value : values.values()){
-            clone.addValue(value.cloned());
+        for(FieldValue value : currentValues()){
+            if(value!=null) {
+                clone.addValue(value.cloned());
+            }
         }
         return clone;
     }
@@ -127,7 +332,8 @@ public class InstanceFields {
 
         final ValidationReport validationReport = field.validate(value);
         if (validationReport.isValid()) {
-            addValue(FieldValue.is(value.getName(),
+            // typed once here so reads do not need to parse the value
+            addValue(FieldValue.is(value.getName(), field.getType(),
                     field.getActualValueToAdd(value)));
 
         } else {
@@ -171,7 +377,7 @@ public class InstanceFields {
             if(shouldValidateValue) {
                 setFieldValue(field, FieldValue.is(fieldName, value));
             }else{
-                addValue(FieldValue.is(fieldName, value));
+                addValue(FieldValue.is(fieldName, field.getType(), value));
             }
             return;
         }else{
@@ -0,0 +1,31 @@
+package uk.co.compendiumdev.thingifier.core.domain.instances;
+
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+
+import java.util.List;
+
+/*
+    Told about a change to the value of a field before it is made,
+    so that anything built from the values e.g. indexes, can be kept in step.
+
+    Throwing an exception stops the change.
+
+    from is null when the field had no assigned value,
+    to is null when the assigned value is being removed.
+ */
+public interface InstanceFieldsListener {
+
+    void changing(Field field, FieldValue from, FieldValue to);
+
+    /*
+        Told about the changes made in changeTogether before any of them are
+        published, throwing an exception stops all of them so a listener which
+        can not make every change must undo any it has made before throwing.
+     */
+    default void changingTogether(final List<FieldChange> changes) {
+        for(FieldChange change : changes){
+            changing(change.getField(), change.getFrom(), change.getTo());
+        }
+    }
+}
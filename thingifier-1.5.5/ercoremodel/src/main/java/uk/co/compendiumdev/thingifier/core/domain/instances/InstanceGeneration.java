@@ -0,0 +1,19 @@
+package uk.co.compendiumdev.thingifier.core.domain.instances;
+
+/*
+    The instances a Thing has managed since it was last cleared share a
+    generation, so clearing the Thing marks them all as deleted at once
+    rather than visiting each of them.
+ */
+public final class InstanceGeneration {
+
+    private volatile boolean cleared;
+
+    public boolean isCleared() {
+        return cleared;
+    }
+
+    public void clear() {
+        cleared = true;
+    }
+}
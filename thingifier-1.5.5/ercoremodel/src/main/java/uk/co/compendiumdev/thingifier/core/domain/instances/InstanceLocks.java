@@ -0,0 +1,83 @@
+package uk.co.compendiumdev.thingifier.core.domain.instances;
+
+import uk.co.compendiumdev.thingifier.core.journal.JournalBatch;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/*
+    Striped write locks for instances, writes to different instances run
+    in parallel, writes to the same instance run one at a time.
+
+    A write which spans two instances e.g. connecting them, takes both
+    locks lowest stripe first so two writes can never wait on each other.
+
+    The guid of an instance can be amended, so the stripe is chosen from
+    the instance itself rather than its guid.
+
+    Changes are journalled in the order they are made under the locks,
+    and waited for once the locks are released.
+ */
+public final class InstanceLocks {
+
+    private static final int STRIPES = 64;
+    private static final ReentrantLock[] locks = createLocks();
+
+    private InstanceLocks(){
+    }
+
+    private static ReentrantLock[] createLocks() {
+        final ReentrantLock[] created = new ReentrantLock[STRIPES];
+        for(int stripe=0; stripe<STRIPES; stripe++){
+            created[stripe] = new ReentrantLock();
+        }
+        return created;
+    }
+
+    static int stripeFor(final ThingInstance instance) {
+        final int hash = System.identityHashCode(instance);
+        return (hash ^ (hash >>> 16)) & (STRIPES - 1);
+    }
+
+    public static <T> T whileLocked(final ThingInstance instance, final Supplier<T> write) {
+        return JournalBatch.recordTogether(() -> locked(instance, write));
+    }
+
+    private static <T> T locked(final ThingInstance instance, final Supplier<T> write) {
+        final ReentrantLock lock = locks[stripeFor(instance)];
+        lock.lock();
+        try{
+            return write.get();
+        }finally{
+            lock.unlock();
+        }
+    }
+
+    public static <T> T whileLocked(final ThingInstance one, final ThingInstance two,
+                                    final Supplier<T> write) {
+        return JournalBatch.recordTogether(() -> locked(one, two, write));
+    }
+
+    private static <T> T locked(final ThingInstance one, final ThingInstance two,
+                                final Supplier<T> write) {
+        final int oneStripe = stripeFor(one);
+        final int twoStripe = stripeFor(two);
+        if(oneStripe==twoStripe){
+            return locked(one, write);
+        }
+
+        final ReentrantLock first = locks[Math.min(oneStripe, twoStripe)];
+        final ReentrantLock second = locks[Math.max(oneStripe, twoStripe)];
+        first.lock();
+        try{
+            second.lock();
+            try{
+                return write.get();
+            }finally{
+                second.unlock();
+            }
+        }finally{
+            first.unlock();
+        }
+    }
+}
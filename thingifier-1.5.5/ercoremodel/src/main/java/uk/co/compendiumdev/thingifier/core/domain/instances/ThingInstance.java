@@ -14,6 +14,10 @@ public class ThingInstance {
     private final ThingInstanceRelationships relationships;
     private final ThingDefinition entityDefinition;
     private final InstanceFields instanceFields;
+    // set by the Thing managing the instance, a deleted instance can not be related to
+    private volatile boolean deleted;
+    // the instances managed with this one, which are all deleted when the Thing is cleared
+    private volatile InstanceGeneration generation;
 
 
     /**
@@ -34,11 +38,37 @@ public class ThingInstance {
      * @param eDefn
      */
     private ThingInstance(ThingDefinition eDefn) {
+        this(eDefn, eDefn.instantiateFields());
+    }
+
+    private ThingInstance(final ThingDefinition eDefn, final InstanceFields fields) {
         this.entityDefinition = eDefn;
-        this.instanceFields = eDefn.instantiateFields();
+        this.instanceFields = fields;
         this.relationships = new ThingInstanceRelationships(this);
     }
 
+    /*
+        an instance with the values, including the guid, in the slots of its
+        fields e.g. read from a snapshot, the values are not validated and no
+        ids are used
+     */
+    static public ThingInstance restore(final ThingDefinition entityDefn, final FieldValue[] valuesBySlot){
+        return new ThingInstance(entityDefn, entityDefn.instantiateFields(valuesBySlot));
+    }
+
+    public boolean isDeleted() {
+        final InstanceGeneration managedWith = generation;
+        return deleted || (managedWith!=null && managedWith.isCleared());
+    }
+
+    public void setDeleted(final boolean isDeleted) {
+        this.deleted = isDeleted;
+    }
+
+    public void setGeneration(final InstanceGeneration generation) {
+        this.generation = generation;
+    }
+
     private void addGUIDtoInstance(){
         // todo: this adds a field called 'guid' but there may be other GUID fields,
         // allow GUIDs to be defined as being 'auto' in which case we will auto generate them
@@ -199,26 +229,31 @@ public class ThingInstance {
     public void setFieldValuesFromArgsIgnoring(List<FieldValue> fieldValues,
                                                final List<String> ignoreFields) {
 
-        for (FieldValue entry : fieldValues) {
+        // readers see all of the new values or none of them
+        instanceFields.changeTogether(() -> {
+            for (FieldValue entry : fieldValues) {
 
-            // Handle attempt to amend a protected field
-            if (!ignoreFields.contains(entry.getName())) {
-                // set the value because it is not protected
-                setValue(entry.getName(), entry.asString());
+                // Handle attempt to amend a protected field
+                if (!ignoreFields.contains(entry.getName())) {
+                    // set the value because it is not protected
+                    setValue(entry.getName(), entry.asString());
+                }
             }
-        }
+        });
     }
 
     public void overrideFieldValuesFromArgsIgnoring(final List<FieldValue> fieldValues,
                                                     final List<String> ignoreFields) {
-        for (FieldValue entry : fieldValues) {
-
-            // Handle attempt to amend a protected field
-            if (!ignoreFields.contains(entry.getName())) {
-                // set the value because it is not protected
-                overrideValue(entry.getName(), entry.asString());
+        instanceFields.changeTogether(() -> {
+            for (FieldValue entry : fieldValues) {
+
+                // Handle attempt to amend a protected field
+                if (!ignoreFields.contains(entry.getName())) {
+                    // set the value because it is not protected
+                    overrideValue(entry.getName(), entry.asString());
+                }
             }
-        }
+        });
     }
 
 }
@@ -1,5 +1,6 @@
 package uk.co.compendiumdev.thingifier.core.domain.instances;
 
+import uk.co.compendiumdev.thingifier.core.journal.JournalBatch;
 import uk.co.compendiumdev.thingifier.core.reporting.ValidationReport;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipDefinition;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipVector;
@@ -9,22 +10,42 @@ import java.util.*;
 
 import static uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.Optionality.MANDATORY_RELATIONSHIP;
 
+/*
+    The relationships of an instance are indexed by their definition, by the
+    instance at the other end, and by the type of the 'to' instance, so that
+    connecting, finding and removing relationships does not scan them all.
+
+    Most instances have no relationships, so nothing is allocated until the
+    first is connected. The relationships are kept in the order they were
+    added, changes are made one at a time, and reads copy what they need
+    while the relationships are not changing, so a request rendering the
+    relationships never fails because another request is changing them.
+ */
 public class ThingInstanceRelationships {
 
-    private final List<RelationshipInstance> relationships;
+    // all guarded by this, null until the first relationship is added
+    private Set<RelationshipInstance> relationships;
+    private Map<RelationshipDefinition, Set<RelationshipInstance>> byDefinition;
+    private Map<ThingInstance, Set<RelationshipInstance>> byPeer;
+    private Map<String, Set<RelationshipInstance>> byToType;
     private final ThingInstance forThis;
+    private volatile ThingInstanceRelationshipsListener listener;
 
     public ThingInstanceRelationships(final ThingInstance thingInstance){
         this.forThis = thingInstance;
-        this.relationships = new ArrayList<>();
+    }
+
+    public void setListener(final ThingInstanceRelationshipsListener listener) {
+        this.listener = listener;
     }
 
     public String toString() {
         StringBuilder output = new StringBuilder();
 
-        if (!relationships.isEmpty()) {
+        final List<RelationshipInstance> all = all();
+        if (!all.isEmpty()) {
             output.append(String.format("\t\t\t\t\t Relationships:%n"));
-            for (RelationshipInstance relatesTo : relationships) {
+            for (RelationshipInstance relatesTo : all) {
                 output.append("\t\t\t\t\t" + relatesTo.toString());
             }
         }
@@ -63,16 +84,144 @@ public class ThingInstanceRelationships {
         RelationshipInstance related = new RelationshipInstance(
                                                 relationshipDefinition,
                                                 forThis, thing);
-        this.relationships.add(related);
 
-        if (relationshipDefinition.isTwoWay()) {
-            thing.getRelationships().add(related);
+        // both ends are locked so a delete of either end sees the whole relationship or none of it
+        InstanceLocks.whileLocked(forThis, thing, () -> {
+            if (forThis.isDeleted() || thing.isDeleted()) {
+                throw new IllegalArgumentException(
+                        String.format("Cannot relate %s to a deleted instance",
+                                relationshipName));
+            }
+
+            add(related);
+
+            if (relationshipDefinition.isTwoWay()) {
+                thing.getRelationships().add(related);
+            }
+
+            if (listener != null) {
+                listener.connected(relationshipName, thing);
+            }
+            return related;
+        });
+
+    }
+
+    /*
+        true when the named relationship from this instance to the thing has been made
+     */
+    public boolean isConnected(final String relationshipName, final ThingInstance thing) {
+        final RelationshipVector relationship = forThis.getEntity().
+                                                    getNamedRelationshipTo(relationshipName, thing.getEntity());
+        if(relationship==null){
+            return false;
+        }
+        for(RelationshipInstance related : involving(thing)){
+            if(related.getRelationship()==relationship.getRelationshipDefinition() &&
+                    related.getFrom()==forThis && related.getTo()==thing){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /*
+        Restore a relationship read from a snapshot, before the instances are
+        used, so neither end is locked or checked and nothing is journalled
+     */
+    public void restore(final RelationshipDefinition definition, final ThingInstance to) {
+        final RelationshipInstance related = new RelationshipInstance(definition, forThis, to);
+        add(related);
+        if(definition.isTwoWay()){
+            to.getRelationships().add(related);
+        }
+    }
+
+    private synchronized void add(final RelationshipInstance relationship) {
+        if(relationships==null){
+            relationships = new LinkedHashSet<>();
+            byDefinition = new HashMap<>();
+            byPeer = new HashMap<>();
+            byToType = new HashMap<>();
+        }
+        if(!relationships.add(relationship)){
+            return;
+        }
+        addTo(byDefinition, relationship.getRelationship(), relationship);
+        addTo(byPeer, relationship.getOtherThingInstance(forThis), relationship);
+        addTo(byToType, typeKey(relationship.getTo().getEntity().getName()), relationship);
+    }
+
+    private synchronized void remove(final RelationshipInstance relationship) {
+        if(relationships==null || !relationships.remove(relationship)){
+            return;
+        }
+        removeFrom(byDefinition, relationship.getRelationship(), relationship);
+        removeFrom(byPeer, relationship.getOtherThingInstance(forThis), relationship);
+        removeFrom(byToType, typeKey(relationship.getTo().getEntity().getName()), relationship);
+    }
+
+    private static <K> void addTo(final Map<K, Set<RelationshipInstance>> index,
+                                  final K key,
+                                  final RelationshipInstance relationship) {
+        index.computeIfAbsent(key, k -> new LinkedHashSet<>()).add(relationship);
+    }
+
+    private static <K> void removeFrom(final Map<K, Set<RelationshipInstance>> index,
+                                       final K key,
+                                       final RelationshipInstance relationship) {
+        final Set<RelationshipInstance> indexed = index.get(key);
+        if(indexed!=null){
+            indexed.remove(relationship);
+            if(indexed.isEmpty()){
+                index.remove(key);
+            }
+        }
+    }
+
+    // the reads copy the relationships they need, in the order they were added
+
+    private synchronized List<RelationshipInstance> all() {
+        return relationships==null ? new ArrayList<>() : new ArrayList<>(relationships);
+    }
+
+    private synchronized List<RelationshipInstance> withPeer(final ThingInstance thing) {
+        return copyOf(byPeer, thing);
+    }
+
+    private synchronized List<RelationshipInstance> ofToType(final String type) {
+        return copyOf(byToType, typeKey(type));
+    }
+
+    private synchronized List<ThingInstance> peers() {
+        return byPeer==null ? new ArrayList<>() : new ArrayList<>(byPeer.keySet());
+    }
+
+    // there are only ever a few definitions, but there can be many relationships
+    private synchronized List<RelationshipInstance> knownAs(final String relationshipName) {
+        final List<RelationshipInstance> known = new ArrayList<>();
+        if(byDefinition!=null){
+            for (Map.Entry<RelationshipDefinition, Set<RelationshipInstance>> definition : byDefinition.entrySet()) {
+                if (definition.getKey().isKnownAs(relationshipName)) {
+                    known.addAll(definition.getValue());
+                }
+            }
         }
+        return known;
+    }
 
+    private synchronized boolean hasRelationshipsDefinedBy(final RelationshipDefinition definition) {
+        return byDefinition!=null && byDefinition.containsKey(definition);
     }
 
-    private void add(final RelationshipInstance relationship) {
-        relationships.add(relationship);
+    private static <K> List<RelationshipInstance> copyOf(final Map<K, Set<RelationshipInstance>> index,
+                                                         final K key) {
+        final Set<RelationshipInstance> indexed = index==null ? null : index.get(key);
+        return indexed==null ? new ArrayList<>() : new ArrayList<>(indexed);
+    }
+
+    private static String typeKey(final String typeName) {
+        return typeName.toLowerCase();
     }
 
     public ThingDefinition getTypeOfConnectableItems(final String relationshipName) {
@@ -95,11 +244,9 @@ public class ThingInstanceRelationships {
 
     public Collection<ThingInstance> getConnectedItems(final String relationshipName) {
         Set<ThingInstance> theConnectedItems = new HashSet<>();
-        for (RelationshipInstance relationship : relationships) {
-            if (relationship.getRelationship().isKnownAs(relationshipName)) {
-                theConnectedItems.add(
-                        relationship.getOtherThingInstance(forThis));
-            }
+        for (RelationshipInstance relationship : knownAs(relationshipName)) {
+            theConnectedItems.add(
+                    relationship.getOtherThingInstance(forThis));
         }
 
         return theConnectedItems;
@@ -107,33 +254,41 @@ public class ThingInstanceRelationships {
 
     public List<ThingInstance> getConnectedItemsOfType(final String type) {
         List<ThingInstance> theConnectedItems = new ArrayList<>();
-        for (RelationshipInstance relationship : relationships) {
-            if (relationship.getTo().getEntity().getName().
-                    toLowerCase().contentEquals(type.toLowerCase())) {
-                theConnectedItems.add(relationship.getTo());
-            }
+        for (RelationshipInstance relationship : ofToType(type)) {
+            theConnectedItems.add(relationship.getTo());
         }
         return theConnectedItems;
     }
 
     public List<ThingInstance> removeRelationshipsInvolving(final ThingInstance thing,
                                                             final String relationshipName) {
+        return InstanceLocks.whileLocked(forThis, thing, () -> {
+            final List<ThingInstance> thingsToDelete = removeLockedRelationshipsInvolving(thing, relationshipName);
+            if (listener != null) {
+                listener.disconnected(relationshipName, thing);
+            }
+            return thingsToDelete;
+        });
+    }
+
+    private List<ThingInstance> removeLockedRelationshipsInvolving(final ThingInstance thing,
+                                                                   final String relationshipName) {
 
         List<ThingInstance> thingsToDelete = new ArrayList<>();
         List<RelationshipInstance> toDelete = new ArrayList<>();
 
-        for (RelationshipInstance relationship : relationships) {
+        for (RelationshipInstance relationship : involving(thing)) {
             if (relationship.getRelationship().isKnownAs(relationshipName)) {
-                if (relationship.involves(thing)) {
-                    toDelete.add(relationship);
-                    thingsToDelete.addAll(relationship.instancesSubjectToMandatoryRelationship());
-                    // delete any relationship to or from
-                    thing.getRelationships().remove(relationship);
-                }
+                toDelete.add(relationship);
+                thingsToDelete.addAll(relationship.instancesSubjectToMandatoryRelationship());
             }
         }
 
-        relationships.removeAll(toDelete);
+        for (RelationshipInstance relationship : toDelete) {
+            remove(relationship);
+            // delete any relationship to or from
+            thing.getRelationships().remove(relationship);
+        }
 
         return thingsToDelete;
     }
@@ -143,55 +298,85 @@ public class ThingInstanceRelationships {
         'things' that are no longer valid since they were involved in a mandatory relationship.
      */
     public List<ThingInstance> removeAllRelationships() {
+        return JournalBatch.recordTogether(this::removeEachRelationship);
+    }
+
+    private List<ThingInstance> removeEachRelationship() {
         List<ThingInstance> deleteThese = new ArrayList<>();
 
         final ThingInstance me = forThis;
-        ThingInstance them;
 
-        for (RelationshipInstance relationship : relationships) {
-            if (relationship.getFrom() == forThis) {
-                // me -> them
-                them= relationship.getTo();
-            } else {
-                // them -> me
-                them = relationship.getFrom();
-            }
-
-            them.getRelationships().removeAllRelationshipsInvolving(me);
-            deleteThese.addAll(relationship.instancesSubjectToMandatoryRelationship());
+        // one pair of instances is locked at a time
+        for (ThingInstance them : peers()) {
+            deleteThese.addAll(removeAllRelationshipsInvolving(them));
         }
 
-        relationships.clear();
+        // anything left relates us to ourselves
+        deleteThese.addAll(removeAllRelationshipsInvolving(me));
 
-        return deleteThese;
-    }
+        if (listener != null) {
+            listener.disconnectedAll();
+        }
 
-    private void remove(final RelationshipInstance relationship) {
-        relationships.remove(relationship);
+        return deleteThese;
     }
 
+    /*
+        Remove the relationships with the thing, from both ends
+     */
     public List<ThingInstance> removeAllRelationshipsInvolving(final ThingInstance thing) {
 
-        List<ThingInstance> deleteThings = new ArrayList<>();
+        return InstanceLocks.whileLocked(forThis, thing, () -> {
+            List<ThingInstance> deleteThings = new ArrayList<>();
 
-        List<RelationshipInstance> toDelete = new ArrayList<>();
-
-        for (RelationshipInstance relationship : relationships) {
-            if(relationship.involves(thing)){
-                toDelete.add(relationship);
+            final List<RelationshipInstance> toDelete = involving(thing);
+            for (RelationshipInstance relationship : toDelete) {
                 deleteThings.addAll(relationship.instancesSubjectToMandatoryRelationship());
+                remove(relationship);
+                if (thing != forThis) {
+                    thing.getRelationships().remove(relationship);
+                }
             }
-        }
 
-        relationships.removeAll(toDelete);
+            return deleteThings;
+        });
+    }
 
-        return deleteThings;
+    /*
+        The 'things' that would no longer be valid if all the relationships were removed,
+        without removing them.
+     */
+    public List<ThingInstance> instancesSubjectToMandatoryRelationships() {
+        List<ThingInstance> subjectTo = new ArrayList<>();
+        for (RelationshipInstance relationship : all()) {
+            subjectTo.addAll(relationship.instancesSubjectToMandatoryRelationship());
+        }
+        return subjectTo;
     }
 
+    // every relationship involves this instance, the others are found by the instance at the other end
+    private List<RelationshipInstance> involving(final ThingInstance thing) {
+        if(thing==forThis){
+            return all();
+        }
+        return withPeer(thing);
+    }
 
+    /*
+        the relationships which were made from this instance, in the order they were made
+     */
+    public List<RelationshipInstance> getRelationshipsFromThis() {
+        final List<RelationshipInstance> fromThis = new ArrayList<>();
+        for (RelationshipInstance relationship : all()) {
+            if (relationship.getFrom() == forThis) {
+                fromThis.add(relationship);
+            }
+        }
+        return fromThis;
+    }
 
-    public boolean hasAnyRelationshipInstances() {
-        return !relationships.isEmpty();
+    public synchronized boolean hasAnyRelationshipInstances() {
+        return relationships!=null && !relationships.isEmpty();
     }
 
 
@@ -209,13 +394,7 @@ public class ThingInstanceRelationships {
         for(RelationshipVector vector : theRelationshipVectors){
             // for each definition, does it have relationships that match
             if(vector.getOptionality() == MANDATORY_RELATIONSHIP){
-                boolean foundRelationship = false;
-                for(RelationshipInstance relationship : relationships){
-                    if(relationship.getRelationship()==vector.getRelationshipDefinition()){
-                        foundRelationship=true;
-                    }
-                }
-                if(!foundRelationship){
+                if(!hasRelationshipsDefinedBy(vector.getRelationshipDefinition())){
                     report.combine(
                             new ValidationReport().
                                     setValid(false).
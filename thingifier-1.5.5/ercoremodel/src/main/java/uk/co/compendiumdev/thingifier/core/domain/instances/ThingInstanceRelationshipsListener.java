@@ -0,0 +1,17 @@
+package uk.co.compendiumdev.thingifier.core.domain.instances;
+
+/*
+    Told about the relationships an instance makes or removes, after the
+    change has been made.
+
+    Relationships removed because the instance at the other end removed
+    them, or was deleted, are told to the other instance instead.
+ */
+public interface ThingInstanceRelationshipsListener {
+
+    void connected(String relationshipName, ThingInstance to);
+
+    void disconnected(String relationshipName, ThingInstance from);
+
+    void disconnectedAll();
+}
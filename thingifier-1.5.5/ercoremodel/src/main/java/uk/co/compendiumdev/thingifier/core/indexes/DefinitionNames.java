@@ -0,0 +1,78 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipDefinition;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+    The names of the things and relationships in a model, so a name in a
+    query path is a single probe of a table rather than compared with
+    each definition.
+
+    Built from the definitions as they are, a new one is needed when
+    things or relationships are defined.
+ */
+public final class DefinitionNames {
+
+    private final Map<String, Thing> thingsByName;
+    private final NameTable<Thing> thingsByPlural;
+    private final NameTable<RelationshipDefinition> relationshipNames;
+    private final Set<String> names;
+
+    public DefinitionNames(final Collection<Thing> things,
+                           final Map<String, RelationshipDefinition> relationships){
+
+        thingsByName = new HashMap<>();
+        final Set<String> allNames = new LinkedHashSet<>();
+        NameTable<Thing> plurals = NameTable.empty();
+        for(Thing thing : things){
+            thingsByName.put(thing.definition().getName(), thing);
+            allNames.add(thing.definition().getName());
+            allNames.add(thing.definition().getPlural());
+            if(!plurals.contains(thing.definition().getPlural())){
+                plurals = plurals.with(thing.definition().getPlural(), thing);
+            }
+        }
+        thingsByPlural = plurals;
+
+        // a relationship is known by its name and by its reversed name
+        NameTable<RelationshipDefinition> named = NameTable.empty();
+        for(Map.Entry<String, RelationshipDefinition> relationship : relationships.entrySet()){
+            named = named.with(relationship.getKey(), relationship.getValue());
+            allNames.add(relationship.getKey());
+            if(relationship.getValue().isTwoWay()){
+                named = named.with(relationship.getValue().getReversedRelationship().getName(),
+                                    relationship.getValue());
+                allNames.add(relationship.getValue().getReversedRelationship().getName());
+            }
+        }
+        relationshipNames = named;
+        names = Collections.unmodifiableSet(allNames);
+    }
+
+    /*
+        every thing name, plural and relationship name, as they were defined
+     */
+    public Set<String> getNames() {
+        return names;
+    }
+
+    public Thing getThingNamed(final String name) {
+        return thingsByName.get(name);
+    }
+
+    // plurals and relationship names are not case sensitive
+    public Thing getThingWithPluralNamed(final String plural) {
+        return thingsByPlural.get(plural);
+    }
+
+    public boolean isRelationshipNamed(final String name) {
+        return relationshipNames.contains(name);
+    }
+}
@@ -0,0 +1,82 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    A model wide GUID -> (Thing, ThingInstance) lookup so that finding
+    an instance by GUID does not need to know, or search, each Thing.
+
+    The Things in an EntityRelModel keep this up to date as instances
+    are added and deleted. A Thing which is cleared does not remove its
+    instances, they are deleted, so they are dropped when next looked up.
+ */
+public final class GuidDirectory {
+
+    private final Map<String, Entry> entries;
+
+    public GuidDirectory(){
+        entries = new ConcurrentHashMap<>();
+    }
+
+    public void add(final String guid, final Thing thing, final ThingInstance instance) {
+        entries.put(guid, new Entry(thing, instance));
+    }
+
+    public void remove(final String guid, final ThingInstance instance) {
+        final Entry entry = entries.get(guid);
+        // only remove if the guid has not been reused by another instance
+        if(entry!=null && entry.instance==instance){
+            entries.remove(guid, entry);
+        }
+    }
+
+    public ThingInstance findInstance(final String guid) {
+        final Entry entry = find(guid);
+        if(entry==null){
+            return null;
+        }
+        return entry.instance;
+    }
+
+    public Thing findThing(final String guid) {
+        final Entry entry = find(guid);
+        if(entry==null){
+            return null;
+        }
+        return entry.thing;
+    }
+
+    private Entry find(final String guid) {
+        if(guid==null){
+            return null;
+        }
+        final Entry entry = entries.get(guid);
+        if(entry!=null && entry.instance.isDeleted()){
+            entries.remove(guid, entry);
+            return null;
+        }
+        return entry;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static final class Entry {
+        private final Thing thing;
+        private final ThingInstance instance;
+
+        private Entry(final Thing thing, final ThingInstance instance){
+            this.thing = thing;
+            this.instance = instance;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+/*
+    An int -> ThingInstance map for the values of an ID field.
+
+    Open addressing with linear probing over primitive arrays so an
+    id lookup does not box the id or walk Entry objects, a slot is
+    free when its instance is null (ids can be 0 or negative when set by a PUT).
+ */
+public final class IdIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private int[] ids;
+    private ThingInstance[] instances;
+    private int size;
+
+    public IdIndex(){
+        ids = new int[INITIAL_CAPACITY];
+        instances = new ThingInstance[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    public synchronized ThingInstance get(final int id) {
+        final int mask = ids.length - 1;
+        int slot = slotFor(id, mask);
+        while(instances[slot]!=null){
+            if(ids[slot]==id){
+                return instances[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public synchronized void put(final int id, final ThingInstance instance) {
+        final int slot = findSlotToAdd(id);
+        if(instances[slot]==null){
+            ids[slot] = id;
+            size++;
+        }
+        instances[slot] = instance;
+    }
+
+    /*
+        @return the instance already using the id, or null if the id was added for the instance
+     */
+    public synchronized ThingInstance putIfAbsent(final int id, final ThingInstance instance) {
+        final int slot = findSlotToAdd(id);
+        if(instances[slot]!=null){
+            return instances[slot];
+        }
+        ids[slot] = id;
+        instances[slot] = instance;
+        size++;
+        return null;
+    }
+
+    /*
+        only remove the id if it still refers to the instance,
+        another instance may have been given the id since
+     */
+    public synchronized void remove(final int id, final ThingInstance instance) {
+        final int mask = ids.length - 1;
+        int slot = slotFor(id, mask);
+        while(instances[slot]!=null){
+            if(ids[slot]==id){
+                if(instances[slot]==instance){
+                    deleteSlot(slot, mask);
+                }
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        ids = new int[INITIAL_CAPACITY];
+        instances = new ThingInstance[INITIAL_CAPACITY];
+        size = 0;
+    }
+
+    // the slot holding the id, or the free slot where it should be added
+    private int findSlotToAdd(final int id) {
+        if((size + 1) * 4 > ids.length * 3){
+            resize(ids.length * 2);
+        }
+
+        final int mask = ids.length - 1;
+        int slot = slotFor(id, mask);
+        while(instances[slot]!=null && ids[slot]!=id){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // backward shift deletion so we never need tombstones
+    private void deleteSlot(int free, final int mask) {
+        int slot = free;
+        while(true){
+            slot = (slot + 1) & mask;
+            if(instances[slot]==null){
+                break;
+            }
+            final int home = slotFor(ids[slot], mask);
+            // move the entry back if its home is not between the free slot and where it is now
+            if(((slot - home) & mask) >= ((slot - free) & mask)){
+                ids[free] = ids[slot];
+                instances[free] = instances[slot];
+                free = slot;
+            }
+        }
+        instances[free] = null;
+        size--;
+    }
+
+    private void resize(final int capacity) {
+        final int[] oldIds = ids;
+        final ThingInstance[] oldInstances = instances;
+
+        ids = new int[capacity];
+        instances = new ThingInstance[capacity];
+
+        final int mask = capacity - 1;
+        for(int old = 0; old < oldIds.length; old++){
+            if(oldInstances[old]!=null){
+                int slot = slotFor(oldIds[old], mask);
+                while(instances[slot]!=null){
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[old];
+                instances[slot] = oldInstances[old];
+            }
+        }
+    }
+
+    private static int slotFor(final int id, final int mask) {
+        // ids are mostly sequential, spread them so neighbours don't cluster
+        final int hash = id * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+}
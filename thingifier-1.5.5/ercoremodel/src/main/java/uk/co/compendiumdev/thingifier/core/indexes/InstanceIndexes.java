@@ -0,0 +1,665 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.instances.FieldChange;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+    The indexes over the instances of a Thing.
+
+    Indexes are created when first needed, from the instances already
+    in the Thing, because fields can be defined after instances exist.
+    After that the Thing tells us about every added and removed instance,
+    and every change to a field value of an instance it manages.
+
+    Unique fields (including ids) map a value to the one instance using it,
+    indexed fields map a value to all the instances with that value.
+    Ids, and indexed INTEGER and FLOAT fields, also have a sorted range index.
+    Searchable fields share one inverted text index.
+
+    The 'guid' is not indexed here, the Thing keys its instances by guid.
+ */
+public final class InstanceIndexes {
+
+    private final ThingDefinition definition;
+    private final Collection<ThingInstance> instances;
+
+    // keyed by the field handle, a field replaced in the definition gets a new index
+    private final Map<Field, IdIndex> idIndexes;
+    private final Map<Field, UniqueIndex> uniqueIndexes;
+    private final Map<Field, ValueIndex> valueIndexes;
+    private final Map<Field, RangeIndex> rangeIndexes;
+    private volatile TextIndex textIndex;
+    // the fields of each kind of index, rebuilt when fields are defined or change how they are indexed
+    private volatile IndexedFields indexedFields;
+    // while suspended no index is kept or checked, resume builds them again
+    private volatile boolean suspended;
+
+    public InstanceIndexes(final ThingDefinition definition,
+                           final Collection<ThingInstance> instances){
+        this.definition = definition;
+        this.instances = instances;
+        idIndexes = new ConcurrentHashMap<>();
+        uniqueIndexes = new ConcurrentHashMap<>();
+        valueIndexes = new ConcurrentHashMap<>();
+        rangeIndexes = new ConcurrentHashMap<>();
+    }
+
+    /*
+        Reserve all the unique values of the instance, if any value is
+        used by another instance then nothing is reserved and an
+        IllegalArgumentException is thrown.
+     */
+    public void added(final ThingInstance instance) {
+        if(suspended){
+            return;
+        }
+        final List<Field> reserved = new ArrayList<>();
+        for(Field field : uniqueFields()){
+            final ThingInstance existing = reserve(field, valueOf(instance, field), instance);
+            if(existing!=null && existing!=instance){
+                for(Field reservedField : reserved){
+                    release(reservedField, valueOf(instance, reservedField), instance);
+                }
+                throw duplicateValueError(field, valueOf(instance, field));
+            }
+            reserved.add(field);
+        }
+
+        for(Field field : indexedFields().indexed){
+            addToValueIndex(field, instance);
+        }
+
+        for(Field field : rangeIndexedFields()){
+            addToRange(rangeIndexFor(field), field, instance);
+        }
+
+        if(hasSearchableFields()){
+            textIndex().index(instance, termsOf(instance, null, null));
+        }
+    }
+
+    public void removed(final ThingInstance instance) {
+        if(suspended){
+            return;
+        }
+        for(Field field : uniqueFields()){
+            release(field, valueOf(instance, field), instance);
+        }
+
+        for(Field field : indexedFields().indexed){
+            final String value = indexedValueOf(field, instance.getFields().getAssignedValue(field));
+            if(value!=null){
+                valueIndexFor(field).remove(value, instance);
+            }
+        }
+
+        for(Field field : rangeIndexedFields()){
+            final double value = rangeValueOf(field, instance.getFields().getAssignedValue(field));
+            if(!Double.isNaN(value)){
+                rangeIndexFor(field).remove(value, instance);
+            }
+        }
+
+        if(hasSearchableFields()){
+            textIndex().remove(instance);
+        }
+    }
+
+    /*
+        Build every index from the instances now, rather than when each is first
+        used e.g. once all the instances of a snapshot have been added
+     */
+    public void build() {
+        if(suspended){
+            return;
+        }
+        for(Field field : uniqueFields()){
+            if(field.getType()==FieldType.ID){
+                idIndexFor(field);
+            }else{
+                uniqueIndexFor(field);
+            }
+        }
+        for(Field field : indexedFields().indexed){
+            valueIndexFor(field);
+        }
+        for(Field field : rangeIndexedFields()){
+            rangeIndexFor(field);
+        }
+        if(hasSearchableFields()){
+            textIndex();
+        }
+    }
+
+    /*
+        Drop every index, they are rebuilt from the instances when next used
+     */
+    public void clear() {
+        idIndexes.clear();
+        uniqueIndexes.clear();
+        valueIndexes.clear();
+        rangeIndexes.clear();
+        textIndex = null;
+    }
+
+    /*
+        Stop keeping the indexes, and checking unique values, until resume
+        e.g. while a journal is replayed onto a snapshot which was copied while
+        changes were made, its instances can hold unique values another held
+        first until the replay is done. Nothing should be found through the
+        indexes while they are suspended.
+     */
+    public void suspend() {
+        suspended = true;
+        clear();
+    }
+
+    /*
+        Build every index from the instances as they are now
+     */
+    public void resume() {
+        if(!suspended){
+            return;
+        }
+        suspended = false;
+        clear();
+        build();
+    }
+
+    /*
+        Called before the value is changed, throws IllegalArgumentException
+        when the new value of a unique field is used by another instance
+     */
+    public void changing(final ThingInstance instance, final Field field,
+                         final FieldValue from, final FieldValue to) {
+
+        if(suspended){
+            return;
+        }
+
+        if(isIndexedAsUnique(field)){
+            changingUniqueValue(instance, field, from, to);
+        }
+
+        changingOtherIndexes(instance, field, from, to);
+    }
+
+    /*
+        Called before the values are changed together, either every change
+        is indexed or, when the new value of a unique field is used by another
+        instance, none are and an IllegalArgumentException is thrown
+     */
+    public void changingTogether(final ThingInstance instance, final List<FieldChange> changes) {
+
+        if(suspended){
+            return;
+        }
+
+        // every new unique value is reserved before any old value is released
+        final List<FieldChange> reserved = new ArrayList<>();
+        for(FieldChange change : changes){
+            final Field field = change.getField();
+            final String toValue = keyOf(change.getTo());
+            if(!isIndexedAsUnique(field) || toValue==null || toValue.equals(keyOf(change.getFrom()))){
+                continue;
+            }
+
+            final ThingInstance existing = reserve(field, toValue, instance);
+            if(existing!=null && existing!=instance){
+                for(FieldChange reservedChange : reserved){
+                    release(reservedChange.getField(), keyOf(reservedChange.getTo()), instance);
+                }
+                throw duplicateValueError(field, toValue);
+            }
+            if(existing==null){
+                reserved.add(change);
+            }
+        }
+
+        for(FieldChange change : changes){
+            final Field field = change.getField();
+            final String fromValue = keyOf(change.getFrom());
+            if(isIndexedAsUnique(field) && fromValue!=null && !fromValue.equals(keyOf(change.getTo()))){
+                release(field, fromValue, instance);
+            }
+            changingOtherIndexes(instance, field, change.getFrom(), change.getTo());
+        }
+    }
+
+    private void changingOtherIndexes(final ThingInstance instance, final Field field,
+                                      final FieldValue from, final FieldValue to) {
+        if(field.isIndexed()){
+            changingIndexedValue(instance, field, from, to);
+        }
+
+        if(hasRangeIndex(field)){
+            changingRangedValue(instance, field, from, to);
+        }
+
+        if(field.isSearchable()){
+            textIndex().index(instance, termsOf(instance, field, to));
+        }
+    }
+
+    private void changingUniqueValue(final ThingInstance instance, final Field field,
+                                     final FieldValue from, final FieldValue to) {
+        final String fromValue = keyOf(from);
+        final String toValue = keyOf(to);
+
+        if(fromValue!=null && fromValue.equals(toValue)){
+            return;
+        }
+
+        if(toValue!=null){
+            final ThingInstance existing = reserve(field, toValue, instance);
+            if(existing!=null && existing!=instance){
+                throw duplicateValueError(field, toValue);
+            }
+        }
+
+        if(fromValue!=null){
+            release(field, fromValue, instance);
+        }
+    }
+
+    private void changingIndexedValue(final ThingInstance instance, final Field field,
+                                      final FieldValue from, final FieldValue to) {
+        final String fromValue = indexedValueOf(field, from);
+        final String toValue = indexedValueOf(field, to);
+
+        if(fromValue!=null && fromValue.equals(toValue)){
+            return;
+        }
+
+        final ValueIndex index = valueIndexFor(field);
+        if(toValue!=null){
+            index.add(toValue, instance);
+        }
+        if(fromValue!=null){
+            index.remove(fromValue, instance);
+        }
+    }
+
+    private void changingRangedValue(final ThingInstance instance, final Field field,
+                                     final FieldValue from, final FieldValue to) {
+        final double fromValue = rangeValueOf(field, from);
+        final double toValue = rangeValueOf(field, to);
+
+        if(Double.compare(fromValue, toValue)==0){
+            return;
+        }
+
+        final RangeIndex index = rangeIndexFor(field);
+        if(!Double.isNaN(toValue)){
+            index.add(toValue, instance);
+        }
+        if(!Double.isNaN(fromValue)){
+            index.remove(fromValue, instance);
+        }
+    }
+
+    /*
+        Id lookups must match the exact id text e.g. "01" does not find id 1
+     */
+    public ThingInstance findById(final Field idField, final String idValue) {
+        final Integer id = asId(idValue);
+        if(id==null){
+            return null;
+        }
+
+        final ThingInstance instance = idIndexFor(idField).get(id);
+        if(instance!=null && idValue.equals(valueOf(instance, idField))){
+            return instance;
+        }
+        return null;
+    }
+
+    public ThingInstance findUnique(final Field field, final String value) {
+        return uniqueIndexFor(field).get(value);
+    }
+
+    public boolean isIndexedAsUnique(final Field field) {
+        return field.isUnique() && !isGuid(field);
+    }
+
+    /*
+        The instances which have the value for an indexed field,
+        values are matched exactly as the query filters would match them
+     */
+    public Set<ThingInstance> findEqual(final Field field, final String value) {
+        if(value==null){
+            return Collections.emptySet();
+        }
+        return valueIndexFor(field).get(value);
+    }
+
+    private List<Field> uniqueFields() {
+        return indexedFields().unique;
+    }
+
+    /*
+        The instances with a numeric value in the range, values which are not numeric are never in range
+     */
+    public Set<ThingInstance> findInRange(final Field field, final NumericRange range) {
+        return rangeIndexFor(field).find(range);
+    }
+
+    /*
+        Reads all the instances in the order of their numeric value, null when there
+        are instances without a numeric value, which the range index does not hold
+     */
+    public Supplier<Stream<ThingInstance>> inRangeOrder(final Field field, final boolean descending) {
+        final RangeIndex index = rangeIndexFor(field);
+        if(index.countInstances()!=instances.size()){
+            return null;
+        }
+        return () -> index.inOrder(descending);
+    }
+
+    /*
+        The instances which use all the terms in their searchable fields,
+        with the number of times the terms are used
+     */
+    public Map<ThingInstance, Integer> search(final List<String> terms) {
+        return textIndex().find(terms);
+    }
+
+    public boolean hasSearchableFields() {
+        return !indexedFields().searchable.isEmpty();
+    }
+
+    public boolean hasRangeIndex(final Field field) {
+        switch (field.getType()){
+            case ID:
+                return true;
+            case INTEGER:
+            case FLOAT:
+                return field.isIndexed();
+            default:
+                return false;
+        }
+    }
+
+    private List<Field> rangeIndexedFields() {
+        return indexedFields().ranged;
+    }
+
+    private List<Field> searchableFields() {
+        return indexedFields().searchable;
+    }
+
+    private IndexedFields indexedFields() {
+        final List<Field> fields = definition.getFields();
+        final int indexingChanges = definition.getIndexingVersion();
+        IndexedFields current = indexedFields;
+        if(current==null || current.fields!=fields || current.indexingChanges!=indexingChanges){
+            current = new IndexedFields(fields, indexingChanges);
+            indexedFields = current;
+        }
+        return current;
+    }
+
+    private final class IndexedFields {
+        private final List<Field> fields;
+        private final int indexingChanges;
+        private final List<Field> unique = new ArrayList<>();
+        private final List<Field> indexed = new ArrayList<>();
+        private final List<Field> ranged = new ArrayList<>();
+        private final List<Field> searchable = new ArrayList<>();
+
+        private IndexedFields(final List<Field> fields, final int indexingChanges){
+            this.fields = fields;
+            this.indexingChanges = indexingChanges;
+            for(Field field : fields){
+                if(field.isUnique() && !isGuid(field)){
+                    unique.add(field);
+                }
+                if(field.isIndexed()){
+                    indexed.add(field);
+                }
+                if(hasRangeIndex(field)){
+                    ranged.add(field);
+                }
+                if(field.isSearchable()){
+                    searchable.add(field);
+                }
+            }
+        }
+    }
+
+    private ThingInstance reserve(final Field field, final String value,
+                                  final ThingInstance instance) {
+        if(value==null){
+            return null;
+        }
+
+        if(field.getType()==FieldType.ID){
+            final Integer id = asId(value);
+            if(id==null){
+                return null;
+            }
+            return idIndexFor(field).putIfAbsent(id, instance);
+        }
+
+        return uniqueIndexFor(field).putIfAbsent(value, instance);
+    }
+
+    private void release(final Field field, final String value,
+                         final ThingInstance instance) {
+        if(value==null){
+            return;
+        }
+
+        if(field.getType()==FieldType.ID){
+            final Integer id = asId(value);
+            if(id!=null){
+                idIndexFor(field).remove(id, instance);
+            }
+            return;
+        }
+
+        uniqueIndexFor(field).remove(value, instance);
+    }
+
+    private IdIndex idIndexFor(final Field idField) {
+        IdIndex index = idIndexes.get(idField);
+        if(index==null){
+            synchronized (idIndexes){
+                index = idIndexes.get(idField);
+                if(index==null){
+                    index = new IdIndex();
+                    for(ThingInstance instance : instances){
+                        final Integer id = asId(valueOf(instance, idField));
+                        if(id!=null){
+                            index.putIfAbsent(id, instance);
+                        }
+                    }
+                    idIndexes.put(idField, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    private UniqueIndex uniqueIndexFor(final Field field) {
+        UniqueIndex index = uniqueIndexes.get(field);
+        if(index==null){
+            synchronized (uniqueIndexes){
+                index = uniqueIndexes.get(field);
+                if(index==null){
+                    index = new UniqueIndex();
+                    for(ThingInstance instance : instances){
+                        final String value = valueOf(instance, field);
+                        if(value!=null){
+                            index.putIfAbsent(value, instance);
+                        }
+                    }
+                    uniqueIndexes.put(field, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    private ValueIndex valueIndexFor(final Field field) {
+        ValueIndex index = valueIndexes.get(field);
+        if(index==null){
+            synchronized (valueIndexes){
+                index = valueIndexes.get(field);
+                if(index==null){
+                    index = new ValueIndex();
+                    for(ThingInstance instance : instances){
+                        addToValue(index, field, instance);
+                    }
+                    valueIndexes.put(field, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    private TextIndex textIndex() {
+        TextIndex index = textIndex;
+        if(index==null){
+            synchronized (this){
+                index = textIndex;
+                if(index==null){
+                    index = new TextIndex();
+                    for(ThingInstance instance : instances){
+                        index.index(instance, termsOf(instance, null, null));
+                    }
+                    textIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /*
+        the terms in all the searchable fields of the instance, using the value 'to'
+        for the field being changed because we are told before the change is made
+     */
+    private Map<String, Integer> termsOf(final ThingInstance instance,
+                                         final Field changing, final FieldValue to) {
+        final Map<String, Integer> termCounts = new HashMap<>();
+        for(Field field : searchableFields()){
+            final FieldValue value = field==changing ? to :
+                                        instance.getFields().getAssignedValue(field);
+            for(Map.Entry<String, Integer> termCount :
+                    TextTerms.countTermsIn(indexedValueOf(field, value)).entrySet()){
+                termCounts.merge(termCount.getKey(), termCount.getValue(), Integer::sum);
+            }
+        }
+        return termCounts;
+    }
+
+    private RangeIndex rangeIndexFor(final Field field) {
+        RangeIndex index = rangeIndexes.get(field);
+        if(index==null){
+            synchronized (rangeIndexes){
+                index = rangeIndexes.get(field);
+                if(index==null){
+                    index = new RangeIndex(instances,
+                                instance -> rangeValueOf(field, instance.getFields().getAssignedValue(field)));
+                    rangeIndexes.put(field, index);
+                }
+            }
+        }
+        return index;
+    }
+
+    private void addToRange(final RangeIndex index, final Field field, final ThingInstance instance) {
+        final double value = rangeValueOf(field, instance.getFields().getAssignedValue(field));
+        if(!Double.isNaN(value)){
+            index.add(value, instance);
+        }
+    }
+
+    /*
+        the typed value the range filters compare, NaN when there is no numeric value,
+        ids only have assigned values, other numeric fields are ranged on the value or default
+     */
+    private double rangeValueOf(final Field field, final FieldValue assigned) {
+        if(assigned!=null){
+            return assigned.asNumber(field.getType());
+        }
+        if(field.getType()==FieldType.ID){
+            return Double.NaN;
+        }
+        return field.getDefaultValue().asNumber(field.getType());
+    }
+
+    private void addToValueIndex(final Field field, final ThingInstance instance) {
+        addToValue(valueIndexFor(field), field, instance);
+    }
+
+    private void addToValue(final ValueIndex index, final Field field, final ThingInstance instance) {
+        final String value = indexedValueOf(field, instance.getFields().getAssignedValue(field));
+        if(value!=null){
+            index.add(value, instance);
+        }
+    }
+
+    /*
+        indexed fields are filtered on the value an instance reports,
+        so an instance without an assigned value is indexed under the default
+     */
+    private String indexedValueOf(final Field field, final FieldValue assigned) {
+        if(assigned!=null){
+            return assigned.asString();
+        }
+        if(field.hasDefaultValue()){
+            return field.getDefaultValue().asString();
+        }
+        return field.getType().getDefault();
+    }
+
+    // only assigned values are unique, empty values are not indexed
+    private String valueOf(final ThingInstance instance, final Field field) {
+        return keyOf(instance.getFields().getAssignedValue(field));
+    }
+
+    private String keyOf(final FieldValue value) {
+        if(value==null || value.asString()==null || value.asString().trim().isEmpty()){
+            return null;
+        }
+        return value.asString();
+    }
+
+    private Integer asId(final String value) {
+        if(value==null){
+            return null;
+        }
+        try{
+            return Integer.parseInt(value);
+        }catch(NumberFormatException e){
+            // ids set without validation may not be numeric, these can't be indexed
+            return null;
+        }
+    }
+
+    private boolean isGuid(final Field field) {
+        return field.getName().equalsIgnoreCase("guid");
+    }
+
+    private IllegalArgumentException duplicateValueError(final Field field, final String value) {
+        return new IllegalArgumentException(
+                String.format("Found Existing item with %s of %s",
+                        field.getName(), value));
+    }
+}
@@ -0,0 +1,119 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    A frozen name -> value table where names are not case sensitive.
+
+    Open addressing with linear probing, the hash folds the case of each
+    character and names are compared with equalsIgnoreCase, so a lookup
+    does not lower case the name or allocate. A table is never changed,
+    'with' returns a new table, so it can be read by any thread once published.
+ */
+public final class NameTable<T> {
+
+    private static final NameTable<?> EMPTY = new NameTable<>(new String[1], new Object[1], 0);
+
+    private final String[] names;
+    private final Object[] values;
+    private final int size;
+
+    private NameTable(final String[] names, final Object[] values, final int size){
+        this.names = names;
+        this.values = values;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> NameTable<T> empty() {
+        return (NameTable<T>) EMPTY;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(final String name) {
+        if(name==null){
+            return null;
+        }
+        final int mask = names.length - 1;
+        int slot = hashOf(name) & mask;
+        while(names[slot]!=null){
+            if(names[slot].equalsIgnoreCase(name)){
+                return (T) values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return null;
+    }
+
+    public boolean contains(final String name) {
+        return get(name)!=null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public List<T> values() {
+        final List<T> all = new ArrayList<>(size);
+        for(int slot=0; slot<names.length; slot++){
+            if(names[slot]!=null){
+                all.add((T) values[slot]);
+            }
+        }
+        return all;
+    }
+
+    /*
+        a copy of the table with the value, replacing the value of a name which differs only by case
+     */
+    public NameTable<T> with(final String name, final T value) {
+        final boolean replacing = contains(name);
+        final int newSize = replacing ? size : size + 1;
+
+        // kept at most half full so probes are short
+        int capacity = names.length;
+        while(capacity < newSize * 2){
+            capacity = capacity * 2;
+        }
+
+        final String[] newNames;
+        final Object[] newValues;
+        if(capacity==names.length){
+            newNames = Arrays.copyOf(names, capacity);
+            newValues = Arrays.copyOf(values, capacity);
+        }else{
+            newNames = new String[capacity];
+            newValues = new Object[capacity];
+            for(int slot=0; slot<names.length; slot++){
+                if(names[slot]!=null){
+                    put(newNames, newValues, names[slot], values[slot]);
+                }
+            }
+        }
+        put(newNames, newValues, name, value);
+        return new NameTable<>(newNames, newValues, newSize);
+    }
+
+    private static void put(final String[] names, final Object[] values,
+                            final String name, final Object value) {
+        final int mask = names.length - 1;
+        int slot = hashOf(name) & mask;
+        while(names[slot]!=null && !names[slot].equalsIgnoreCase(name)){
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        values[slot] = value;
+    }
+
+    // the same for names which are equalsIgnoreCase
+    private static int hashOf(final String name) {
+        int hash = 0;
+        for(int index=0; index<name.length(); index++){
+            hash = 31 * hash + Character.toLowerCase(Character.toUpperCase(name.charAt(index)));
+        }
+        return hash ^ (hash >>> 16);
+    }
+}
@@ -0,0 +1,86 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+/*
+    A one sided range of numeric values e.g. > 5 or <= 10,
+    used to scan a RangeIndex and to check a single value.
+ */
+public final class NumericRange {
+
+    private final double bound;
+    private final boolean isLowerBound;
+    private final boolean inclusive;
+
+    private NumericRange(final double bound, final boolean isLowerBound, final boolean inclusive){
+        // -0.0 and 0.0 are the same bound
+        this.bound = bound + 0.0;
+        this.isLowerBound = isLowerBound;
+        this.inclusive = inclusive;
+    }
+
+    public static NumericRange above(final double bound, final boolean inclusive){
+        return new NumericRange(bound, true, inclusive);
+    }
+
+    public static NumericRange below(final double bound, final boolean inclusive){
+        return new NumericRange(bound, false, inclusive);
+    }
+
+    public double getBound() {
+        return bound;
+    }
+
+    public boolean isLowerBound() {
+        return isLowerBound;
+    }
+
+    public boolean isInclusive() {
+        return inclusive;
+    }
+
+    /*
+        the numeric value of a field value, null when the value is not a number
+     */
+    public static Double numberFrom(final String value) {
+        if(value==null){
+            return null;
+        }
+        try{
+            final double number = Double.parseDouble(value.trim());
+            if(Double.isNaN(number)){
+                return null;
+            }
+            // -0.0 and 0.0 are the same value when filtering
+            return number + 0.0;
+        }catch(NumberFormatException e){
+            return null;
+        }
+    }
+
+    /*
+        the value of a float as written, null when the value is not a number,
+        so a bound is compared with float field values at the same precision
+     */
+    public static Double floatFrom(final String value) {
+        if(value==null){
+            return null;
+        }
+        try{
+            final float number = Float.parseFloat(value);
+            if(Float.isNaN(number)){
+                return null;
+            }
+            return number + 0.0;
+        }catch(NumberFormatException e){
+            return null;
+        }
+    }
+
+    // NaN, not a number, is never in range
+    public boolean contains(final double value) {
+        final int comparison = Double.compare(value, bound);
+        if(comparison==0){
+            return inclusive;
+        }
+        return isLowerBound ? comparison > 0 : comparison < 0;
+    }
+}
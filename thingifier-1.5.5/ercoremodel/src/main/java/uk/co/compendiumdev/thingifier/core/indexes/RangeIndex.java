@@ -0,0 +1,142 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.ToDoubleFunction;
+import java.util.stream.Stream;
+
+/*
+    A sorted numeric value -> instances map for INTEGER, FLOAT and ID fields
+    so that range filters e.g. id>=100 only visit the instances in the range,
+    and instances can be read in the order of their values.
+
+    Integers are held as doubles, an int always converts to a double exactly.
+ */
+public final class RangeIndex {
+
+    private final NavigableMap<Double, Set<ThingInstance>> instancesByValue;
+    private volatile int instanceCount;
+
+    public RangeIndex(){
+        instancesByValue = new ConcurrentSkipListMap<>();
+        instanceCount = 0;
+    }
+
+    /*
+        the index of the values of all the instances at once, NaN is no value.
+        The values are sorted first and added in order, which is far quicker
+        than adding them in the order of the instances.
+     */
+    public RangeIndex(final Collection<ThingInstance> instances, final ToDoubleFunction<ThingInstance> valueOf){
+        final List<RangedInstance> ranged = new ArrayList<>(instances.size());
+        for(ThingInstance instance : instances){
+            final double value = valueOf.applyAsDouble(instance);
+            if(!Double.isNaN(value)){
+                ranged.add(new RangedInstance(value, instance));
+            }
+        }
+        ranged.sort(Comparator.comparingDouble(rangedInstance -> rangedInstance.value));
+
+        instancesByValue = new ConcurrentSkipListMap<>();
+        Set<ThingInstance> withValue = null;
+        double value = Double.NaN;
+        for(RangedInstance rangedInstance : ranged){
+            if(withValue==null || Double.compare(value, rangedInstance.value)!=0){
+                value = rangedInstance.value;
+                withValue = ConcurrentHashMap.newKeySet();
+                instancesByValue.put(value, withValue);
+            }
+            withValue.add(rangedInstance.instance);
+        }
+        instanceCount = ranged.size();
+    }
+
+    private static final class RangedInstance {
+        private final double value;
+        private final ThingInstance instance;
+
+        private RangedInstance(final double value, final ThingInstance instance){
+            this.value = value;
+            this.instance = instance;
+        }
+    }
+
+    // writes are serialised, the skip list compute functions are not applied atomically
+    public synchronized void add(final double value, final ThingInstance instance) {
+        Set<ThingInstance> instances = instancesByValue.get(value);
+        if(instances==null){
+            instances = ConcurrentHashMap.newKeySet();
+            instancesByValue.put(value, instances);
+        }
+        if(instances.add(instance)){
+            instanceCount++;
+        }
+    }
+
+    public synchronized void remove(final double value, final ThingInstance instance) {
+        final Set<ThingInstance> instances = instancesByValue.get(value);
+        if(instances!=null){
+            if(instances.remove(instance)){
+                instanceCount--;
+            }
+            if(instances.isEmpty()){
+                instancesByValue.remove(value);
+            }
+        }
+    }
+
+    public Set<ThingInstance> find(final NumericRange range) {
+        final NavigableMap<Double, Set<ThingInstance>> inRange;
+        if(range.isLowerBound()){
+            inRange = instancesByValue.tailMap(range.getBound(), range.isInclusive());
+        }else{
+            inRange = instancesByValue.headMap(range.getBound(), range.isInclusive());
+        }
+
+        final Set<ThingInstance> found = new HashSet<>();
+        for(Set<ThingInstance> instances : inRange.values()){
+            found.addAll(instances);
+        }
+        return Collections.unmodifiableSet(found);
+    }
+
+    /*
+        the instances by value, read as they are needed, instances with the same value are in guid order
+     */
+    public Stream<ThingInstance> inOrder(final boolean descending) {
+        final NavigableMap<Double, Set<ThingInstance>> ordered = descending ?
+                                                    instancesByValue.descendingMap() :
+                                                    instancesByValue;
+        return ordered.values().stream().flatMap(RangeIndex::inGuidOrder);
+    }
+
+    private static Stream<ThingInstance> inGuidOrder(final Set<ThingInstance> instances) {
+        if(instances.size()<2){
+            return instances.stream();
+        }
+        return instances.stream().sorted(Comparator.comparing(ThingInstance::getGUID));
+    }
+
+    public int countValues() {
+        return instancesByValue.size();
+    }
+
+    public int countInstances() {
+        return instanceCount;
+    }
+
+    public synchronized void clear() {
+        instancesByValue.clear();
+        instanceCount = 0;
+    }
+}
@@ -0,0 +1,117 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    An inverted index of term -> (instance -> number of times the term is used)
+    over the searchable fields of a Thing, an instance is indexed with the
+    terms from all of its searchable fields together.
+ */
+public final class TextIndex {
+
+    private final Map<String, Map<ThingInstance, Integer>> postings;
+    // the terms each instance is indexed under, so they can be removed
+    private final Map<ThingInstance, Map<String, Integer>> indexedTerms;
+
+    public TextIndex(){
+        postings = new ConcurrentHashMap<>();
+        indexedTerms = new ConcurrentHashMap<>();
+    }
+
+    /*
+        Replace the terms indexed for the instance, so indexing an instance
+        twice with the same terms leaves the index unchanged
+     */
+    public synchronized void index(final ThingInstance instance, final Map<String, Integer> termCounts) {
+        removeTerms(instance);
+        if(termCounts.isEmpty()){
+            return;
+        }
+
+        for(Map.Entry<String, Integer> termCount : termCounts.entrySet()){
+            postings.computeIfAbsent(termCount.getKey(), term -> new ConcurrentHashMap<>()).
+                    put(instance, termCount.getValue());
+        }
+        indexedTerms.put(instance, termCounts);
+    }
+
+    public synchronized void remove(final ThingInstance instance) {
+        removeTerms(instance);
+    }
+
+    private void removeTerms(final ThingInstance instance) {
+        final Map<String, Integer> termCounts = indexedTerms.remove(instance);
+        if(termCounts==null){
+            return;
+        }
+
+        for(String term : termCounts.keySet()){
+            final Map<ThingInstance, Integer> counts = postings.get(term);
+            if(counts!=null){
+                counts.remove(instance);
+                if(counts.isEmpty()){
+                    postings.remove(term);
+                }
+            }
+        }
+    }
+
+    /*
+        The instances using all the terms, with the number of times they use the terms
+     */
+    public Map<ThingInstance, Integer> find(final List<String> terms) {
+
+        final Map<ThingInstance, Integer> scores = new HashMap<>();
+        if(terms.isEmpty()){
+            return scores;
+        }
+
+        // start from the rarest term so we check as few instances as possible
+        Map<ThingInstance, Integer> rarest = null;
+        for(String term : terms){
+            final Map<ThingInstance, Integer> counts = postings.get(term);
+            if(counts==null){
+                return scores;
+            }
+            if(rarest==null || counts.size() < rarest.size()){
+                rarest = counts;
+            }
+        }
+
+        for(ThingInstance instance : rarest.keySet()){
+            final int score = scoreFor(instance, terms);
+            if(score>0){
+                scores.put(instance, score);
+            }
+        }
+        return scores;
+    }
+
+    private int scoreFor(final ThingInstance instance, final Collection<String> terms) {
+        int score = 0;
+        for(String term : terms){
+            final Map<ThingInstance, Integer> counts = postings.get(term);
+            final Integer count = counts==null ? null : counts.get(instance);
+            if(count==null){
+                return 0;
+            }
+            score = score + count;
+        }
+        return score;
+    }
+
+    public int countTerms() {
+        return postings.size();
+    }
+
+    public synchronized void clear() {
+        postings.clear();
+        indexedTerms.clear();
+    }
+}
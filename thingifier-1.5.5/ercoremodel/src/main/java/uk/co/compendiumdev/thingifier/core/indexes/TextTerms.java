@@ -0,0 +1,46 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/*
+    Splits text into lowercase terms for keyword search,
+    a term is a run of letters or digits.
+ */
+public final class TextTerms {
+
+    private TextTerms(){
+    }
+
+    public static List<String> termsIn(final String text) {
+        final List<String> terms = new ArrayList<>();
+        if(text==null){
+            return terms;
+        }
+
+        int termStart = -1;
+        for(int position = 0; position <= text.length(); position++){
+            final boolean inTerm = position < text.length() &&
+                                    Character.isLetterOrDigit(text.charAt(position));
+            if(inTerm && termStart<0){
+                termStart = position;
+            }
+            if(!inTerm && termStart>=0){
+                terms.add(text.substring(termStart, position).toLowerCase(Locale.ROOT));
+                termStart = -1;
+            }
+        }
+        return terms;
+    }
+
+    public static Map<String, Integer> countTermsIn(final String text) {
+        final Map<String, Integer> counts = new HashMap<>();
+        for(String term : termsIn(text)){
+            counts.merge(term, 1, Integer::sum);
+        }
+        return counts;
+    }
+}
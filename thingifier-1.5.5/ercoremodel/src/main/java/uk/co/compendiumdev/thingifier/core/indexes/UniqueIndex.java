@@ -0,0 +1,42 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    value -> ThingInstance for a field which is declared as unique,
+    putIfAbsent is atomic so two writers can not both claim a value
+ */
+public final class UniqueIndex {
+
+    private final Map<String, ThingInstance> instances;
+
+    public UniqueIndex(){
+        instances = new ConcurrentHashMap<>();
+    }
+
+    public ThingInstance get(final String value) {
+        return instances.get(value);
+    }
+
+    /*
+        @return the instance already using the value, or null if the value was added for the instance
+     */
+    public ThingInstance putIfAbsent(final String value, final ThingInstance instance) {
+        return instances.putIfAbsent(value, instance);
+    }
+
+    public void remove(final String value, final ThingInstance instance) {
+        instances.remove(value, instance);
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    public void clear() {
+        instances.clear();
+    }
+}
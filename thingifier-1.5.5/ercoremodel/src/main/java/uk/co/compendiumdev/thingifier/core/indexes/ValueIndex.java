@@ -0,0 +1,55 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+    A value -> instances map for an indexed field, many instances
+    can share a value so each value has a set of instances.
+ */
+public final class ValueIndex {
+
+    private final Map<String, Set<ThingInstance>> instancesByValue;
+
+    public ValueIndex(){
+        instancesByValue = new ConcurrentHashMap<>();
+    }
+
+    public void add(final String value, final ThingInstance instance) {
+        instancesByValue.compute(value, (key, instances) -> {
+            if(instances==null){
+                instances = ConcurrentHashMap.newKeySet();
+            }
+            instances.add(instance);
+            return instances;
+        });
+    }
+
+    public void remove(final String value, final ThingInstance instance) {
+        // drop the value when no instances are left so the index does not grow with old values
+        instancesByValue.computeIfPresent(value, (key, instances) -> {
+            instances.remove(instance);
+            return instances.isEmpty() ? null : instances;
+        });
+    }
+
+    public Set<ThingInstance> get(final String value) {
+        final Set<ThingInstance> instances = instancesByValue.get(value);
+        if(instances==null){
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(instances);
+    }
+
+    public int countValues() {
+        return instancesByValue.size();
+    }
+
+    public void clear() {
+        instancesByValue.clear();
+    }
+}
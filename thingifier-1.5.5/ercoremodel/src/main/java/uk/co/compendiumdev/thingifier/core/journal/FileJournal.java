@@ -0,0 +1,404 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/*
+    An append only journal file with group commit.
+
+    Each write waits until its entries are on disk, but the entries
+    queued while one batch is being forced to disk are written, and
+    forced, together in the next batch so many writers share one fsync.
+
+    The journal is a file per segment, the first is the path and each
+    later segment adds its number e.g. todos.journal.3, so once a snapshot
+    is durable the segments before it are deleted and the journal does not
+    grow for ever.
+
+    A line which was only partly written when the process stopped is
+    removed from the last segment when the journal is opened. The files
+    are read a block, or a line, at a time, so they are never held in memory.
+
+    When a batch can not be written, what was written of it is truncated
+    and the journal fails, every later write is refused. The changes of the
+    failed batch were made in memory, so changes made after them could not
+    be replayed onto the journal as it is.
+ */
+public final class FileJournal implements Journal {
+
+    private static final int MAXIMUM_BATCH = 1024;
+    private static final int READ_BLOCK = 64 * 1024;
+    // queued by close, the writer stops after writing everything before it
+    private static final PendingEntry CLOSE = new PendingEntry("");
+
+    private final Path path;
+    private final BlockingQueue<PendingEntry> pending;
+    private final Thread writer;
+    private volatile boolean closed;
+    // the write which failed, guarded by pending
+    private volatile IOException failed;
+    // the segments not dropped, the entries queued from now on are in the last, guarded by pending
+    private long firstSegment;
+    private long segment;
+    // the segment being written and the length of its complete lines, only changed by the writer
+    private long writing;
+    private FileChannel channel;
+    private long size;
+
+    public FileJournal(final Path path) {
+        this.path = path;
+        try{
+            final TreeSet<Long> segments = segmentsOf(path);
+            this.firstSegment = segments.isEmpty() ? 0 : segments.first();
+            this.segment = segments.isEmpty() ? 0 : segments.last();
+            this.writing = segment;
+            this.channel = FileChannel.open(segmentPath(segment),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            this.size = lengthOfCompleteLines(channel);
+            channel.truncate(size);
+            channel.position(size);
+        }catch(IOException e){
+            throw new UncheckedIOException("Could not open journal " + path, e);
+        }
+
+        this.pending = new LinkedBlockingQueue<>();
+        this.closed = false;
+        this.writer = new Thread(this::writeBatches, "journal-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    private static TreeSet<Long> segmentsOf(final Path path) throws IOException {
+        final TreeSet<Long> segments = new TreeSet<>();
+        final String name = path.getFileName().toString();
+        final Path directory = path.toAbsolutePath().getParent();
+        try(DirectoryStream<Path> files = Files.newDirectoryStream(directory,
+                                                    file -> file.getFileName().toString().startsWith(name))){
+            for(Path file : files){
+                final String fileName = file.getFileName().toString();
+                if(fileName.equals(name)){
+                    segments.add(0L);
+                }else if(fileName.matches("\\Q" + name + "\\E\\.[0-9]+")){
+                    segments.add(Long.parseLong(fileName.substring(name.length()+1)));
+                }
+            }
+        }
+        return segments;
+    }
+
+    private Path segmentPath(final long number) {
+        return number==0 ? path : path.resolveSibling(path.getFileName() + "." + number);
+    }
+
+    // found from the end of the file, a block at a time
+    private static long lengthOfCompleteLines(final FileChannel channel) throws IOException {
+        final ByteBuffer block = ByteBuffer.allocate(READ_BLOCK);
+        long end = channel.size();
+        while(end>0){
+            final long start = Math.max(0, end - READ_BLOCK);
+            block.clear();
+            block.limit((int)(end - start));
+            read(channel, block, start);
+            for(int index=block.limit()-1; index>=0; index--){
+                if(block.get(index)=='\n'){
+                    return start + index + 1;
+                }
+            }
+            end = start;
+        }
+        return 0;
+    }
+
+    private static void read(final FileChannel channel, final ByteBuffer block, final long from) throws IOException {
+        while(block.hasRemaining()){
+            if(channel.read(block, from + block.position())<0){
+                throw new IOException("Journal is shorter than expected");
+            }
+        }
+    }
+
+    @Override
+    public JournalWrite enqueue(final List<JournalEntry> entries) {
+        final List<PendingEntry> waiting = new ArrayList<>(entries.size());
+        for(JournalEntry entry : entries){
+            waiting.add(new PendingEntry(entry.asLine()));
+        }
+        if(waiting.isEmpty()){
+            return () -> {};
+        }
+
+        synchronized (pending){
+            checkWritable();
+            pending.addAll(waiting);
+        }
+        return () -> {
+            for(PendingEntry entry : waiting){
+                entry.awaitWritten();
+            }
+        };
+    }
+
+    // guarded by pending
+    private void checkWritable() {
+        if(closed){
+            throw new IllegalStateException("Journal is closed " + path);
+        }
+        if(failed!=null){
+            throw new IllegalStateException("Journal could not be written " + path, failed);
+        }
+    }
+
+    /*
+        returns once the file of the new segment exists
+     */
+    @Override
+    public long startSegment() {
+        // the writer starts the next segment when it reaches an entry without a line
+        final PendingEntry next = new PendingEntry(null);
+        final long started;
+        synchronized (pending){
+            checkWritable();
+            segment++;
+            started = segment;
+            pending.add(next);
+        }
+        next.awaitWritten();
+        return started;
+    }
+
+    @Override
+    public void dropSegmentsBefore(final long dropBefore) {
+        final long from;
+        synchronized (pending){
+            if(dropBefore>segment){
+                throw new IllegalArgumentException(
+                        String.format("Journal %s has no segment %d to drop the segments before", path, dropBefore));
+            }
+            from = firstSegment;
+            firstSegment = Math.max(firstSegment, dropBefore);
+        }
+        try{
+            for(long number=from; number<dropBefore; number++){
+                Files.deleteIfExists(segmentPath(number));
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException("Could not drop journal segments before " + dropBefore, e);
+        }
+    }
+
+    private void writeBatches() {
+        final List<PendingEntry> batch = new ArrayList<>();
+        boolean closing = false;
+        while(!closing){
+            try{
+                batch.add(pending.take());
+            }catch(InterruptedException e){
+                // only close stops the writer
+                continue;
+            }
+            pending.drainTo(batch, MAXIMUM_BATCH - batch.size());
+            closing = batch.remove(CLOSE);
+
+            // the entries before a new segment are written to the segment they were queued for
+            int from = 0;
+            for(int index=0; index<batch.size(); index++){
+                if(batch.get(index).line==null){
+                    writeBatch(batch.subList(from, index));
+                    startNextSegment(batch.get(index));
+                    from = index + 1;
+                }
+            }
+            writeBatch(batch.subList(from, batch.size()));
+            batch.clear();
+        }
+    }
+
+    private void writeBatch(final List<PendingEntry> batch) {
+        if(batch.isEmpty()){
+            return;
+        }
+        if(failed!=null){
+            // queued before the journal failed
+            for(PendingEntry entry : batch){
+                entry.written(failed);
+            }
+            return;
+        }
+
+        final StringBuilder lines = new StringBuilder();
+        for(PendingEntry entry : batch){
+            lines.append(entry.line).append('\n');
+        }
+
+        IOException failure = null;
+        try{
+            final ByteBuffer bytes = ByteBuffer.wrap(lines.toString().getBytes(StandardCharsets.UTF_8));
+            while(bytes.hasRemaining()){
+                channel.write(bytes);
+            }
+            // one fsync for the whole batch
+            channel.force(false);
+            size = size + bytes.limit();
+        }catch(IOException e){
+            failure = e;
+            fail(e);
+        }
+
+        for(PendingEntry entry : batch){
+            entry.written(failure);
+        }
+    }
+
+    private void startNextSegment(final PendingEntry next) {
+        if(failed!=null){
+            next.written(failed);
+            return;
+        }
+
+        IOException failure = null;
+        try{
+            final Path nextPath = segmentPath(writing + 1);
+            final FileChannel nextChannel = FileChannel.open(nextPath,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.READ);
+            channel.close();
+            channel = nextChannel;
+            writing++;
+            size = 0;
+            forceDirectoryOf(nextPath);
+        }catch(IOException e){
+            failure = e;
+            synchronized (pending){
+                failed = e;
+            }
+        }
+        next.written(failure);
+    }
+
+    // the file of a new segment is found after a crash, where the file system allows
+    private static void forceDirectoryOf(final Path file) {
+        try(FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)){
+            directory.force(true);
+        }catch(IOException e){
+            // not every file system can open a directory
+        }
+    }
+
+    // the next batch must not follow part of this one, so the file is cut back to the last complete batch
+    private void fail(final IOException failure) {
+        synchronized (pending){
+            failed = failure;
+        }
+        try{
+            channel.truncate(size);
+            channel.position(size);
+            channel.force(false);
+        }catch(IOException e){
+            failure.addSuppressed(e);
+        }
+    }
+
+    @Override
+    public void readFrom(final long fromSegment, final Consumer<JournalEntry> reader) {
+        final long first;
+        final long last;
+        synchronized (pending){
+            first = firstSegment;
+            last = segment;
+        }
+        if(fromSegment>last){
+            throw new IllegalArgumentException(
+                    String.format("Journal %s has segments %d to %d, it does not have segment %d",
+                                    path, first, last, fromSegment));
+        }
+
+        for(long number=Math.max(first, fromSegment); number<=last; number++){
+            final Path segmentPath = segmentPath(number);
+            try(BufferedReader lines = Files.newBufferedReader(segmentPath, StandardCharsets.UTF_8)){
+                String line;
+                while((line = lines.readLine())!=null){
+                    if(!line.isEmpty()){
+                        reader.accept(JournalEntry.fromLine(line));
+                    }
+                }
+            }catch(IOException e){
+                throw new UncheckedIOException("Could not read journal " + segmentPath, e);
+            }
+        }
+    }
+
+    @Override
+    public List<JournalEntry> readAll() {
+        final List<JournalEntry> entries = new ArrayList<>();
+        readFrom(0, entries::add);
+        return entries;
+    }
+
+    @Override
+    public void close() {
+        synchronized (pending){
+            if(closed){
+                return;
+            }
+            closed = true;
+            pending.add(CLOSE);
+        }
+        try{
+            writer.join();
+            channel.close();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(IOException e){
+            throw new UncheckedIOException("Could not close journal " + path, e);
+        }
+    }
+
+    private static final class PendingEntry {
+        // no line starts the next segment
+        private final String line;
+        private final CountDownLatch done;
+        private volatile IOException failure;
+
+        private PendingEntry(final String line){
+            this.line = line;
+            this.done = new CountDownLatch(1);
+        }
+
+        private void written(final IOException failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        private void awaitWritten() {
+            boolean interrupted = false;
+            while(true){
+                try{
+                    done.await();
+                    break;
+                }catch(InterruptedException e){
+                    interrupted = true;
+                }
+            }
+            if(interrupted){
+                Thread.currentThread().interrupt();
+            }
+            if(failure!=null){
+                throw new UncheckedIOException("Could not write to journal", failure);
+            }
+        }
+    }
+}
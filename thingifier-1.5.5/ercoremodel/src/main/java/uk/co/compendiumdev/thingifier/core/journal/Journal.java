@@ -0,0 +1,56 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/*
+    Somewhere to record the changes to a model so it can be rebuilt.
+ */
+public interface Journal {
+
+    /*
+        queues the entries, after any already queued, without waiting for them to be durable
+     */
+    JournalWrite enqueue(List<JournalEntry> entries);
+
+    /*
+        returns when the entry is durable
+     */
+    default void record(JournalEntry entry) {
+        enqueue(Collections.singletonList(entry)).awaitDurable();
+    }
+
+    /*
+        returns when all the entries are durable
+     */
+    default void recordAll(List<JournalEntry> entries) {
+        enqueue(entries).awaitDurable();
+    }
+
+    /*
+        the entries queued from now on are in a new segment, returns its number,
+        so a snapshot can record where in the journal it was taken and only the
+        segments from there on are replayed onto it
+     */
+    long startSegment();
+
+    /*
+        the segments before this one are no longer needed, a snapshot which has
+        all of their changes is durable, or this segment clears all of the data
+     */
+    void dropSegmentsBefore(long segment);
+
+    /*
+        gives the reader each entry from the start of the segment on, in the order
+        they were recorded, from the first segment kept when the segment was dropped
+     */
+    void readFrom(long segment, Consumer<JournalEntry> reader);
+
+    /*
+        the entries of the segments which have not been dropped
+     */
+    List<JournalEntry> readAll();
+
+    void close();
+}
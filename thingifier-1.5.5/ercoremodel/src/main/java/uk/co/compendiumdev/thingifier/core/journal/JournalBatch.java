@@ -0,0 +1,95 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Supplier;
+
+/*
+    Changes are journalled while the locks which order them are held, but
+    waiting for the entries to be durable is left until the outermost
+    recordTogether on the thread is done. So no lock is held while the
+    journal is forced to disk, and all the changes made together e.g. by
+    one request, wait once for a shared fsync.
+
+    Entries queued outside recordTogether are waited for straight away.
+
+    The changes are made before they are durable, when a write fails the
+    changes are kept and the failure is thrown once the change is done.
+
+    Changes share a lock while they are made, so whileNoChangesAreMade
+    sees every change made by a recordTogether or none of it e.g. to
+    start a journal segment which follows every change in the segments
+    before it.
+ */
+public final class JournalBatch {
+
+    private static final ThreadLocal<JournalBatch> CURRENT = ThreadLocal.withInitial(JournalBatch::new);
+    private static final StampedLock CHANGES = new StampedLock();
+
+    private int depth;
+    private long changing;
+    private final List<JournalWrite> writes = new ArrayList<>();
+
+    private JournalBatch(){
+    }
+
+    public static void recordTogether(final Runnable changes) {
+        recordTogether(() -> {
+            changes.run();
+            return null;
+        });
+    }
+
+    public static <T> T recordTogether(final Supplier<T> changes) {
+        final JournalBatch batch = CURRENT.get();
+        if(batch.depth==0){
+            batch.changing = CHANGES.readLock();
+        }
+        batch.depth++;
+        try{
+            return changes.get();
+        }finally{
+            batch.depth--;
+            if(batch.depth==0){
+                CHANGES.unlockRead(batch.changing);
+                batch.awaitDurable();
+            }
+        }
+    }
+
+    public static <T> T whileNoChangesAreMade(final Supplier<T> capture) {
+        if(CURRENT.get().depth>0){
+            throw new IllegalStateException("Can not wait for changes to stop while making a change");
+        }
+        final long exclusive = CHANGES.writeLock();
+        try{
+            return capture.get();
+        }finally{
+            CHANGES.unlockWrite(exclusive);
+        }
+    }
+
+    public static void queued(final JournalWrite write) {
+        final JournalBatch batch = CURRENT.get();
+        if(batch.depth==0){
+            write.awaitDurable();
+            return;
+        }
+        batch.writes.add(write);
+    }
+
+    private void awaitDurable() {
+        if(writes.isEmpty()){
+            return;
+        }
+        try{
+            // each write is checked, an earlier batch may have failed when a later one did not
+            for(JournalWrite write : writes){
+                write.awaitDurable();
+            }
+        }finally{
+            writes.clear();
+        }
+    }
+}
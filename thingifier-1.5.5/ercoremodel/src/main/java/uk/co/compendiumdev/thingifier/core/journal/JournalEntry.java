@@ -0,0 +1,195 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    A single change to the model, written to the journal as one line of
+    tab separated values:
+
+    CREATE          thing guid [field value]...
+    AMEND           thing guid field value
+    DELETE          thing guid
+    CONNECT         thing guid relationship toGuid
+    DISCONNECT      thing guid relationship toGuid
+    DISCONNECT_ALL  thing guid
+    CLEAR           thing resetIds
+
+    Tabs, new lines and backslashes in values are escaped, a null value
+    i.e. a removed field value, is written as \0
+ */
+public final class JournalEntry {
+
+    public enum Operation {
+        CREATE, AMEND, DELETE, CONNECT, DISCONNECT, DISCONNECT_ALL, CLEAR
+    }
+
+    private static final String NULL_VALUE = "\\0";
+
+    private final Operation operation;
+    private final String thingName;
+    private final List<String> values;
+
+    private JournalEntry(final Operation operation, final String thingName, final List<String> values){
+        this.operation = operation;
+        this.thingName = thingName;
+        this.values = Collections.unmodifiableList(values);
+    }
+
+    /*
+        fieldValues are pairs of field name and value
+     */
+    public static JournalEntry create(final String thingName, final String guid, final List<String> fieldValues) {
+        final List<String> values = new ArrayList<>();
+        values.add(guid);
+        values.addAll(fieldValues);
+        return new JournalEntry(Operation.CREATE, thingName, values);
+    }
+
+    public static JournalEntry amend(final String thingName, final String guid,
+                                     final String fieldName, final String value) {
+        return new JournalEntry(Operation.AMEND, thingName, Arrays.asList(guid, fieldName, value));
+    }
+
+    public static JournalEntry delete(final String thingName, final String guid) {
+        return new JournalEntry(Operation.DELETE, thingName, Collections.singletonList(guid));
+    }
+
+    public static JournalEntry connect(final String thingName, final String guid,
+                                       final String relationshipName, final String toGuid) {
+        return new JournalEntry(Operation.CONNECT, thingName, Arrays.asList(guid, relationshipName, toGuid));
+    }
+
+    public static JournalEntry disconnect(final String thingName, final String guid,
+                                          final String relationshipName, final String toGuid) {
+        return new JournalEntry(Operation.DISCONNECT, thingName, Arrays.asList(guid, relationshipName, toGuid));
+    }
+
+    public static JournalEntry disconnectAll(final String thingName, final String guid) {
+        return new JournalEntry(Operation.DISCONNECT_ALL, thingName, Collections.singletonList(guid));
+    }
+
+    public static JournalEntry clear(final String thingName, final boolean resetIds) {
+        return clear(thingName, resetIds, Collections.emptyList());
+    }
+
+    /*
+        nextIds are pairs of ID field name and the next id, so ids carry on from
+        where they were when the journal before the clear is dropped
+     */
+    public static JournalEntry clear(final String thingName, final boolean resetIds, final List<String> nextIds) {
+        final List<String> values = new ArrayList<>();
+        values.add(String.valueOf(resetIds));
+        values.addAll(nextIds);
+        return new JournalEntry(Operation.CLEAR, thingName, values);
+    }
+
+    public Operation getOperation() {
+        return operation;
+    }
+
+    public String getThingName() {
+        return thingName;
+    }
+
+    /*
+        the values after the thing name, the first is the guid for all but CLEAR
+     */
+    public List<String> getValues() {
+        return values;
+    }
+
+    public String getValue(final int index) {
+        return values.get(index);
+    }
+
+    public String asLine() {
+        final StringBuilder line = new StringBuilder();
+        line.append(operation.name());
+        line.append('\t').append(escaped(thingName));
+        for(String value : values){
+            line.append('\t').append(escaped(value));
+        }
+        return line.toString();
+    }
+
+    /*
+        throws IllegalArgumentException when the line is not a journal entry
+     */
+    public static JournalEntry fromLine(final String line) {
+        final String[] parts = line.split("\t", -1);
+        if(parts.length<2){
+            throw new IllegalArgumentException("Not a journal entry: " + line);
+        }
+
+        final Operation operation;
+        try{
+            operation = Operation.valueOf(parts[0]);
+        }catch(IllegalArgumentException e){
+            throw new IllegalArgumentException("Unknown journal operation: " + parts[0]);
+        }
+
+        final List<String> values = new ArrayList<>();
+        for(int part=2; part<parts.length; part++){
+            values.add(unescaped(parts[part]));
+        }
+        return new JournalEntry(operation, unescaped(parts[1]), values);
+    }
+
+    private static String escaped(final String value) {
+        if(value==null){
+            return NULL_VALUE;
+        }
+        final StringBuilder escaped = new StringBuilder(value.length());
+        for(char character : value.toCharArray()){
+            switch (character){
+                case '\\':
+                    escaped.append("\\\\");
+                    break;
+                case '\t':
+                    escaped.append("\\t");
+                    break;
+                case '\n':
+                    escaped.append("\\n");
+                    break;
+                case '\r':
+                    escaped.append("\\r");
+                    break;
+                default:
+                    escaped.append(character);
+            }
+        }
+        return escaped.toString();
+    }
+
+    private static String unescaped(final String value) {
+        if(NULL_VALUE.equals(value)){
+            return null;
+        }
+        final StringBuilder unescaped = new StringBuilder(value.length());
+        for(int index=0; index<value.length(); index++){
+            final char character = value.charAt(index);
+            if(character=='\\' && index+1<value.length()){
+                index++;
+                switch (value.charAt(index)){
+                    case 't':
+                        unescaped.append('\t');
+                        break;
+                    case 'n':
+                        unescaped.append('\n');
+                        break;
+                    case 'r':
+                        unescaped.append('\r');
+                        break;
+                    default:
+                        unescaped.append(value.charAt(index));
+                }
+            }else{
+                unescaped.append(character);
+            }
+        }
+        return unescaped.toString();
+    }
+}
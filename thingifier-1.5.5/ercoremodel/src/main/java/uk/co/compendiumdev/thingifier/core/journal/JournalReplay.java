@@ -0,0 +1,142 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import uk.co.compendiumdev.thingifier.core.EntityRelModel;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.List;
+
+/*
+    Apply the entries of a journal to a model, in the order they were recorded.
+
+    The entries were valid when they were recorded so values are not
+    validated again, and an entry for an instance which no longer exists
+    is skipped, a journal which was cleared down can still be replayed.
+
+    An instance which already exists is not created again, and a
+    relationship already made is not made again, a snapshot copied while
+    changes were made has some of the changes after its journal segment.
+ */
+public final class JournalReplay {
+
+    private final EntityRelModel model;
+    private int replayed;
+
+    public JournalReplay(final EntityRelModel model){
+        this.model = model;
+    }
+
+    public void replay(final List<JournalEntry> entries) {
+        for(JournalEntry entry : entries){
+            replay(entry);
+        }
+    }
+
+    public void replay(final JournalEntry entry) {
+        apply(entry);
+        replayed++;
+    }
+
+    public int countReplayed() {
+        return replayed;
+    }
+
+    private void apply(final JournalEntry entry) {
+        final Thing thing = model.getThingNamed(entry.getThingName());
+        if(thing==null){
+            throw new IllegalArgumentException(
+                    String.format("Journal has an entry for an unknown thing %s", entry.getThingName()));
+        }
+
+        if(entry.getOperation()==JournalEntry.Operation.CLEAR){
+            thing.clearInstances(Boolean.parseBoolean(entry.getValue(0)));
+            // values after resetIds are ID field name, next id pairs
+            for(int index=1; index+1<entry.getValues().size(); index=index+2){
+                keepIdsAbove(thing, entry.getValue(index),
+                                String.valueOf(Integer.parseInt(entry.getValue(index+1))-1));
+            }
+            return;
+        }
+
+        final String guid = entry.getValue(0);
+
+        if(entry.getOperation()==JournalEntry.Operation.CREATE){
+            create(thing, guid, entry.getValues());
+            return;
+        }
+
+        final ThingInstance instance = thing.findInstanceByGUID(guid);
+        if(instance==null){
+            return;
+        }
+
+        switch (entry.getOperation()){
+            case AMEND:
+                amend(thing, instance, entry.getValue(1), entry.getValue(2));
+                break;
+            case DELETE:
+                thing.deleteInstance(guid);
+                break;
+            case CONNECT:
+                final ThingInstance connectTo = model.findThingInstanceByGuid(entry.getValue(2));
+                if(connectTo!=null && !instance.getRelationships().isConnected(entry.getValue(1), connectTo)){
+                    instance.getRelationships().connect(entry.getValue(1), connectTo);
+                }
+                break;
+            case DISCONNECT:
+                final ThingInstance disconnectFrom = model.findThingInstanceByGuid(entry.getValue(2));
+                if(disconnectFrom!=null){
+                    instance.getRelationships().removeRelationshipsInvolving(disconnectFrom, entry.getValue(1));
+                }
+                break;
+            case DISCONNECT_ALL:
+                instance.getRelationships().removeAllRelationships();
+                break;
+            default:
+                throw new IllegalArgumentException("Can not replay " + entry.getOperation());
+        }
+    }
+
+    private void create(final Thing thing, final String guid, final List<String> values) {
+        if(thing.findInstanceByGUID(guid)!=null){
+            // its values are as, or after, the entry, but later instances must still not get its ids
+            for(int index=1; index+1<values.size(); index=index+2){
+                if(values.get(index+1)!=null){
+                    keepIdsAbove(thing, values.get(index), values.get(index+1));
+                }
+            }
+            return;
+        }
+        final ThingInstance instance = thing.createInstance(guid);
+        // values after the guid are field name, value pairs
+        for(int index=1; index+1<values.size(); index=index+2){
+            final String fieldName = values.get(index);
+            final String value = values.get(index+1);
+            if(value!=null){
+                instance.overrideValue(fieldName, value);
+                keepIdsAbove(thing, fieldName, value);
+            }
+        }
+        thing.addInstance(instance);
+    }
+
+    private void amend(final Thing thing, final ThingInstance instance,
+                       final String fieldName, final String value) {
+        if(value==null){
+            instance.getFields().removeValue(fieldName);
+        }else{
+            instance.overrideValue(fieldName, value);
+            keepIdsAbove(thing, fieldName, value);
+        }
+    }
+
+    // new instances must not be given the ids in the journal
+    private void keepIdsAbove(final Thing thing, final String fieldName, final String value) {
+        final Field field = thing.definition().getField(fieldName);
+        if(field!=null && field.getType()==FieldType.ID){
+            field.ensureNextIdAbove(value);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+/*
+    Entries queued in a journal, in order, which may not be durable yet.
+ */
+public interface JournalWrite {
+
+    /*
+        returns when the entries are durable
+     */
+    void awaitDurable();
+}
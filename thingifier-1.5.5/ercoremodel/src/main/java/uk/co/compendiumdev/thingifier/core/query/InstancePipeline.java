@@ -0,0 +1,149 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/*
+    The instances a query has found so far, as the stages which find them
+    e.g. all the todos -> their categories -> matching the filters -> page.
+
+    Nothing is copied and no instance is visited until the instances are
+    needed, and then only until there are enough of them, so a limit stops
+    the query early. A pipeline can be read more than once, each read runs
+    the stages again, so a query reads the instances of each step of its
+    path into a list once, before the next step, and only the last step,
+    its filters and page are read lazily.
+
+    A source with at least parallelThreshold instances is read in parallel
+    on the common fork-join pool, the instances are still returned in the
+    order they are in the source.
+ */
+final class InstancePipeline implements Iterable<ThingInstance> {
+
+    private final Supplier<Stream<ThingInstance>> stages;
+    // the stages only read a collection, so reading them again is cheap
+    private final boolean readsCollection;
+
+    private InstancePipeline(final Supplier<Stream<ThingInstance>> stages){
+        this(stages, false);
+    }
+
+    private InstancePipeline(final Supplier<Stream<ThingInstance>> stages, final boolean readsCollection){
+        this.stages = stages;
+        this.readsCollection = readsCollection;
+    }
+
+    static InstancePipeline empty() {
+        return new InstancePipeline(Stream::empty, true);
+    }
+
+    static InstancePipeline of(final ThingInstance instance) {
+        return new InstancePipeline(() -> Stream.of(instance), true);
+    }
+
+    static final int NEVER_PARALLEL = Integer.MAX_VALUE;
+
+    // a live view of the source, not a copy
+    static InstancePipeline from(final Collection<ThingInstance> source) {
+        return from(source, NEVER_PARALLEL);
+    }
+
+    static InstancePipeline from(final Collection<ThingInstance> source, final int parallelThreshold) {
+        return new InstancePipeline(() -> {
+            if(source.size()<parallelThreshold){
+                return source.stream();
+            }
+            final Spliterator<ThingInstance> split = source.spliterator();
+            if(split.hasCharacteristics(Spliterator.ORDERED)){
+                return StreamSupport.stream(split, true);
+            }
+            // the instances of a thing are not ordered when split, reading them in batches keeps them in the order they are read
+            return StreamSupport.stream(Spliterators.spliterator(source, Spliterator.ORDERED), true);
+        }, true);
+    }
+
+    // read in the order the stream gives, e.g. from an index
+    static InstancePipeline ordered(final Supplier<Stream<ThingInstance>> source) {
+        return new InstancePipeline(source);
+    }
+
+    /*
+        the instances read once into a list, so the stages before this are not run again by each read after it
+     */
+    InstancePipeline materialized(final int parallelThreshold) {
+        if(readsCollection){
+            return this;
+        }
+        return from(toList(), parallelThreshold);
+    }
+
+    InstancePipeline connectedBy(final String relationshipName) {
+        return new InstancePipeline(() -> stages.get().flatMap(
+                instance -> instance.getRelationships().getConnectedItems(relationshipName).stream()));
+    }
+
+    InstancePipeline connectedOfType(final String thingName) {
+        return new InstancePipeline(() -> stages.get().flatMap(
+                instance -> instance.getRelationships().getConnectedItemsOfType(thingName).stream()));
+    }
+
+    InstancePipeline matching(final Predicate<ThingInstance> condition) {
+        return new InstancePipeline(() -> stages.get().filter(condition));
+    }
+
+    // the first instance, null when there are none
+    ThingInstance first() {
+        return stages.get().findFirst().orElse(null);
+    }
+
+    boolean isEmpty() {
+        return first()==null;
+    }
+
+    @Override
+    public Iterator<ThingInstance> iterator() {
+        return stages.get().iterator();
+    }
+
+    List<ThingInstance> toList() {
+        return stages.get().collect(Collectors.toList());
+    }
+
+    /*
+        only the instances in the page are collected
+     */
+    List<ThingInstance> toList(final QueryPaging paging) {
+        if(paging==null){
+            return toList();
+        }
+        Stream<ThingInstance> paged = stages.get().skip(paging.getOffset());
+        if(paging.hasLimit()){
+            if(paging.getLimit()==0){
+                return Collections.emptyList();
+            }
+            paged = paged.limit(paging.getLimit());
+        }
+        return paged.collect(Collectors.toList());
+    }
+
+    /*
+        all the instances are read to sort them, but only the page is kept
+     */
+    List<ThingInstance> toList(final QuerySort sort, final QueryPaging paging) {
+        if(sort==null){
+            return toList(paging);
+        }
+        return sort.sorted(stages.get(), paging);
+    }
+}
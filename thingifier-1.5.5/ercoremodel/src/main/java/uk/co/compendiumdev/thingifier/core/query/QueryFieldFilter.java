@@ -0,0 +1,352 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValueDictionary;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.indexes.NumericRange;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+
+/*
+    A single query param as a condition on a field e.g.
+
+    - title=my todo
+    - status!=done
+    - id>=100
+    - priority<5
+    - priority:in=1,2,3
+    - title:prefix=file
+
+    Query params are split on '=' before we see them, so 'id>=100'
+    arrives as the name 'id>' with the value '100', and 'priority<5'
+    arrives as the name 'priority<5' with an empty value.
+ */
+public final class QueryFieldFilter {
+
+    public enum Operator {
+        EQUALS("="),
+        NOT_EQUALS("!="),
+        IN(":in"),
+        PREFIX(":prefix"),
+        GREATER_THAN(">"),
+        GREATER_THAN_OR_EQUAL(">="),
+        LESS_THAN("<"),
+        LESS_THAN_OR_EQUAL("<=");
+
+        private final String symbol;
+
+        Operator(final String symbol){
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+    }
+
+    // conditions expected to reject the most instances are checked first
+    private static final int COST_EQUALS = 0;
+    private static final int COST_IN = 1;
+    private static final int COST_PREFIX = 2;
+    private static final int COST_RANGE = 3;
+    private static final int COST_NOT_EQUALS = 4;
+
+    private final String fieldName;
+    private final Operator operator;
+    private final String value;
+
+    private QueryFieldFilter(final String fieldName, final Operator operator, final String value){
+        this.fieldName = fieldName;
+        this.operator = operator;
+        this.value = value;
+    }
+
+    public static QueryFieldFilter from(final String paramName, final String paramValue) {
+
+        // name 'priority:in' value '1,2,3' from priority:in=1,2,3
+        for(Operator named : new Operator[]{Operator.IN, Operator.PREFIX}){
+            if(paramName.length()>named.getSymbol().length() && paramName.endsWith(named.getSymbol())){
+                final String name = paramName.substring(0, paramName.length()-named.getSymbol().length());
+                return new QueryFieldFilter(name, named, paramValue);
+            }
+        }
+
+        // name 'status!' value 'done' from status!=done
+        if(paramName.length()>1 && paramName.endsWith("!")){
+            final String name = paramName.substring(0, paramName.length()-1);
+            return new QueryFieldFilter(name, Operator.NOT_EQUALS, paramValue);
+        }
+
+        // name 'id>' value '100' from id>=100
+        if(paramName.length()>1 && (paramName.endsWith(">") || paramName.endsWith("<"))){
+            final String name = paramName.substring(0, paramName.length()-1);
+            final Operator operator = paramName.endsWith(">") ?
+                                        Operator.GREATER_THAN_OR_EQUAL :
+                                        Operator.LESS_THAN_OR_EQUAL;
+            return new QueryFieldFilter(name, operator, paramValue);
+        }
+
+        // name 'priority<5' from priority<5
+        final int operatorAt = firstOperatorIn(paramName);
+        if(operatorAt>0 && (paramValue==null || paramValue.isEmpty())){
+            final String name = paramName.substring(0, operatorAt);
+            final Operator operator = paramName.charAt(operatorAt)=='>' ?
+                                        Operator.GREATER_THAN :
+                                        Operator.LESS_THAN;
+            return new QueryFieldFilter(name, operator, paramName.substring(operatorAt+1));
+        }
+
+        return new QueryFieldFilter(paramName, Operator.EQUALS, paramValue);
+    }
+
+    private static int firstOperatorIn(final String paramName) {
+        final int greaterAt = paramName.indexOf('>');
+        final int lessAt = paramName.indexOf('<');
+        if(greaterAt<0){
+            return lessAt;
+        }
+        if(lessAt<0){
+            return greaterAt;
+        }
+        return Math.min(greaterAt, lessAt);
+    }
+
+    public String getFieldName() {
+        return fieldName;
+    }
+
+    public Operator getOperator() {
+        return operator;
+    }
+
+    public String getValue() {
+        return value;
+    }
+
+    // the values of an 'in' filter, a value can not contain a comma
+    public List<String> getValues() {
+        if(value==null || value.isEmpty()){
+            return Collections.emptyList();
+        }
+        if(operator!=Operator.IN){
+            return Collections.singletonList(value);
+        }
+        return Arrays.asList(value.split(","));
+    }
+
+    public boolean isRange() {
+        switch (operator){
+            case GREATER_THAN:
+            case GREATER_THAN_OR_EQUAL:
+            case LESS_THAN:
+            case LESS_THAN_OR_EQUAL:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /*
+        the numeric range for a range filter, null for an equality filter
+        or when the value is not a number
+     */
+    public NumericRange asNumericRange() {
+        return asNumericRange(null);
+    }
+
+    /*
+        a bound for a FLOAT field is read as a float, as the values of the
+        field are, so price>1.1 does not match a price set to 1.1
+     */
+    public NumericRange asNumericRange(final FieldType type) {
+        final Double bound = type==FieldType.FLOAT ?
+                                NumericRange.floatFrom(value) :
+                                NumericRange.numberFrom(value);
+        if(bound==null){
+            return null;
+        }
+
+        switch (operator){
+            case GREATER_THAN:
+                return NumericRange.above(bound, false);
+            case GREATER_THAN_OR_EQUAL:
+                return NumericRange.above(bound, true);
+            case LESS_THAN:
+                return NumericRange.below(bound, false);
+            case LESS_THAN_OR_EQUAL:
+                return NumericRange.below(bound, true);
+            default:
+                return null;
+        }
+    }
+
+    public boolean appliesTo(final ThingDefinition definition) {
+        return definition.hasFieldNameDefined(fieldName);
+    }
+
+    /*
+        fields which are not defined on the instance are not filtered on,
+        a query matching many instances should use a compiled condition instead
+     */
+    public boolean matches(final ThingInstance instance) {
+        return compiledFor(instance.getEntity()).matches(instance);
+    }
+
+    /*
+        the condition for the instances of a definition with the field and
+        the value resolved, so matching an instance does not look up the field
+        by name, parse the value or allocate
+     */
+    CompiledCondition compiledFor(final ThingDefinition definition) {
+        final Field field = definition.getField(fieldName);
+        if(field==null){
+            return CompiledCondition.ALWAYS;
+        }
+
+        switch (operator){
+            case EQUALS:
+                return new CompiledCondition(field, COST_EQUALS, valueMatches(field, value));
+            case NOT_EQUALS:
+                final Predicate<FieldValue> equals = valueMatches(field, value);
+                return new CompiledCondition(field, COST_NOT_EQUALS, fieldValue -> !equals.test(fieldValue));
+            case IN:
+                return new CompiledCondition(field, COST_IN, anyValueMatches(field, getValues()));
+            case PREFIX:
+                final String prefix = value==null ? "" : value;
+                return new CompiledCondition(field, COST_PREFIX,
+                                fieldValue -> fieldValue.textStartsWith(prefix));
+            default:
+                return new CompiledCondition(field, COST_RANGE, rangeMatches(field));
+        }
+    }
+
+    private Predicate<FieldValue> valueMatches(final Field field, final String matchValue) {
+        final int expectedCode = field.dictionaryCodeFor(matchValue);
+        return fieldValue -> {
+            if(fieldValue.getDictionaryCode()!=FieldValueDictionary.NOT_ENCODED){
+                return fieldValue.getDictionaryCode()==expectedCode;
+            }
+            return fieldValue.textEquals(matchValue);
+        };
+    }
+
+    private Predicate<FieldValue> anyValueMatches(final Field field, final List<String> matchValues) {
+        final Set<String> texts = new HashSet<>(matchValues);
+        final Set<Integer> codes = new HashSet<>();
+        for(String matchValue : matchValues){
+            final int code = field.dictionaryCodeFor(matchValue);
+            if(code!=FieldValueDictionary.NOT_ENCODED){
+                codes.add(code);
+            }
+        }
+        final int[] expectedCodes = new int[codes.size()];
+        int index=0;
+        for(Integer code : codes){
+            expectedCodes[index++] = code;
+        }
+
+        return fieldValue -> {
+            if(fieldValue.getDictionaryCode()!=FieldValueDictionary.NOT_ENCODED){
+                for(int code : expectedCodes){
+                    if(fieldValue.getDictionaryCode()==code){
+                        return true;
+                    }
+                }
+                return false;
+            }
+            if(fieldValue.isStoredOffHeap()){
+                // compared without reading the text onto the heap
+                for(String matchValue : matchValues){
+                    if(fieldValue.textEquals(matchValue)){
+                        return true;
+                    }
+                }
+                return false;
+            }
+            return texts.contains(fieldValue.asString());
+        };
+    }
+
+    private Predicate<FieldValue> rangeMatches(final Field field) {
+        if(!isNumeric(field)){
+            return fieldValue -> compares(fieldValue.asString().compareTo(value));
+        }
+
+        final NumericRange range = asNumericRange(field.getType());
+        if(range==null){
+            return fieldValue -> false;
+        }
+
+        // compared on the typed value, as the range index is
+        final FieldType type = field.getType();
+        return fieldValue -> range.contains(fieldValue.asNumber(type));
+    }
+
+    private boolean compares(final int comparison) {
+        switch (operator){
+            case GREATER_THAN:
+                return comparison > 0;
+            case GREATER_THAN_OR_EQUAL:
+                return comparison >= 0;
+            case LESS_THAN:
+                return comparison < 0;
+            case LESS_THAN_OR_EQUAL:
+                return comparison <= 0;
+            default:
+                return comparison == 0;
+        }
+    }
+
+    public static boolean isNumeric(final Field field) {
+        return field.getType()==FieldType.INTEGER ||
+                field.getType()==FieldType.FLOAT ||
+                field.getType()==FieldType.ID;
+    }
+
+    /*
+        a filter resolved for the instances of one definition
+     */
+    static final class CompiledCondition {
+
+        // for a field which is not defined, nothing is filtered out
+        static final CompiledCondition ALWAYS = new CompiledCondition(null, COST_NOT_EQUALS, fieldValue -> true);
+
+        private final Field field;
+        private final int cost;
+        private final Predicate<FieldValue> condition;
+
+        private CompiledCondition(final Field field, final int cost,
+                                  final Predicate<FieldValue> condition){
+            this.field = field;
+            this.cost = cost;
+            this.condition = condition;
+        }
+
+        boolean isAlways() {
+            return field==null;
+        }
+
+        int getCost() {
+            return cost;
+        }
+
+        boolean matches(final ThingInstance instance) {
+            if(field==null){
+                return true;
+            }
+            final FieldValue fieldValue = instance.getFields().getFieldValue(field);
+            if(fieldValue==null || fieldValue.asString()==null){
+                return false;
+            }
+            return condition.test(fieldValue);
+        }
+    }
+}
@@ -3,30 +3,73 @@ package uk.co.compendiumdev.thingifier.core.query;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 
+/*
+    The filters are compiled for the definition of the instances being
+    matched, the first time we see it, rather than resolved for every
+    instance. A query usually matches instances of a single definition.
+ */
 public class QueryInstanceFilter {
-    private final Map<String, String> params;
+    private final List<QueryFieldFilter> filters;
+    // instances can be matched on several threads, so the definition and its conditions are replaced together
+    private volatile CompiledFilters compiled;
 
     public QueryInstanceFilter(final Map<String, String> queryParams) {
-        this.params = queryParams;
+        this(QueryInstanceFilter.filtersFrom(queryParams));
+    }
+
+    public QueryInstanceFilter(final List<QueryFieldFilter> filters) {
+        this.filters = filters;
+    }
+
+    public static List<QueryFieldFilter> filtersFrom(final Map<String, String> queryParams) {
+        final List<QueryFieldFilter> filters = new ArrayList<>();
+        for(Map.Entry<String,String> param : queryParams.entrySet()){
+            filters.add(QueryFieldFilter.from(param.getKey(), param.getValue()));
+        }
+        return filters;
     }
 
     public boolean matches(final ThingInstance instance) {
-        for(Map.Entry<String,String> field : params.entrySet()){
+        for(QueryFieldFilter.CompiledCondition condition : compiledFor(instance.getEntity())){
+            if(!condition.matches(instance)){
+                return false;
+            }
+        }
 
-            final ThingDefinition defn = instance.getEntity();
+        return true;
+    }
+
+    private QueryFieldFilter.CompiledCondition[] compiledFor(final ThingDefinition definition) {
+        CompiledFilters current = compiled;
+        if(current==null || current.definition!=definition){
+            current = new CompiledFilters(definition, filters);
+            compiled = current;
+        }
+        return current.conditions;
+    }
 
-            String fieldName = field.getKey();
+    private static final class CompiledFilters {
+        private final ThingDefinition definition;
+        private final QueryFieldFilter.CompiledCondition[] conditions;
 
-            if(defn.hasFieldNameDefined(fieldName)){
-                if(!instance.getFieldValue(fieldName).asString().
-                        equals(field.getValue())){
-                    return false;
+        private CompiledFilters(final ThingDefinition definition, final List<QueryFieldFilter> filters){
+            final List<QueryFieldFilter.CompiledCondition> applying = new ArrayList<>();
+            for(QueryFieldFilter filter : filters){
+                final QueryFieldFilter.CompiledCondition condition = filter.compiledFor(definition);
+                if(!condition.isAlways()){
+                    applying.add(condition);
                 }
             }
-        }
+            // the most selective first so most instances are rejected by the first check
+            applying.sort(Comparator.comparingInt(QueryFieldFilter.CompiledCondition::getCost));
 
-        return true;
+            this.definition = definition;
+            this.conditions = applying.toArray(new QueryFieldFilter.CompiledCondition[0]);
+        }
     }
 }
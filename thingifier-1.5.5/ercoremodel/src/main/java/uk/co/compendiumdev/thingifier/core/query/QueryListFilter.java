@@ -1,31 +1,152 @@
 package uk.co.compendiumdev.thingifier.core.query;
 
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.indexes.NumericRange;
 
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class QueryListFilter {
-    private final Map<String, String> queryParams;
+    private final List<QueryFieldFilter> filters;
+    private final QuerySearch search;
     QueryInstanceFilter instanceFilter;
+    private int parallelThreshold = InstancePipeline.NEVER_PARALLEL;
 
     public QueryListFilter(final Map<String, String> queryParams) {
-        this.queryParams = queryParams;
-        instanceFilter = new QueryInstanceFilter(queryParams);
+        this(QueryInstanceFilter.filtersFrom(queryParams), QuerySearch.from(queryParams));
+    }
+
+    private QueryListFilter(final List<QueryFieldFilter> filters, final QuerySearch search) {
+        this.filters = filters;
+        this.search = search;
+        instanceFilter = new QueryInstanceFilter(filters);
+    }
+
+    /*
+        filter collections of at least this many instances in parallel
+     */
+    public QueryListFilter inParallelFrom(final int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+        return this;
     }
 
     public List<ThingInstance> filter(final List<ThingInstance> foundItems) {
+        return filter(InstancePipeline.from(foundItems, parallelThreshold)).toList();
+    }
 
-        List<ThingInstance> filtered = new ArrayList<>();
+    /*
+        the instances are checked as they are read, unless they are searched
+     */
+    InstancePipeline filter(final InstancePipeline foundItems) {
 
-        for(ThingInstance instance : foundItems){
-            // does it match the filter?
-            if(instanceFilter.matches(instance)){
-                filtered.add(instance);
-            }
+        final InstancePipeline filtered = foundItems.matching(instanceFilter::matches);
+
+        if(search!=null){
+            // ranking needs all the matches
+            return InstancePipeline.from(search.search(filtered.toList()), parallelThreshold);
         }
 
         return filtered;
     }
+
+    boolean isSearching() {
+        return search!=null;
+    }
+
+    public List<ThingInstance> filter(final Thing thing) {
+        return filterInstancesOf(thing).toList();
+    }
+
+    /*
+        Filter all the instances of a thing, the indexed fields in the query
+        give the candidates and only the remaining fields are checked on each candidate
+     */
+    InstancePipeline filterInstancesOf(final Thing thing) {
+
+        final List<Set<ThingInstance>> indexedMatches = new ArrayList<>();
+        final List<QueryFieldFilter> notIndexedFilters = new ArrayList<>();
+
+        for(QueryFieldFilter filter : filters){
+            final Set<ThingInstance> matches = findIndexedMatches(thing, filter);
+            if(matches==null){
+                notIndexedFilters.add(filter);
+            }else{
+                indexedMatches.add(matches);
+            }
+        }
+
+        final InstancePipeline candidates;
+
+        if(search!=null && search.appliesTo(thing.definition())){
+            // search results are ranked so keep them in order
+            candidates = InstancePipeline.from(search.search(thing), parallelThreshold).
+                            matching(instance -> isInAll(instance, indexedMatches, 0));
+
+        }else{
+
+            if(indexedMatches.isEmpty()){
+                return filter(InstancePipeline.from(thing.getInstances(), parallelThreshold));
+            }
+
+            // intersect, starting from the smallest set of matches
+            indexedMatches.sort(Comparator.comparingInt(Set::size));
+
+            candidates = InstancePipeline.from(indexedMatches.get(0), parallelThreshold).
+                            matching(instance -> isInAll(instance, indexedMatches, 1));
+        }
+
+        return new QueryListFilter(notIndexedFilters, null).
+                    inParallelFrom(parallelThreshold).filter(candidates);
+    }
+
+    private Set<ThingInstance> findIndexedMatches(final Thing thing, final QueryFieldFilter filter) {
+        switch (filter.getOperator()){
+            case EQUALS:
+                return thing.findInstancesByIndexedField(
+                        FieldValue.is(filter.getFieldName(), filter.getValue()));
+            case IN:
+                return findIndexedMatchesForAny(thing, filter);
+            case NOT_EQUALS:
+            case PREFIX:
+                // checked on each instance
+                return null;
+            default:
+                final Field field = thing.definition().getField(filter.getFieldName());
+                final NumericRange range = filter.asNumericRange(field==null ? null : field.getType());
+                if(range==null){
+                    return null;
+                }
+                return thing.findInstancesInRange(filter.getFieldName(), range);
+        }
+    }
+
+    private Set<ThingInstance> findIndexedMatchesForAny(final Thing thing, final QueryFieldFilter filter) {
+        final Set<ThingInstance> matches = new HashSet<>();
+        for(String value : filter.getValues()){
+            final Set<ThingInstance> valueMatches = thing.findInstancesByIndexedField(
+                                                        FieldValue.is(filter.getFieldName(), value));
+            if(valueMatches==null){
+                return null;
+            }
+            matches.addAll(valueMatches);
+        }
+        return matches;
+    }
+
+    private boolean isInAll(final ThingInstance instance, final List<Set<ThingInstance>> indexedMatches,
+                            final int startingFrom) {
+        for(int matchesIndex = startingFrom; matchesIndex < indexedMatches.size(); matchesIndex++){
+            if(!indexedMatches.get(matchesIndex).contains(instance)){
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -0,0 +1,76 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+
+import java.util.Map;
+
+/*
+    The page of a collection to return e.g. ?limit=10&offset=20
+
+    A thing with a field called 'limit' or 'offset' filters
+    on that field instead, as it does for 'search'.
+ */
+public final class QueryPaging {
+
+    public static final String LIMIT_PARAM = "limit";
+    public static final String OFFSET_PARAM = "offset";
+
+    private static final int NO_LIMIT = -1;
+
+    private final int limit;
+    private final int offset;
+
+    private QueryPaging(final int limit, final int offset){
+        this.limit = limit;
+        this.offset = offset;
+    }
+
+    /*
+        null when the params do not page the results, an IllegalArgumentException
+        when a limit or offset is not a whole number of 0 or more
+     */
+    public static QueryPaging from(final Map<String, String> queryParams, final ThingDefinition definition) {
+        final String limitText = pagingParam(queryParams, LIMIT_PARAM, definition);
+        final String offsetText = pagingParam(queryParams, OFFSET_PARAM, definition);
+        if(limitText==null && offsetText==null){
+            return null;
+        }
+
+        return new QueryPaging(
+                limitText==null ? NO_LIMIT : wholeNumberFrom(LIMIT_PARAM, limitText),
+                offsetText==null ? 0 : wholeNumberFrom(OFFSET_PARAM, offsetText));
+    }
+
+    private static String pagingParam(final Map<String, String> queryParams, final String paramName,
+                                      final ThingDefinition definition) {
+        if(definition!=null && definition.hasFieldNameDefined(paramName)){
+            return null;
+        }
+        return queryParams.get(paramName);
+    }
+
+    private static int wholeNumberFrom(final String paramName, final String value) {
+        try{
+            final int number = Integer.parseInt(value.trim());
+            if(number>=0){
+                return number;
+            }
+        }catch(NumberFormatException e){
+            // reported below
+        }
+        throw new IllegalArgumentException(
+                String.format("%s should be a whole number of 0 or more, not %s", paramName, value));
+    }
+
+    public boolean hasLimit() {
+        return limit!=NO_LIMIT;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+}
@@ -0,0 +1,160 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import uk.co.compendiumdev.thingifier.core.EntityRelModel;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.indexes.DefinitionNames;
+import uk.co.compendiumdev.thingifier.core.indexes.NameTable;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+    The terms of a query path resolved against the model's definitions.
+
+    Every definition name is resolved to its step once, so each term of
+    a path is found with one lookup, or two when it differs in case from
+    the name, and any term which is not a name is an id or guid. Queries
+    of the same shape e.g. projects/:id/tasks share the same steps.
+
+    The steps are made for the definitions as they are, when things or
+    relationships are defined the steps are made again.
+ */
+public final class QueryPlans {
+
+    // an id or guid in the shape of a path, anything which is not a definition name
+    static final String PARAMETER = ":id";
+
+    private final EntityRelModel model;
+    private volatile NamedSteps namedSteps;
+
+    public QueryPlans(final EntityRelModel model){
+        this.model = model;
+    }
+
+    QueryPlan planFor(final String query) {
+        final NamedSteps named = namedSteps();
+
+        final String[] terms = query.split("/");
+        final PlanStep[] steps = new PlanStep[terms.length];
+        for(int index=0; index<terms.length; index++){
+            steps[index] = named.stepFor(terms[index]);
+        }
+        return new QueryPlan(terms, steps);
+    }
+
+    private NamedSteps namedSteps() {
+        final DefinitionNames names = model.getDefinitionNames();
+        NamedSteps named = namedSteps;
+        if(named==null || named.names!=names){
+            named = new NamedSteps(names);
+            namedSteps = named;
+        }
+        return named;
+    }
+
+    private static final class NamedSteps {
+
+        private final DefinitionNames names;
+        // thing names are case sensitive, so a name as defined is found first
+        private final Map<String, PlanStep> stepsByName;
+        private final NameTable<PlanStep> stepsByAnyCase;
+
+        private NamedSteps(final DefinitionNames names){
+            this.names = names;
+            stepsByName = new HashMap<>();
+            NameTable<PlanStep> anyCase = NameTable.empty();
+            for(String name : names.getNames()){
+                final boolean relationship = names.isRelationshipNamed(name);
+                final Thing thingWithPlural = names.getThingWithPluralNamed(name);
+                stepsByName.put(name, new PlanStep(name, relationship, names.getThingNamed(name), thingWithPlural));
+
+                // plurals and relationship names are not case sensitive
+                if((relationship || thingWithPlural!=null) && !anyCase.contains(name)){
+                    anyCase = anyCase.with(name, new PlanStep(name, relationship, null, thingWithPlural));
+                }
+            }
+            stepsByAnyCase = anyCase;
+        }
+
+        private PlanStep stepFor(final String term) {
+            final PlanStep step = stepsByName.get(term);
+            if(step!=null){
+                return step;
+            }
+            final PlanStep anyCase = stepsByAnyCase.get(term);
+            return anyCase==null ? PlanStep.PARAMETER_STEP : anyCase;
+        }
+    }
+
+    /*
+        the steps of a query path, a parameter step takes its term from the request
+     */
+    static final class QueryPlan {
+
+        private final String[] terms;
+        private final PlanStep[] steps;
+
+        private QueryPlan(final String[] terms, final PlanStep[] steps){
+            this.terms = terms;
+            this.steps = steps;
+        }
+
+        // e.g. projects/:id/tasks
+        String getShape() {
+            final StringBuilder shape = new StringBuilder();
+            for(int index=0; index<steps.length; index++){
+                if(index>0){
+                    shape.append('/');
+                }
+                shape.append(steps[index].isParameter() ? PARAMETER : terms[index]);
+            }
+            return shape.toString();
+        }
+
+        String[] getTerms() {
+            return terms;
+        }
+
+        PlanStep[] getSteps() {
+            return steps;
+        }
+    }
+
+    static final class PlanStep {
+
+        private static final PlanStep PARAMETER_STEP = new PlanStep(null, false, null, null);
+
+        private final String term;
+        private final boolean relationship;
+        private final Thing thingNamed;
+        private final Thing thingWithPlural;
+
+        private PlanStep(final String term, final boolean relationship,
+                         final Thing thingNamed, final Thing thingWithPlural){
+            this.term = term;
+            this.relationship = relationship;
+            this.thingNamed = thingNamed;
+            this.thingWithPlural = thingWithPlural;
+        }
+
+        boolean isParameter() {
+            return term==null;
+        }
+
+        boolean isRelationship() {
+            return relationship;
+        }
+
+        boolean isThing() {
+            return thingNamed!=null || thingWithPlural!=null;
+        }
+
+        Thing getThingNamed() {
+            return thingNamed;
+        }
+
+        Thing getThingWithPlural() {
+            return thingWithPlural;
+        }
+    }
+}
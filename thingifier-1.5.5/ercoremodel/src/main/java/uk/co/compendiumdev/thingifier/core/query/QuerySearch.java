@@ -0,0 +1,134 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.indexes.TextTerms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/*
+    A keyword search over the searchable fields e.g. ?search=buy milk
+
+    Instances must use all of the terms, and are ranked by the
+    number of times they use them. A thing with a field called
+    'search' filters on that field instead.
+ */
+public final class QuerySearch {
+
+    public static final String SEARCH_PARAM = "search";
+
+    private final List<String> terms;
+
+    private QuerySearch(final List<String> terms){
+        this.terms = terms;
+    }
+
+    /*
+        null when the params do not contain a search
+     */
+    public static QuerySearch from(final Map<String, String> queryParams) {
+        final String searchText = queryParams.get(SEARCH_PARAM);
+        if(searchText==null){
+            return null;
+        }
+
+        // a repeated term does not make an instance a better match
+        final List<String> terms = new ArrayList<>(new LinkedHashSet<>(TextTerms.termsIn(searchText)));
+        if(terms.isEmpty()){
+            return null;
+        }
+        return new QuerySearch(terms);
+    }
+
+    public boolean appliesTo(final ThingDefinition definition) {
+        if(definition.hasFieldNameDefined(SEARCH_PARAM)){
+            return false;
+        }
+        for(String fieldName : definition.getFieldNames()){
+            if(definition.getField(fieldName).isSearchable()){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<String> getTerms() {
+        return terms;
+    }
+
+    /*
+        the matching instances of the thing, found with its text index
+     */
+    public List<ThingInstance> search(final Thing thing) {
+        return ranked(thing.searchInstances(terms));
+    }
+
+    /*
+        the matching instances, instances which can't be searched are kept after the matches
+     */
+    public List<ThingInstance> search(final List<ThingInstance> instances) {
+        final Map<ThingInstance, Integer> scores = new HashMap<>();
+        final List<ThingInstance> notSearched = new ArrayList<>();
+
+        for(ThingInstance instance : instances){
+            if(!appliesTo(instance.getEntity())){
+                notSearched.add(instance);
+                continue;
+            }
+            final int score = scoreFor(instance);
+            if(score>0){
+                scores.put(instance, score);
+            }
+        }
+
+        final List<ThingInstance> found = ranked(scores);
+        found.addAll(notSearched);
+        return found;
+    }
+
+    private int scoreFor(final ThingInstance instance) {
+        final Map<String, Integer> termCounts = new HashMap<>();
+        for(String fieldName : instance.getEntity().getFieldNames()){
+            final Field field = instance.getEntity().getField(fieldName);
+            if(field.isSearchable()){
+                for(String term : TextTerms.termsIn(instance.getFieldValue(fieldName).asString())){
+                    termCounts.merge(term, 1, Integer::sum);
+                }
+            }
+        }
+
+        int score = 0;
+        for(String term : terms){
+            final Integer count = termCounts.get(term);
+            if(count==null){
+                return 0;
+            }
+            score = score + count;
+        }
+        return score;
+    }
+
+    // highest score first, instances with the same score in guid order so the ranking is repeatable
+    private static List<ThingInstance> ranked(final Map<ThingInstance, Integer> scores) {
+        final List<Map.Entry<ThingInstance, Integer>> entries = new ArrayList<>(scores.entrySet());
+        entries.sort((one, two) -> {
+            final int comparison = Integer.compare(two.getValue(), one.getValue());
+            if(comparison!=0){
+                return comparison;
+            }
+            return one.getKey().getGUID().compareTo(two.getKey().getGUID());
+        });
+
+        final List<ThingInstance> ranked = new ArrayList<>(entries.size());
+        for(Map.Entry<ThingInstance, Integer> entry : entries){
+            ranked.add(entry.getKey());
+        }
+        return ranked;
+    }
+}
@@ -0,0 +1,227 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/*
+    The order of a collection e.g. ?sort=-id or ?sort=priority,title
+
+    Fields are sorted ascending, or descending when prefixed with '-'.
+    Numeric fields are sorted by value, other fields as text, and
+    instances without a value are last in either direction. Instances
+    which sort the same are in guid order, as they are from an index.
+
+    When the results are paged only the instances in the page, and
+    those before it, are kept as the instances are read, in a bounded
+    heap, rather than sorting them all.
+
+    A thing with a field called 'sort' filters on that field instead.
+ */
+public final class QuerySort {
+
+    public static final String SORT_PARAM = "sort";
+
+    private final List<SortField> fields;
+
+    private QuerySort(final List<SortField> fields){
+        this.fields = fields;
+    }
+
+    /*
+        null when the params do not sort the results, an IllegalArgumentException
+        when a sort field is not defined
+     */
+    public static QuerySort from(final Map<String, String> queryParams, final ThingDefinition definition) {
+        final String sortText = queryParams.get(SORT_PARAM);
+        if(sortText==null || definition==null || definition.hasFieldNameDefined(SORT_PARAM)){
+            return null;
+        }
+
+        final List<SortField> fields = new ArrayList<>();
+        for(String term : sortText.split(",")){
+            final String trimmed = term.trim();
+            if(trimmed.isEmpty()){
+                continue;
+            }
+            final boolean descending = trimmed.startsWith("-");
+            final String fieldName = descending || trimmed.startsWith("+") ? trimmed.substring(1) : trimmed;
+            final Field field = definition.getField(fieldName);
+            if(field==null){
+                throw new IllegalArgumentException(
+                        String.format("Can not sort on %s, it is not a field of %s",
+                                fieldName, definition.getName()));
+            }
+            fields.add(new SortField(definition, field, descending));
+        }
+
+        if(fields.isEmpty()){
+            return null;
+        }
+        return new QuerySort(fields);
+    }
+
+    /*
+        reads all the instances of the thing in sort order from a range index,
+        null when the sort can not be read from an index
+     */
+    Supplier<Stream<ThingInstance>> inIndexOrder(final Thing thing) {
+        if(fields.size()!=1){
+            return null;
+        }
+        final SortField only = fields.get(0);
+        return thing.findInstancesInOrderOf(only.field.getName(), only.descending);
+    }
+
+    /*
+        the instances in order, only the page of them when paged
+     */
+    List<ThingInstance> sorted(final Stream<ThingInstance> instances, final QueryPaging paging) {
+
+        final Comparator<SortedInstance> order = sortOrder();
+        final List<SortedInstance> kept;
+
+        if(paging!=null && paging.hasLimit()){
+            final long keep = (long) paging.getOffset() + paging.getLimit();
+            if(paging.getLimit()==0){
+                return Collections.emptyList();
+            }
+
+            // the heap has the last of the kept instances at its head
+            final PriorityQueue<SortedInstance> heap = new PriorityQueue<>(order.reversed());
+            instances.forEachOrdered(instance -> {
+                final SortedInstance sorted = sortedInstance(instance);
+                if(heap.size()<keep){
+                    heap.add(sorted);
+                }else if(order.compare(sorted, heap.peek())<0){
+                    heap.poll();
+                    heap.add(sorted);
+                }
+            });
+            kept = new ArrayList<>(heap);
+
+        }else{
+            kept = new ArrayList<>();
+            instances.forEachOrdered(instance ->
+                    kept.add(sortedInstance(instance)));
+        }
+
+        kept.sort(order);
+
+        final int offset = paging==null ? 0 : paging.getOffset();
+        final List<ThingInstance> page = new ArrayList<>();
+        for(int index=offset; index<kept.size(); index++){
+            page.add(kept.get(index).instance);
+        }
+        return page;
+    }
+
+    // numeric fields are keyed on the typed value, other fields on the text
+    private SortedInstance sortedInstance(final ThingInstance instance) {
+        final String[] keys = new String[fields.size()];
+        final double[] numbers = new double[fields.size()];
+        for(int index=0; index<keys.length; index++){
+            final SortField field = fields.get(index);
+            if(field.numeric){
+                numbers[index] = field.numberOf(instance);
+            }else{
+                keys[index] = field.keyOf(instance);
+            }
+        }
+        return new SortedInstance(instance, keys, numbers);
+    }
+
+    // instances which sort the same are in guid order, whichever order they were read in
+    private Comparator<SortedInstance> sortOrder() {
+        return (one, other) -> {
+            for(int index=0; index<fields.size(); index++){
+                final SortField field = fields.get(index);
+                final int comparison = field.numeric ?
+                                        field.compare(one.numbers[index], other.numbers[index]) :
+                                        field.compare(one.keys[index], other.keys[index]);
+                if(comparison!=0){
+                    return comparison;
+                }
+            }
+            return one.instance.getGUID().compareTo(other.instance.getGUID());
+        };
+    }
+
+    private static final class SortField {
+
+        private final ThingDefinition definition;
+        private final Field field;
+        private final boolean descending;
+        private final boolean numeric;
+
+        private SortField(final ThingDefinition definition, final Field field, final boolean descending){
+            this.definition = definition;
+            this.field = field;
+            this.descending = descending;
+            this.numeric = QueryFieldFilter.isNumeric(field);
+        }
+
+        private FieldValue valueOf(final ThingInstance instance) {
+            if(instance.getEntity()==definition){
+                return instance.getFields().getFieldValue(field);
+            }
+            if(instance.getEntity().hasFieldNameDefined(field.getName())){
+                // a relationship can return more than one type of thing
+                return instance.getFieldValue(field.getName());
+            }
+            return null;
+        }
+
+        // the text to sort on, null when there is no value
+        private String keyOf(final ThingInstance instance) {
+            final FieldValue value = valueOf(instance);
+            return value==null ? null : value.asString();
+        }
+
+        // the typed value of a numeric field, NaN when there is no numeric value
+        private double numberOf(final ThingInstance instance) {
+            final FieldValue value = valueOf(instance);
+            return value==null ? Double.NaN : value.asNumber(field.getType());
+        }
+
+        private int compare(final String one, final String other) {
+            if(one==null || other==null){
+                // no value is last whichever way we sort
+                return one==null ? (other==null ? 0 : 1) : -1;
+            }
+            final int comparison = one.compareTo(other);
+            return descending ? -comparison : comparison;
+        }
+
+        private int compare(final double one, final double other) {
+            if(Double.isNaN(one) || Double.isNaN(other)){
+                return Double.isNaN(one) ? (Double.isNaN(other) ? 0 : 1) : -1;
+            }
+            final int comparison = Double.compare(one, other);
+            return descending ? -comparison : comparison;
+        }
+    }
+
+    private static final class SortedInstance {
+        private final ThingInstance instance;
+        private final String[] keys;
+        private final double[] numbers;
+
+        private SortedInstance(final ThingInstance instance, final String[] keys, final double[] numbers){
+            this.instance = instance;
+            this.keys = keys;
+            this.numbers = numbers;
+        }
+    }
+}
@@ -9,8 +9,11 @@ import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import static uk.co.compendiumdev.thingifier.core.query.SimpleQuery.LastMatchValue.*;
 
@@ -31,7 +34,12 @@ final public class SimpleQuery {
     // populated during search
     Thing currentThing = null;
     ThingInstance currentInstance = null;
-    List<ThingInstance> foundItems = new ArrayList<ThingInstance>();
+    // found lazily, only the instances returned are visited
+    InstancePipeline foundItems = InstancePipeline.empty();
+    private QueryPaging paging = null;
+    private QuerySort sort = null;
+    private int parallelThreshold = InstancePipeline.NEVER_PARALLEL;
+    private List<ThingInstance> results = null;
     RelationshipVector lastRelationshipFound = null;
     List<RelationshipVector> lastRelationshipsFound = null;
     Thing parentThing = null;
@@ -52,23 +60,36 @@ final public class SimpleQuery {
     }
 
 
+    /*
+        filter and traverse the relationships of collections of at least
+        this many instances in parallel, the results are in the same order
+     */
+    public SimpleQuery inParallelFrom(final int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+        return this;
+    }
+
     public SimpleQuery performQuery() {
         // a simple query is a URL based REST query
         // e.g. THING/_GUID_/RELATIONSHIP/THING
         // e.g. THING/_ID_/RELATIONSHIP/THING
         // THING/RELATIONSHIP
 
-        String[] terms = query.split("/");
-
+        // each term is resolved with one lookup, a term which is not a name is an id
+        final QueryPlans.QueryPlan plan = thingifier.getQueryPlans().planFor(query);
+        final String[] terms = plan.getTerms();
+        final QueryPlans.PlanStep[] steps = plan.getSteps();
 
         lastMatch = NOTHING;
 
-        for (String term : terms) {
+        for (int index=0; index<terms.length; index++) {
+            final String term = terms[index];
+            final QueryPlans.PlanStep step = steps[index];
 
             // if we have a parent thing then we want to check for relationships before we check for things
             // if it matches a relationship then get the instances identified by the relationship
             //if(currentThing != null && currentThing.definition().hasRelationship(term)){
-            if (parentThing!=null && thingifier.hasRelationshipNamed(term)) {
+            if (parentThing!=null && step.isRelationship()) {
 
                 // what I want to store is the relationship between the parent Thing and the relationship name
                 Thing thingToCheckForRelationship = currentThing == null ? parentThing : currentThing;
@@ -77,22 +98,17 @@ final public class SimpleQuery {
 
                 foundItemsHistoryList.add(lastRelationshipFound);
 
-
-                if (foundItems != null && foundItems.size() > 0) {
-                    resultContainsDefinition = foundItems.get(0).getRelationships().getTypeOfConnectableItems(term);
-                }
-
-                List<ThingInstance> newitems = new ArrayList<ThingInstance>();
-                if (foundItems != null) {
-                    for (ThingInstance instance : foundItems) {
-                        newitems.addAll(instance.getRelationships().getConnectedItems(term));
-                    }
+                // the instances found so far are read by this step and the next
+                foundItems = foundItems.materialized(parallelThreshold);
+                final ThingInstance firstFound = foundItems.first();
+                if (firstFound != null) {
+                    resultContainsDefinition = firstFound.getRelationships().getTypeOfConnectableItems(term);
                 }
 
                 // relationships is always a collection
                 isCollection = true;
 
-                foundItems = newitems;
+                foundItems = foundItems.connectedBy(term);
                 parentInstance = currentInstance;
                 parentThing = currentThing;
                 currentThing = null;
@@ -102,15 +118,17 @@ final public class SimpleQuery {
             }
 
             // if matches an entity type
-            if (thingifier.hasThingNamed(term) || thingifier.hasThingWithPluralNamed(term)) {
-                if (currentThing == null && foundItems.size() == 0) {
+            if (step.isThing()) {
+                // the instances found so far are read by this step and the next
+                foundItems = foundItems.materialized(parallelThreshold);
+                if (currentThing == null && foundItems.isEmpty()) {
                     // first thing - find it
-                    currentThing = thingifier.getThingNamed(term);
+                    currentThing = step.getThingNamed();
                     pluralMatch = false;
 
                     if (currentThing == null) {
                         // was it the plural?
-                        currentThing = thingifier.getThingWithPluralNamed(term);
+                        currentThing = step.getThingWithPlural();
                         pluralMatch = true;
                     }
 
@@ -122,26 +140,19 @@ final public class SimpleQuery {
                     parentThing = currentThing;
                     currentInstance = null;
                     lastMatch = CURRENT_THING;
-                    foundItems = new ArrayList<ThingInstance>(currentThing.getInstances());
+                    foundItems = InstancePipeline.from(currentThing.getInstances(), parallelThreshold);
 
                 } else {
                     // related to another type of thing
-                    foundItemsHistoryList.add(thingifier.getThingNamed(term));
-
-                    if (foundItems != null && foundItems.size() > 0) {
-                        resultContainsDefinition = foundItems.get(0).getRelationships().getTypeOfConnectableItems(term);
-                    }
+                    foundItemsHistoryList.add(step.getThingNamed());
 
-                    List<ThingInstance> newitems = new ArrayList<ThingInstance>();
-                    if (foundItems != null) {
-                        for (ThingInstance instance : foundItems) {
-                            List<ThingInstance> matchedInstances = instance.getRelationships().getConnectedItemsOfType(term);
-                            newitems.addAll(matchedInstances);
-                        }
+                    final ThingInstance firstFound = foundItems.first();
+                    if (firstFound != null) {
+                        resultContainsDefinition = firstFound.getRelationships().getTypeOfConnectableItems(term);
                     }
 
                     // relationship is a collection
-                    foundItems = newitems;
+                    foundItems = foundItems.connectedOfType(term);
                     lastMatch = CURRENT_ITEMS;
                     parentThing = currentThing;
                     currentThing = null;
@@ -153,50 +164,24 @@ final public class SimpleQuery {
 
 
             // is it a GUID or ID?
-            boolean found = false;
-            for (ThingInstance instance : foundItems) {
-
-                boolean matchBasedOnIdOrGUID = false;
-
-                // found based on ID ?
-                final List<Field> idFields = instance.getEntity().
-                        getFieldsOfType(FieldType.ID);
-                if(!idFields.isEmpty()){
-                    final String idValue = instance.getFieldValue(
-                            idFields.get(0).getName()).asString();
-                    if(idValue.contentEquals(term)){
-                        matchBasedOnIdOrGUID=true;
-                    }
-                }
+            final ThingInstance instance = findInstanceByGuidOrId(term);
+            if (instance != null) {
 
-                if (instance.getGUID().contentEquals(term)) {
-                    matchBasedOnIdOrGUID = true;
-                }
+                foundItemsHistoryList.add(instance);
 
-                if(matchBasedOnIdOrGUID){
-
-                    foundItemsHistoryList.add(instance);
+                if (currentThing != null) {
+                    parentThing = currentThing;
+                }
 
-                    if (currentThing != null) {
-                        parentThing = currentThing;
-                    }
+                // if we had a plural term then return this as a collection
+                isCollection = pluralMatch;
 
-                    // if we had a plural term then return this as a collection
-                    isCollection = pluralMatch;
+                currentThing = null;
 
-                    currentThing = null;
+                currentInstance = instance;
+                foundItems = InstancePipeline.of(instance);
+                lastMatch = CURRENT_INSTANCE;
 
-                    currentInstance = instance;
-                    foundItems = new ArrayList<ThingInstance>();
-                    foundItems.add(instance);
-                    lastMatch = CURRENT_INSTANCE;
-                    found = true;
-                }
-                if (found) {
-                    break;
-                }
-            }
-            if (found) {
                 // it was a GUID or id
                 continue;
             }
@@ -209,10 +194,43 @@ final public class SimpleQuery {
         return this;
     }
 
+    private ThingInstance findInstanceByGuidOrId(final String term) {
+
+        // when we have all the instances of a thing, use the thing's guid and id indexes
+        if (lastMatch == CURRENT_THING && currentThing != null) {
+            return currentThing.findInstanceByGUIDorID(term);
+        }
+
+        for (ThingInstance instance : foundItems) {
+
+            // found based on ID ?
+            final List<Field> idFields = instance.getEntity().
+                    getFieldsOfType(FieldType.ID);
+            if(!idFields.isEmpty()){
+                final String idValue = instance.getFieldValue(
+                        idFields.get(0).getName()).asString();
+                if(idValue.contentEquals(term)){
+                    return instance;
+                }
+            }
+
+            if (instance.getGUID().contentEquals(term)) {
+                return instance;
+            }
+        }
+
+        return null;
+    }
+
     public boolean isResultACollection() {
         return isCollection;
     }
 
+    /*
+        A limit or offset which is not a whole number of 0 or more,
+        or a sort on a field which is not defined,
+        throws an IllegalArgumentException
+     */
     public SimpleQuery performQuery(final Map<String, String> queryParams) {
 
         performQuery();
@@ -222,32 +240,54 @@ final public class SimpleQuery {
             return this;
         }
 
-        foundItems = new QueryListFilter(queryParams).filter(foundItems);
+        paging = QueryPaging.from(queryParams, resultContainsDefinition);
+        sort = QuerySort.from(queryParams, resultContainsDefinition);
+
+        final QueryListFilter filter = new QueryListFilter(queryParams).inParallelFrom(parallelThreshold);
+
+        if(lastMatch == CURRENT_THING && currentThing != null){
+            final Supplier<Stream<ThingInstance>> inIndexOrder =
+                    sort==null || filter.isSearching() ? null : sort.inIndexOrder(currentThing);
+            if(inIndexOrder!=null){
+                // read in order from the index and stop at the end of the page
+                foundItems = filter.filter(InstancePipeline.ordered(inIndexOrder));
+                sort = null;
+            }else{
+                // all the instances of a thing, so we can use its indexes
+                foundItems = filter.filterInstancesOf(currentThing);
+            }
+        }else{
+            foundItems = filter.filter(foundItems);
+        }
 
         return this;
     }
 
+    /*
+        the instances found, read from the query the first time they are asked for
+     */
     public List<ThingInstance> getListThingInstance() {
-        List<ThingInstance> returnThis = new ArrayList<ThingInstance>();
-
-        if (lastMatch == CURRENT_THING) {
-            // if not allow filtering then...
-            //returnThis.addAll(currentThing.getInstances());
-            // if allow filtering then...
-            returnThis.addAll(foundItems);
+        if(results==null){
+            results = Collections.unmodifiableList(findResults());
         }
+        return results;
+    }
+
+    private List<ThingInstance> findResults() {
 
         if (lastMatch == CURRENT_INSTANCE) {
+            final List<ThingInstance> returnThis = new ArrayList<ThingInstance>();
             returnThis.add(currentInstance);
+            return returnThis;
         }
 
-        if (lastMatch == CURRENT_ITEMS || lastMatch == CURRENT_RELATIONSHIP) {
-            returnThis.addAll(foundItems);
+        if (lastMatch == CURRENT_THING || lastMatch == CURRENT_ITEMS || lastMatch == CURRENT_RELATIONSHIP) {
+            return foundItems.toList(sort, paging);
         }
 
         //if(lastMatch==NOTHING){ // then the array is already empty}
 
-        return returnThis;
+        return new ArrayList<ThingInstance>();
     }
 
     public boolean lastMatchWasRelationship() {
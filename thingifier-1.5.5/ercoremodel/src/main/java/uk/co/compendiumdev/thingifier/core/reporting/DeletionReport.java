@@ -0,0 +1,51 @@
+package uk.co.compendiumdev.thingifier.core.reporting;
+
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+    The instances removed by a delete, the instance asked for and
+    every instance deleted because of a mandatory relationship to it.
+ */
+public class DeletionReport {
+
+    private final List<ThingInstance> deleted;
+    private long durationNanos;
+
+    public DeletionReport() {
+        deleted = new ArrayList<>();
+        durationNanos = 0;
+    }
+
+    public DeletionReport addDeleted(ThingInstance instance) {
+        deleted.add(instance);
+        return this;
+    }
+
+    public DeletionReport setDurationNanos(long nanos) {
+        this.durationNanos = nanos;
+        return this;
+    }
+
+    public List<ThingInstance> getDeletedInstances() {
+        return Collections.unmodifiableList(deleted);
+    }
+
+    public int countDeleted() {
+        return deleted.size();
+    }
+
+    /*
+        the number of instances deleted because of the first one
+     */
+    public int getCascadeSize() {
+        return Math.max(0, deleted.size()-1);
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+}
@@ -0,0 +1,530 @@
+package uk.co.compendiumdev.thingifier.core.snapshot;
+
+import uk.co.compendiumdev.thingifier.core.EntityRelModel;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipVector;
+import uk.co.compendiumdev.thingifier.core.domain.instances.InstanceFields;
+import uk.co.compendiumdev.thingifier.core.domain.instances.RelationshipInstance;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.journal.JournalBatch;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/*
+    A binary copy of all the instances of a model, their field values
+    and the relationships between them, to restore a large model quickly.
+
+    The snapshot is written to a temporary file which replaces the
+    snapshot when it is complete, so a snapshot is never partly written.
+    It is read through a memory mapped file rather than parsed from a stream,
+    and all of it is read before the data in the model is replaced. The
+    instances and relationships read are added to the things directly,
+    without the checks, locks and journalling of adding them one at a time,
+    and the indexes are built once.
+
+    The model's journal starts a new segment while no changes are being
+    made, so every change before that segment has been made, then the
+    instances are copied from the values each has published while changes
+    carry on. So the snapshot has every change before the segment, and
+    some of the changes after it, which replaying the segments from there on
+    makes again or skips, see JournalReplay. Once the snapshot is durable the
+    earlier segments are dropped. A model without a journal has nothing to
+    replay, so no changes are made while it is copied.
+
+    - the journal segment
+    - thing name, the names of the saved fields, the next id of each ID field
+    - the guid and the field values of each instance, null when not assigned
+    - the relationship names, then each relationship as
+      from instance, relationship name, to instance by position
+
+    OBJECT field values are not saved.
+ */
+public final class ModelSnapshot {
+
+    private static final int MAGIC = 0x54484e47; // THNG
+    private static final int VERSION = 3;
+    // version 2 had the number of journal entries before it, version 1 had no journal position
+    private static final int VERSION_WITH_POSITION = 2;
+    private static final int VERSION_WITHOUT_POSITION = 1;
+    private static final int NULL_STRING = -1;
+    // read the file a window at a time, a mapping is limited to 2GB
+    private static final int MAPPED_WINDOW = 64 * 1024 * 1024;
+
+    private final Path path;
+    private ExecutorService background;
+    // of the snapshot last written or loaded
+    private volatile long journalSegment;
+
+    public ModelSnapshot(final Path path){
+        this.path = path;
+    }
+
+    public boolean exists() {
+        return Files.isRegularFile(path);
+    }
+
+    /*
+        the journal segment started when the snapshot last written or loaded was
+        taken, the journal entries from here on are not in the snapshot, 0 when
+        the model had no journal
+     */
+    public long getJournalSegment() {
+        return journalSegment;
+    }
+
+    /*
+        Write the snapshot, returns the number of instances written
+     */
+    public synchronized int write(final EntityRelModel model) {
+        final Path parent = path.toAbsolutePath().getParent();
+        Path temporary = null;
+        try{
+            temporary = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+            // the changes in the journal before the segment have all been made
+            final long segment = JournalBatch.whileNoChangesAreMade(model::startJournalSegment);
+            final CapturedModel captured = segment==0 ?
+                                JournalBatch.whileNoChangesAreMade(() -> capture(model, segment)) :
+                                capture(model, segment);
+            try(FileOutputStream file = new FileOutputStream(temporary.toFile());
+                DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file, 1 << 16))){
+                writeTo(output, captured);
+                output.flush();
+                file.getFD().sync();
+            }
+            replaceSnapshotWith(temporary);
+            forceDirectoryOf(path);
+            journalSegment = captured.journalSegment;
+            model.dropJournalSegmentsBefore(captured.journalSegment);
+            return captured.instances.size();
+        }catch(IOException e){
+            throw new UncheckedIOException("Could not write snapshot " + path, e);
+        }finally{
+            deleteIfExists(temporary);
+        }
+    }
+
+    /*
+        Write the snapshot on a background thread, snapshots are written one at a time
+     */
+    public synchronized Future<Integer> writeInBackground(final EntityRelModel model) {
+        if(background==null){
+            background = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread writer = new Thread(runnable, "snapshot-writer");
+                writer.setDaemon(true);
+                return writer;
+            });
+        }
+        return background.submit(() -> write(model));
+    }
+
+    private void replaceSnapshotWith(final Path temporary) throws IOException {
+        try{
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }catch(AtomicMoveNotSupportedException e){
+            Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // the replaced snapshot is found after a crash, where the file system allows, before the journal is dropped
+    private static void forceDirectoryOf(final Path file) {
+        try(FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)){
+            directory.force(true);
+        }catch(IOException e){
+            // not every file system can open a directory
+        }
+    }
+
+    private void deleteIfExists(final Path temporary) {
+        if(temporary==null){
+            return;
+        }
+        try{
+            Files.deleteIfExists(temporary);
+        }catch(IOException e){
+            // the snapshot was written, a left over temporary file is harmless
+        }
+    }
+
+    private CapturedModel capture(final EntityRelModel model, final long segment) {
+        final CapturedModel captured = new CapturedModel(segment);
+        final Map<ThingInstance, Integer> positions = new IdentityHashMap<>();
+
+        for(Thing thing : model.getThings()){
+            final CapturedThing capturedThing = new CapturedThing(thing.definition().getName(), savedFieldsOf(thing));
+            // before the instances, so an instance added meanwhile has its id replayed
+            for(Field field : capturedThing.fields){
+                capturedThing.nextIds.add(field.getType()==FieldType.ID ? field.peekNextId() : 0);
+            }
+            for(ThingInstance instance : thing.getInstances()){
+                if(positions.containsKey(instance)){
+                    // seen again under the guid it was changed to
+                    continue;
+                }
+                positions.put(instance, captured.instances.size());
+                captured.instances.add(instance);
+                capturedThing.values.add(instance.getFields().snapshot());
+            }
+            captured.things.add(capturedThing);
+        }
+
+        final Map<String, Integer> nameCodes = new HashMap<>();
+        for(ThingInstance instance : captured.instances){
+            final Thing thing = model.getThingNamed(instance.getEntity().getName());
+            for(RelationshipInstance relationship : instance.getRelationships().getRelationshipsFromThis()){
+                final Integer to = positions.get(relationship.getTo());
+                if(to==null){
+                    // related to an instance which has been cleared
+                    continue;
+                }
+                final String name = thing.relationshipNameFor(relationship);
+                Integer code = nameCodes.get(name);
+                if(code==null){
+                    code = captured.relationshipNames.size();
+                    nameCodes.put(name, code);
+                    captured.relationshipNames.add(name);
+                }
+                captured.relationships.add(new int[]{positions.get(instance), code, to});
+            }
+        }
+        return captured;
+    }
+
+    private void writeTo(final DataOutputStream output, final CapturedModel captured) throws IOException {
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(captured.journalSegment);
+
+        output.writeInt(captured.things.size());
+        for(CapturedThing thing : captured.things){
+            writeString(output, thing.name);
+            output.writeInt(thing.fields.size());
+            for(int field=0; field<thing.fields.size(); field++){
+                writeString(output, thing.fields.get(field).getName());
+                output.writeInt(thing.nextIds.get(field));
+            }
+
+            output.writeInt(thing.values.size());
+            for(InstanceFields instanceValues : thing.values){
+                writeString(output, instanceValues.getAssignedValue("guid").asString());
+                for(Field field : thing.fields){
+                    final FieldValue value = instanceValues.getAssignedValue(field.getName());
+                    writeString(output, value==null ? null : value.asString());
+                }
+            }
+        }
+
+        output.writeInt(captured.relationshipNames.size());
+        for(String name : captured.relationshipNames){
+            writeString(output, name);
+        }
+        output.writeInt(captured.relationships.size());
+        for(int[] relationship : captured.relationships){
+            output.writeInt(relationship[0]);
+            output.writeInt(relationship[1]);
+            output.writeInt(relationship[2]);
+        }
+    }
+
+    private List<Field> savedFieldsOf(final Thing thing) {
+        final List<Field> fields = new ArrayList<>();
+        for(Field field : thing.definition().getFields()){
+            if(field.getType()!=FieldType.OBJECT && !field.getName().equalsIgnoreCase("guid")){
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    private void writeString(final DataOutputStream output, final String value) throws IOException {
+        if(value==null){
+            output.writeInt(NULL_STRING);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /*
+        Replace the data in the model with the snapshot, returns the number of instances loaded.
+        A snapshot which can not be read leaves the data in the model as it was.
+     */
+    public int load(final EntityRelModel model) {
+        final LoadedModel loaded;
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            loaded = read(new MappedInput(channel), model);
+        }catch(IOException e){
+            throw new UncheckedIOException("Could not load snapshot " + path, e);
+        }
+
+        model.clearAllData(true);
+        for(LoadedThing thing : loaded.things){
+            thing.thing.restoreInstances(thing.instances);
+            thing.continueIds();
+        }
+        for(int index=0; index<loaded.relationships.size(); index++){
+            final int[] relationship = loaded.relationships.get(index);
+            loaded.instances.get(relationship[0]).getRelationships().
+                    restore(loaded.relationshipDefinitions.get(index), loaded.instances.get(relationship[2]));
+        }
+
+        journalSegment = loaded.journalSegment;
+        return loaded.instances.size();
+    }
+
+    private LoadedModel read(final MappedInput input, final EntityRelModel model) throws IOException {
+        if(input.readInt()!=MAGIC){
+            throw new IllegalArgumentException("Not a snapshot " + path);
+        }
+        final int version = input.readInt();
+        if(version!=VERSION && version!=VERSION_WITH_POSITION && version!=VERSION_WITHOUT_POSITION){
+            throw new IllegalArgumentException(
+                    String.format("Can not load snapshot version %d from %s", version, path));
+        }
+        if(version==VERSION_WITH_POSITION){
+            // the journal was never dropped, so all of it replaces the snapshot
+            input.readLong();
+        }
+
+        final LoadedModel loaded = new LoadedModel(version==VERSION ? input.readLong() : 0);
+        final int thingCount = input.readInt();
+        for(int thingIndex=0; thingIndex<thingCount; thingIndex++){
+            loaded.things.add(readThing(input, model, loaded.instances));
+        }
+        readRelationships(input, loaded);
+        return loaded;
+    }
+
+    private LoadedThing readThing(final MappedInput input, final EntityRelModel model,
+                                  final List<ThingInstance> instances) throws IOException {
+
+        final String thingName = input.readString();
+        final Thing thing = model.getThingNamed(thingName);
+        if(thing==null){
+            throw new IllegalArgumentException(
+                    String.format("Snapshot has instances of an unknown thing %s", thingName));
+        }
+
+        final ThingDefinition definition = thing.definition();
+        final int fieldCount = input.readInt();
+        final LoadedThing loaded = new LoadedThing(thing, fieldCount);
+        for(int field=0; field<fieldCount; field++){
+            final Field defined = definition.getField(input.readString());
+            loaded.nextIds[field] = input.readInt();
+            // a field no longer defined, or no longer saved, has its values skipped
+            if(defined!=null && defined.getType()!=FieldType.OBJECT){
+                loaded.fields[field] = defined;
+                loaded.slots[field] = definition.slotFor(defined.getName());
+            }
+        }
+
+        // the instances are not added to the thing until all of the snapshot is read
+        final Field guid = definition.getField("guid");
+        final int guidSlot = definition.slotFor("guid");
+        final int instanceCount = input.readInt();
+        for(int instanceIndex=0; instanceIndex<instanceCount; instanceIndex++){
+            final FieldValue[] values = new FieldValue[definition.countSlots()];
+            values[guidSlot] = guid.encoded(FieldValue.is("guid", guid.getType(), input.readString()));
+            for(int field=0; field<fieldCount; field++){
+                final String value = input.readString();
+                final Field defined = loaded.fields[field];
+                if(value!=null && defined!=null){
+                    // typed and held as setting the value would
+                    values[loaded.slots[field]] =
+                            defined.encoded(FieldValue.is(defined.getName(), defined.getType(), value));
+                }
+            }
+            final ThingInstance instance = ThingInstance.restore(definition, values);
+            loaded.instances.add(instance);
+            instances.add(instance);
+        }
+        return loaded;
+    }
+
+    private void readRelationships(final MappedInput input, final LoadedModel loaded) throws IOException {
+        final int nameCount = input.readInt();
+        loaded.relationshipNames = new String[nameCount];
+        for(int name=0; name<nameCount; name++){
+            loaded.relationshipNames[name] = input.readString();
+        }
+
+        final Map<List<Object>, RelationshipDefinition> definitions = new HashMap<>();
+        final int relationshipCount = input.readInt();
+        for(int relationship=0; relationship<relationshipCount; relationship++){
+            final int[] read = new int[]{input.readInt(), input.readInt(), input.readInt()};
+            if(read[0]<0 || read[0]>=loaded.instances.size() ||
+                read[1]<0 || read[1]>=nameCount ||
+                read[2]<0 || read[2]>=loaded.instances.size()){
+                throw new IOException("Snapshot has a relationship to an instance it does not have");
+            }
+            loaded.relationships.add(read);
+            loaded.relationshipDefinitions.add(definitionOf(loaded.instances.get(read[0]),
+                                                loaded.relationshipNames[read[1]],
+                                                loaded.instances.get(read[2]), definitions));
+        }
+    }
+
+    // the relationships are checked before any data in the model is replaced
+    private RelationshipDefinition definitionOf(final ThingInstance from, final String name, final ThingInstance to,
+                                                final Map<List<Object>, RelationshipDefinition> definitions) {
+        final List<Object> key = Arrays.asList(from.getEntity(), name, to.getEntity());
+        RelationshipDefinition definition = definitions.get(key);
+        if(definition==null){
+            final RelationshipVector vector = from.getEntity().getNamedRelationshipTo(name, to.getEntity());
+            if(vector==null){
+                throw new IllegalArgumentException(
+                        String.format("Snapshot has an unknown relationship %s from %s to %s",
+                                name, from.getEntity().getName(), to.getEntity().getName()));
+            }
+            definition = vector.getRelationshipDefinition();
+            definitions.put(key, definition);
+        }
+        return definition;
+    }
+
+    private static final class CapturedModel {
+        private final long journalSegment;
+        private final List<CapturedThing> things = new ArrayList<>();
+        private final List<ThingInstance> instances = new ArrayList<>();
+        private final List<String> relationshipNames = new ArrayList<>();
+        private final List<int[]> relationships = new ArrayList<>();
+
+        private CapturedModel(final long journalSegment){
+            this.journalSegment = journalSegment;
+        }
+    }
+
+    private static final class CapturedThing {
+        private final String name;
+        private final List<Field> fields;
+        private final List<Integer> nextIds = new ArrayList<>();
+        private final List<InstanceFields> values = new ArrayList<>();
+
+        private CapturedThing(final String name, final List<Field> fields){
+            this.name = name;
+            this.fields = fields;
+        }
+    }
+
+    private static final class LoadedModel {
+        private final long journalSegment;
+        private final List<LoadedThing> things = new ArrayList<>();
+        private final List<ThingInstance> instances = new ArrayList<>();
+        private String[] relationshipNames;
+        private final List<int[]> relationships = new ArrayList<>();
+        private final List<RelationshipDefinition> relationshipDefinitions = new ArrayList<>();
+
+        private LoadedModel(final long journalSegment){
+            this.journalSegment = journalSegment;
+        }
+    }
+
+    private static final class LoadedThing {
+        private final Thing thing;
+        // the fields still defined, and their slots, of each saved field
+        private final Field[] fields;
+        private final int[] slots;
+        private final int[] nextIds;
+        private final List<ThingInstance> instances = new ArrayList<>();
+
+        private LoadedThing(final Thing thing, final int fieldCount){
+            this.thing = thing;
+            this.fields = new Field[fieldCount];
+            this.slots = new int[fieldCount];
+            this.nextIds = new int[fieldCount];
+        }
+
+        // new instances carry on from where the snapshot was
+        private void continueIds() {
+            for(int field=0; field<fields.length; field++){
+                final Field idField = fields[field];
+                if(idField!=null && idField.getType()==FieldType.ID){
+                    idField.resetNextId();
+                    idField.ensureNextIdAbove(String.valueOf(nextIds[field]-1));
+                }
+            }
+        }
+    }
+
+    /*
+        reads the file through a window of the file mapped into memory,
+        moving the window along as it is read
+     */
+    private static final class MappedInput {
+
+        private final FileChannel channel;
+        private long windowStart;
+        private MappedByteBuffer window;
+
+        private MappedInput(final FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.windowStart = 0;
+            mapFrom(0, 0);
+        }
+
+        private void mapFrom(final long position, final int atLeast) throws IOException {
+            final long size = Math.min(channel.size()-position, Math.max(MAPPED_WINDOW, atLeast));
+            if(size<atLeast){
+                throw new IOException("Snapshot ends before it is complete");
+            }
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+
+        private void ensure(final int bytes) throws IOException {
+            if(window.remaining()<bytes){
+                mapFrom(windowStart + window.position(), bytes);
+            }
+        }
+
+        private int readInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        private long readLong() throws IOException {
+            ensure(8);
+            return window.getLong();
+        }
+
+        private String readString() throws IOException {
+            final int length = readInt();
+            if(length==NULL_STRING){
+                return null;
+            }
+            if(length<0){
+                throw new IOException("Snapshot has an invalid string length " + length);
+            }
+            ensure(length);
+            final byte[] bytes = new byte[length];
+            window.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+}
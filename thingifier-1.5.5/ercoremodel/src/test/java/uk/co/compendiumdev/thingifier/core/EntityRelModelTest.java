@@ -5,8 +5,14 @@ import org.junit.jupiter.api.Test;
 import uk.co.compendiumdev.thingifier.core.domain.datapopulator.DataPopulator;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.Cardinality;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.Optionality;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.reporting.DeletionReport;
+
+import java.util.concurrent.CountDownLatch;
 
 public class EntityRelModelTest {
 
@@ -79,6 +85,34 @@ public class EntityRelModelTest {
                     erm.findThingInstanceByGuid(instance.getGUID()));
     }
 
+    @Test
+    public void canFindThingInstancesOfAnyTypeByGuid() {
+
+        EntityRelModel erm = new EntityRelModel();
+        Thing thing = erm.createThing("thing", "things");
+        Thing thing2 = erm.createThing("thing2", "thing2s");
+
+        final ThingInstance instance = thing.createManagedInstance();
+        final ThingInstance instance2 = thing2.createManagedInstance();
+        final ThingInstance unmanaged = thing2.createInstance();
+
+        Assertions.assertEquals(instance, erm.findThingInstanceByGuid(instance.getGUID()));
+        Assertions.assertEquals(thing, erm.findThingForInstanceGuid(instance.getGUID()));
+        Assertions.assertEquals(instance2, erm.findThingInstanceByGuid(instance2.getGUID()));
+        Assertions.assertEquals(thing2, erm.findThingForInstanceGuid(instance2.getGUID()));
+
+        // not added to the thing so can not be found
+        Assertions.assertNull(erm.findThingInstanceByGuid(unmanaged.getGUID()));
+        Assertions.assertNull(erm.findThingInstanceByGuid(null));
+
+        thing2.addInstance(unmanaged);
+        Assertions.assertEquals(unmanaged, erm.findThingInstanceByGuid(unmanaged.getGUID()));
+
+        erm.deleteThing(instance2);
+        Assertions.assertNull(erm.findThingInstanceByGuid(instance2.getGUID()));
+        Assertions.assertNull(erm.findThingForInstanceGuid(instance2.getGUID()));
+    }
+
     @Test
     public void canDeleteAThingInAModel() {
 
@@ -218,4 +252,137 @@ public class EntityRelModelTest {
 
         Assertions.assertEquals(1, erm.getThings().size());
     }
+
+    @Test
+    public void canCascadeDeleteALongChainOfMandatoryRelationships() {
+
+        EntityRelModel erm = new EntityRelModel();
+        Thing node = erm.createThing("node", "nodes");
+        erm.defineRelationship(node, node, "children", Cardinality.ONE_TO_MANY)
+                .whenReversed(Cardinality.ONE_TO_ONE,"parent").
+                getReversedRelationship().
+                setOptionality(Optionality.MANDATORY_RELATIONSHIP);
+
+        final ThingInstance root = node.createManagedInstance();
+        ThingInstance parent = root;
+        for(int child=0; child<5000; child++){
+            final ThingInstance next = node.createManagedInstance();
+            parent.getRelationships().connect("children", next);
+            parent = next;
+        }
+
+        // close the loop so the last node is also the parent of the root
+        parent.getRelationships().connect("children", root);
+
+        final DeletionReport report = erm.deleteThing(root);
+
+        Assertions.assertEquals(0, node.countInstances());
+        Assertions.assertEquals(5001, report.countDeleted());
+        Assertions.assertEquals(5000, report.getCascadeSize());
+        Assertions.assertSame(root, report.getDeletedInstances().get(0));
+        Assertions.assertTrue(report.getDurationNanos()>0);
+    }
+
+    @Test
+    public void dependentsReachedTwiceAreOnlyDeletedOnce() {
+
+        EntityRelModel erm = new EntityRelModel();
+        Thing thing = erm.createThing("thing", "things");
+        Thing dependent = erm.createThing("dependantthing", "dthings");
+        erm.defineRelationship(thing, dependent, "things", Cardinality.ONE_TO_MANY)
+                .whenReversed(Cardinality.ONE_TO_ONE,"idiewithoutyou").
+                getReversedRelationship().
+                setOptionality(Optionality.MANDATORY_RELATIONSHIP);
+
+        final ThingInstance mainThing = thing.createManagedInstance();
+        final ThingInstance dependentThing = dependent.createManagedInstance();
+        mainThing.getRelationships().connect("things", dependentThing);
+        mainThing.getRelationships().connect("things", dependentThing);
+
+        final DeletionReport report = erm.deleteThing(mainThing);
+
+        Assertions.assertEquals(2, report.countDeleted());
+        Assertions.assertEquals(0, dependent.countInstances());
+    }
+
+    @Test
+    public void dependentsConnectedDuringADeleteAreDeletedWithIt() throws InterruptedException {
+
+        EntityRelModel erm = new EntityRelModel();
+        Thing thing = erm.createThing("thing", "things");
+        Thing dependent = erm.createThing("dependantthing", "dthings");
+        erm.defineRelationship(thing, dependent, "things", Cardinality.ONE_TO_MANY)
+                .whenReversed(Cardinality.ONE_TO_ONE,"idiewithoutyou").
+                getReversedRelationship().
+                setOptionality(Optionality.MANDATORY_RELATIONSHIP);
+
+        for(int round=0; round<50; round++){
+            final ThingInstance mainThing = thing.createManagedInstance();
+            final CountDownLatch connecting = new CountDownLatch(100);
+
+            // keeps connecting dependents until the main thing is deleted
+            final Thread connector = new Thread(() -> {
+                boolean deleted = false;
+                while(!deleted){
+                    final ThingInstance dependentThing = dependent.createManagedInstance();
+                    try{
+                        mainThing.getRelationships().connect("things", dependentThing);
+                    }catch(IllegalArgumentException e){
+                        // the dependent can not exist without the main thing
+                        dependent.deleteInstance(dependentThing.getGUID());
+                        deleted = true;
+                    }
+                    connecting.countDown();
+                }
+            });
+            connector.start();
+            connecting.await();
+            erm.deleteThing(mainThing);
+            connector.join();
+
+            Assertions.assertEquals(0, thing.countInstances());
+            Assertions.assertEquals(0, dependent.countInstances(), "round " + round);
+        }
+    }
+
+    @Test
+    public void canClearAllDataInBulkAndResetIds() {
+
+        EntityRelModel erm = new EntityRelModel();
+        Thing thing = erm.createThing("thing", "things");
+        Thing dependent = erm.createThing("dependantthing", "dthings");
+        thing.definition().addFields(
+                Field.is("id", FieldType.ID),
+                Field.is("title").makeIndexed());
+        erm.defineRelationship(thing, dependent, "things", Cardinality.ONE_TO_MANY);
+
+        final ThingInstance mainThing = thing.createManagedInstance().setValue("title", "main");
+        mainThing.getRelationships().connect("things", dependent.createManagedInstance());
+        Assertions.assertEquals(1, thing.findInstancesByIndexedField(
+                                        FieldValue.is("title", "main")).size());
+
+        erm.clearAllData(true);
+
+        Assertions.assertEquals(0, thing.countInstances());
+        Assertions.assertEquals(0, dependent.countInstances());
+        Assertions.assertNull(erm.findThingInstanceByGuid(mainThing.getGUID()));
+        Assertions.assertTrue(thing.findInstancesByIndexedField(
+                                        FieldValue.is("title", "main")).isEmpty());
+
+        // a cleared instance is no longer indexed when it changes
+        mainThing.setValue("title", "changed");
+        Assertions.assertTrue(thing.findInstancesByIndexedField(
+                                        FieldValue.is("title", "changed")).isEmpty());
+
+        // and can not be related to
+        Assertions.assertTrue(mainThing.isDeleted());
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> mainThing.getRelationships().connect("things", dependent.createManagedInstance()));
+
+        final ThingInstance another = thing.createManagedInstance().setValue("title", "main");
+        Assertions.assertFalse(another.isDeleted());
+        Assertions.assertEquals("1", another.getFieldValue("id").asString());
+        Assertions.assertSame(another, thing.findInstanceByGUIDorID("1"));
+        Assertions.assertSame(another, erm.findThingInstanceByGuid(another.getGUID()));
+    }
 }
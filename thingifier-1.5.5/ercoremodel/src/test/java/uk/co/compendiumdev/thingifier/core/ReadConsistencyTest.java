@@ -0,0 +1,98 @@
+package uk.co.compendiumdev.thingifier.core;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.Cardinality;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+    What a reader sees of changes which other threads are part way through
+ */
+class ReadConsistencyTest {
+
+    private EntityRelModel createModel(){
+        final EntityRelModel erm = new EntityRelModel();
+        final Thing project = erm.createThing("project", "projects");
+        final Thing todo = erm.createThing("todo", "todos");
+        project.definition().addFields(Field.is("title"));
+        todo.definition().addFields(Field.is("title"), Field.is("description"));
+        erm.defineRelationship(project, todo, "tasks", Cardinality.ONE_TO_MANY);
+        return erm;
+    }
+
+    private void readWhileChanging(final Runnable read) {
+        final Thread reader = new Thread(read);
+        reader.start();
+        try {
+            reader.join();
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Test
+    void anAmendIsSeenAllAtOnce(){
+
+        final EntityRelModel erm = createModel();
+        final ThingInstance paperwork = erm.getThingNamed("todo").createManagedInstance().
+                                            setValue("title", "paperwork").
+                                            setValue("description", "file it");
+
+        final List<String> seen = new ArrayList<>();
+        paperwork.getFields().changeTogether(() -> {
+            paperwork.setValue("title", "filing");
+            readWhileChanging(() -> seen.add(paperwork.getFieldValue("title").asString()));
+            paperwork.setValue("description", "shred it");
+            readWhileChanging(() -> seen.add(paperwork.getFieldValue("description").asString()));
+        });
+
+        Assertions.assertEquals("paperwork", seen.get(0));
+        Assertions.assertEquals("file it", seen.get(1));
+    }
+
+    @Test
+    void aNewInstanceIsSeenWithTheValuesItWasCreatedWith(){
+
+        final EntityRelModel erm = createModel();
+        final Thing todo = erm.getThingNamed("todo");
+
+        final ThingInstance paperwork = todo.createInstance().setValue("title", "paperwork");
+        todo.addInstance(paperwork);
+
+        final List<String> seen = new ArrayList<>();
+        readWhileChanging(() -> {
+            for(ThingInstance instance : todo.getInstances()){
+                seen.add(instance.getFieldValue("title").asString());
+            }
+        });
+
+        Assertions.assertEquals(Arrays.asList("paperwork"), seen);
+    }
+
+    @Test
+    void aChangeToSeveralInstancesIsSeenOneStepAtATime(){
+
+        final EntityRelModel erm = createModel();
+        final Thing todo = erm.getThingNamed("todo");
+        final ThingInstance office = erm.getThingNamed("project").createManagedInstance();
+
+        // as POST /projects/:id/tasks does, the todo is added then related to the project
+        final ThingInstance paperwork = todo.createManagedInstance();
+
+        final List<Boolean> seen = new ArrayList<>();
+        readWhileChanging(() -> {
+            seen.add(todo.getInstances().contains(paperwork));
+            seen.add(office.getRelationships().getConnectedItems("tasks").contains(paperwork));
+        });
+
+        office.getRelationships().connect("tasks", paperwork);
+
+        // the todo is seen before it is one of the project's tasks
+        Assertions.assertEquals(Arrays.asList(true, false), seen);
+    }
+}
@@ -168,4 +168,21 @@ class DefinedFieldsTest {
 
     }
 
+    @Test
+    void fieldsAreGivenSlotsInTheOrderTheyAreAdded(){
+
+        DefinedFields fields = new DefinedFields();
+        fields.addFields(Field.is("first"), Field.is("Second"));
+
+        Assertions.assertEquals(2, fields.countSlots());
+        Assertions.assertEquals(0, fields.slotFor("first"));
+        Assertions.assertEquals(1, fields.slotFor("second"));
+        Assertions.assertEquals("Second", fields.getFieldInSlot(1).getName());
+        Assertions.assertEquals(-1, fields.slotFor("third"));
+
+        // redefining a field keeps its slot
+        fields.addField(Field.is("first", FieldType.INTEGER));
+        Assertions.assertEquals(2, fields.countSlots());
+        Assertions.assertEquals(FieldType.INTEGER, fields.getFieldInSlot(0).getType());
+    }
 }
@@ -5,7 +5,15 @@ import org.junit.jupiter.api.Test;
 import uk.co.compendiumdev.thingifier.core.reporting.ValidationReport;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 class IdFieldTest {
 
@@ -37,6 +45,58 @@ class IdFieldTest {
         Assertions.assertEquals("12", field.getNextIdValue());
     }
 
+    @Test
+    void idsAreUniqueWhenAllocatedConcurrently() throws Exception {
+
+        final Field field = Field.is("id", FieldType.ID);
+        final int threads = 64;
+        final int idsPerThread = 5000;
+
+        final Set<String> ids = ConcurrentHashMap.newKeySet();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        try {
+            final List<Future<?>> allocations = new ArrayList<>();
+            for (int thread = 0; thread < threads; thread++) {
+                final int threadNumber = thread;
+                allocations.add(executor.submit(() -> {
+                    start.await();
+                    for (int count = 0; count < idsPerThread; count++) {
+                        if(threadNumber==0 && count % 100 == 0){
+                            // a PUT with an id below the ids being allocated
+                            field.ensureNextIdAbove(String.valueOf(count));
+                        }
+                        Assertions.assertTrue(ids.add(field.getNextIdValue()),
+                                "id allocated twice");
+                    }
+                    return null;
+                }));
+            }
+
+            start.countDown();
+            for (Future<?> allocation : allocations) {
+                allocation.get(30, TimeUnit.SECONDS);
+            }
+        }finally {
+            executor.shutdownNow();
+        }
+
+        Assertions.assertEquals(threads * idsPerThread, ids.size());
+        Assertions.assertEquals(String.valueOf(threads * idsPerThread + 1), field.getNextIdValue());
+    }
+
+    @Test
+    void ensuringAnIdBelowTheNextIdDoesNotLowerIt(){
+
+        final Field field = Field.is("id", FieldType.ID);
+
+        field.ensureNextIdAbove("10");
+        field.ensureNextIdAbove("5");
+
+        Assertions.assertEquals("11", field.getNextIdValue());
+    }
+
     @Test
     void normalValidateAgainstTypeForIdDoesNotAllowSetting(){
 
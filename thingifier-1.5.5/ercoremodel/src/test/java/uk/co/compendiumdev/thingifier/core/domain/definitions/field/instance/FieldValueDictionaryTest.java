@@ -0,0 +1,66 @@
+package uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.DefinedFields;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.instances.InstanceFields;
+
+class FieldValueDictionaryTest {
+
+    @Test
+    void sameValuesShareOneEncodedValue(){
+
+        final FieldValueDictionary dictionary = new FieldValueDictionary("done", FieldType.BOOLEAN);
+
+        final FieldValue first = dictionary.canonical("true");
+        final FieldValue second = dictionary.canonical(FieldValue.is("done", "true"));
+        final FieldValue other = dictionary.canonical("false");
+
+        Assertions.assertSame(first, second);
+        Assertions.assertNotEquals(first.getDictionaryCode(), other.getDictionaryCode());
+        Assertions.assertEquals(first.getDictionaryCode(), dictionary.codeFor("true"));
+        Assertions.assertEquals(FieldValueDictionary.NOT_ENCODED, dictionary.codeFor("TRUE"));
+        Assertions.assertTrue(first.asBoolean());
+        Assertions.assertEquals(2, dictionary.size());
+    }
+
+    @Test
+    void instancesShareBooleanAndEnumValues(){
+
+        final DefinedFields fields = new DefinedFields();
+        fields.addFields(
+                Field.is("done", FieldType.BOOLEAN).withDefaultValue("false"),
+                Field.is("title", FieldType.STRING));
+
+        final InstanceFields one = new InstanceFields(fields);
+        final InstanceFields two = new InstanceFields(fields);
+
+        one.setValue("done", "true");
+        two.setValue("done", "true");
+        one.setValue("title", "a title");
+        two.setValue("title", "a title");
+
+        Assertions.assertSame(one.getFieldValue("done"), two.getFieldValue("done"));
+        Assertions.assertNotSame(one.getFieldValue("title"), two.getFieldValue("title"));
+
+        Assertions.assertEquals(FieldValueDictionary.NOT_ENCODED,
+                one.getFieldValue("title").getDictionaryCode());
+    }
+
+    @Test
+    void dictionaryStopsGrowingAtItsLimit(){
+
+        final FieldValueDictionary dictionary = new FieldValueDictionary("anenum", FieldType.ENUM);
+
+        for(int value=0; value<1000; value++){
+            dictionary.canonical(String.valueOf(value));
+        }
+
+        Assertions.assertEquals(256, dictionary.size());
+        Assertions.assertEquals(FieldValueDictionary.NOT_ENCODED,
+                dictionary.canonical("999").getDictionaryCode());
+        Assertions.assertEquals("999", dictionary.canonical("999").asString());
+    }
+}
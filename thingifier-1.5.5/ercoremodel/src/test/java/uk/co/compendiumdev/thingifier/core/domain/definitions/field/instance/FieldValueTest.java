@@ -2,6 +2,7 @@ package uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance;
 
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
 
 class FieldValueTest {
 
@@ -43,4 +44,30 @@ class FieldValueTest {
         Assertions.assertThrows(NumberFormatException.class,
                 ()-> {value.asFloat();});
     }
+
+    @Test
+    void canCreateTypedValues(){
+
+        Assertions.assertEquals(12, FieldValue.is("anint", FieldType.INTEGER, "12").asInteger());
+        Assertions.assertEquals(3, FieldValue.is("id", FieldType.ID, "3").asInteger());
+        Assertions.assertEquals(4.3F, FieldValue.is("afloat", FieldType.FLOAT, "4.3").asFloat());
+        Assertions.assertTrue(FieldValue.is("abool", FieldType.BOOLEAN, "TRUE").asBoolean());
+
+        final FieldValue value = FieldValue.is("anint", FieldType.INTEGER, "12");
+        Assertions.assertEquals("12", value.asString());
+        Assertions.assertEquals(12, value.cloned().asInteger());
+    }
+
+    @Test
+    void typedValuesWhichDoNotMatchTheTypeAreKeptAsStrings(){
+
+        final FieldValue value = FieldValue.is("anint", FieldType.INTEGER, "twelve");
+        Assertions.assertEquals("twelve", value.asString());
+        Assertions.assertThrows(NumberFormatException.class,
+                ()-> {value.asInteger();});
+
+        final FieldValue bool = FieldValue.is("abool", FieldType.BOOLEAN, "yes");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                ()-> {bool.asBoolean();});
+    }
 }
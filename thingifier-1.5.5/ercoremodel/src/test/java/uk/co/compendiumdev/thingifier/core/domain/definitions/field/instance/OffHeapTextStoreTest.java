@@ -0,0 +1,148 @@
+package uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.DefinedFields;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.instances.InstanceFields;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.nio.ByteBuffer;
+
+class OffHeapTextStoreTest {
+
+    @Test
+    void textIsReadBackFromTheStore(){
+
+        final OffHeapTextStore store = new OffHeapTextStore("title");
+
+        final FieldValue stored = store.stored(FieldValue.is("title", "café \t over the heap"));
+        final FieldValue another = store.stored(FieldValue.is("title", "another"));
+
+        Assertions.assertTrue(stored.isStoredOffHeap());
+        Assertions.assertEquals("title", stored.getName());
+        Assertions.assertEquals("café \t over the heap", stored.asString());
+        Assertions.assertEquals("another", another.asString());
+        Assertions.assertEquals("café \t over the heap", stored.cloned().asString());
+        Assertions.assertTrue(store.countBytesStored() > 0);
+    }
+
+    @Test
+    void largeValuesCanBeStored(){
+
+        final OffHeapTextStore store = new OffHeapTextStore("description");
+        final StringBuilder text = new StringBuilder();
+        while(text.length() < 2 * 1024 * 1024){
+            text.append("a long description ");
+        }
+
+        Assertions.assertEquals(text.toString(),
+                store.stored(FieldValue.is("description", text.toString())).asString());
+        Assertions.assertEquals("after", store.stored(FieldValue.is("description", "after")).asString());
+    }
+
+    @Test
+    void onlyTextIsStored(){
+
+        final OffHeapTextStore store = new OffHeapTextStore("title");
+
+        final FieldValue empty = FieldValue.is("title", "");
+        final FieldValue none = FieldValue.is("title", (String)null);
+
+        Assertions.assertSame(empty, store.stored(empty));
+        Assertions.assertSame(none, store.stored(none));
+        Assertions.assertNull(store.stored(null));
+        Assertions.assertEquals(0, store.countBytesStored());
+    }
+
+    @Test
+    void instancesStoreTheValuesOfOffHeapFields(){
+
+        final Field title = Field.is("title").storeOffHeap();
+        final Field done = Field.is("done", FieldType.BOOLEAN).storeOffHeap();
+        Assertions.assertTrue(title.isStoredOffHeap());
+        Assertions.assertFalse(done.isStoredOffHeap());
+
+        final DefinedFields defn = new DefinedFields();
+        defn.addFields(title, done);
+
+        final InstanceFields instance = new InstanceFields(defn);
+        instance.setValue("title", "kept off the heap");
+        instance.setValue("done", "true");
+
+        Assertions.assertTrue(instance.getAssignedValue("title").isStoredOffHeap());
+        Assertions.assertEquals("kept off the heap", instance.getFieldValue("title").asString());
+        Assertions.assertEquals("kept off the heap", instance.cloned().getFieldValue("title").asString());
+        Assertions.assertTrue(instance.getFieldValue("done").asBoolean());
+
+        instance.setValue("title", "changed");
+        Assertions.assertEquals("changed", instance.getFieldValue("title").asString());
+        Assertions.assertTrue(title.countBytesStoredOffHeap() > 0);
+    }
+
+    @Test
+    void textIsComparedWithoutReadingIt(){
+
+        final OffHeapTextStore store = new OffHeapTextStore("title");
+        final FieldValue stored = store.stored(FieldValue.is("title", "café \uD83D\uDE00 done"));
+
+        Assertions.assertTrue(stored.textEquals("café \uD83D\uDE00 done"));
+        Assertions.assertFalse(stored.textEquals("café \uD83D\uDE00 don"));
+        Assertions.assertFalse(stored.textEquals("café \uD83D\uDE00 done!"));
+        Assertions.assertFalse(stored.textEquals("cafe \uD83D\uDE00 done"));
+        Assertions.assertFalse(stored.textEquals(null));
+        Assertions.assertTrue(stored.textStartsWith("café \uD83D\uDE00"));
+        Assertions.assertTrue(stored.textStartsWith(""));
+        Assertions.assertFalse(stored.textStartsWith("café \uD83D\uDE01"));
+        Assertions.assertFalse(stored.textStartsWith("café \uD83D\uDE00 done and more"));
+    }
+
+    @Test
+    void valuesInUseAreMovedOnceEnoughTextIsStored(){
+
+        final OffHeapTextStore store = new OffHeapTextStore("title");
+        final FieldValue inUse = store.stored(FieldValue.is("title", "still in use"));
+        Assertions.assertFalse(store.startCompacting());
+
+        final String text = String.format("%1000s", "replaced");
+        while(store.countBytesStored() < 5 * 1024 * 1024){
+            store.stored(FieldValue.is("title", text));
+        }
+
+        Assertions.assertTrue(store.startCompacting());
+        // one caller at a time
+        Assertions.assertFalse(store.startCompacting());
+
+        final FieldValue moved = store.moved(inUse);
+        Assertions.assertNotSame(inUse.storedIn(), moved.storedIn());
+        Assertions.assertEquals("still in use", moved.asString());
+        // the value given is unchanged
+        Assertions.assertEquals("still in use", inUse.asString());
+        store.compacted();
+
+        Assertions.assertFalse(store.startCompacting());
+    }
+
+    @Test
+    void aThingMovesTheValuesOfItsInstancesWhenTheStoreIsCompacted(){
+
+        final Thing thing = Thing.create("todo", "todos");
+        thing.definition().addFields(Field.is("title").storeOffHeap());
+
+        final ThingInstance kept = thing.createManagedInstance().setValue("title", "kept");
+        final ByteBuffer first = kept.getFields().getAssignedValue("title").storedIn();
+        final ThingInstance changed = thing.createManagedInstance();
+
+        final String text = String.format("%1000s", "replaced");
+        for(int change=0; change<5000; change++){
+            changed.setValue("title", text + change);
+        }
+
+        Assertions.assertNotSame(first, kept.getFields().getAssignedValue("title").storedIn());
+        Assertions.assertEquals("kept", kept.getFieldValue("title").asString());
+        Assertions.assertEquals(text + 4999, changed.getFieldValue("title").asString());
+        Assertions.assertEquals(kept, thing.findInstanceByGUIDorID(kept.getGUID()));
+    }
+}
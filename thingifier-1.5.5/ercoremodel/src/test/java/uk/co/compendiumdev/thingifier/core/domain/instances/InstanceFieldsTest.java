@@ -334,4 +334,139 @@ class InstanceFieldsTest {
         List<String> errors = instance.findAnyGuidOrIdDifferences(values);
         Assertions.assertEquals(0, errors.size());
     }
+
+    @Test
+    void canSetValuesOfFieldsDefinedAfterInstanceCreated() {
+
+        DefinedFields fieldsDefn = new DefinedFields();
+        fieldsDefn.addField(Field.is("Ref"));
+
+        InstanceFields instance = new InstanceFields(fieldsDefn);
+        instance.setValue("ref", "a ref");
+
+        fieldsDefn.addField(Field.is("title"));
+        Assertions.assertEquals("", instance.getFieldValue("title").asString());
+
+        instance.setValue("Title", "a title");
+        Assertions.assertEquals("a title", instance.getFieldValue("title").asString());
+        Assertions.assertEquals("a ref", instance.getFieldValue("Ref").asString());
+
+        instance.deleteAllFieldValuesExcept(new ArrayList<>());
+        Assertions.assertNull(instance.getAssignedValue("title"));
+        Assertions.assertNull(instance.getAssignedValue("ref"));
+    }
+
+    @Test
+    void defaultValuesAreSharedAcrossReads() {
+
+        DefinedFields fieldsDefn = new DefinedFields();
+        fieldsDefn.addField(Field.is("status").withDefaultValue("open"));
+        fieldsDefn.addField(Field.is("count", FieldType.INTEGER));
+
+        InstanceFields instance = new InstanceFields(fieldsDefn);
+        InstanceFields another = new InstanceFields(fieldsDefn);
+
+        Assertions.assertEquals("open", instance.getFieldValue("status").asString());
+        Assertions.assertSame(instance.getFieldValue("status"), another.getFieldValue("Status"));
+        Assertions.assertSame(instance.getFieldValue("count"), instance.getFieldValue("count"));
+
+        fieldsDefn.getField("status").withDefaultValue("closed");
+        Assertions.assertEquals("closed", instance.getFieldValue("status").asString());
+    }
+
+    @Test
+    void canReadValuesWithFieldHandles() {
+
+        DefinedFields fieldsDefn = new DefinedFields();
+        fieldsDefn.addFields(Field.is("Ref"), Field.is("title").withDefaultValue("none"));
+
+        InstanceFields instance = new InstanceFields(fieldsDefn);
+        instance.setValue("ref", "a ref");
+
+        final Field ref = fieldsDefn.getField("ref");
+        final Field title = fieldsDefn.getField("title");
+        Assertions.assertEquals("a ref", instance.getFieldValue(ref).asString());
+        Assertions.assertEquals("none", instance.getFieldValue(title).asString());
+
+        Assertions.assertEquals(2, fieldsDefn.getFields().size());
+        Assertions.assertSame(ref, fieldsDefn.getFields().get(0));
+        Assertions.assertSame(fieldsDefn.getFieldNames(), fieldsDefn.getFieldNames());
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> fieldsDefn.getFieldNames().add("other"));
+    }
+
+    @Test
+    void snapshotsDoNotSeeLaterChanges() {
+
+        DefinedFields fieldsDefn = new DefinedFields();
+        fieldsDefn.addFields(Field.is("title"), Field.is("description"));
+
+        InstanceFields instance = new InstanceFields(fieldsDefn);
+        instance.setValue("title", "first");
+
+        final InstanceFields snapshot = instance.snapshot();
+        instance.setValue("title", "second");
+
+        Assertions.assertEquals("first", snapshot.getFieldValue("title").asString());
+        Assertions.assertEquals("second", instance.getFieldValue("title").asString());
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> snapshot.setValue("title", "third"));
+    }
+
+    @Test
+    void valuesBeingReadDoNotSeeLaterChanges() {
+
+        DefinedFields fieldsDefn = new DefinedFields();
+        fieldsDefn.addFields(Field.is("title"), Field.is("description"));
+
+        InstanceFields instance = new InstanceFields(fieldsDefn);
+        instance.setValue("title", "first");
+
+        // e.g. part way through rendering the values
+        final FieldValue[] values = instance.getValues();
+        instance.setValue("title", "second");
+        instance.setValue("description", "added");
+
+        final Field title = fieldsDefn.getField("title");
+        final Field description = fieldsDefn.getField("description");
+        Assertions.assertEquals("first", instance.getFieldValue(values, title).asString());
+        Assertions.assertEquals("", instance.getFieldValue(values, description).asString());
+        Assertions.assertEquals("second", instance.getFieldValue(title).asString());
+    }
+
+    @Test
+    void changesMadeTogetherAreSeenTogether() throws InterruptedException {
+
+        DefinedFields fieldsDefn = new DefinedFields();
+        fieldsDefn.addFields(Field.is("title"), Field.is("description"));
+
+        InstanceFields instance = new InstanceFields(fieldsDefn);
+        instance.setValue("title", "old title");
+        instance.setValue("description", "old description");
+
+        final List<String> seenDuringChange = new ArrayList<>();
+        instance.changeTogether(() -> {
+            instance.setValue("title", "new title");
+            instance.setValue("description", "new description");
+
+            // the writer sees its changes, other threads do not until they are all made
+            Assertions.assertEquals("new title", instance.getFieldValue("title").asString());
+            final Thread reader = new Thread(() -> {
+                final InstanceFields seen = instance.snapshot();
+                seenDuringChange.add(seen.getFieldValue("title").asString());
+                seenDuringChange.add(seen.getFieldValue("description").asString());
+            });
+            reader.start();
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        Assertions.assertEquals("old title", seenDuringChange.get(0));
+        Assertions.assertEquals("old description", seenDuringChange.get(1));
+        Assertions.assertEquals("new title", instance.getFieldValue("title").asString());
+        Assertions.assertEquals("new description", instance.getFieldValue("description").asString());
+    }
 }
@@ -0,0 +1,65 @@
+package uk.co.compendiumdev.thingifier.core.domain.instances;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.ThingDefinition;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class InstanceLocksTest {
+
+    @Test
+    void canLockOneOrTwoInstances(){
+
+        final ThingDefinition defn = ThingDefinition.create("thing", "things");
+        final ThingInstance one = ThingInstance.create(defn);
+        final ThingInstance two = ThingInstance.create(defn);
+
+        Assertions.assertEquals("one", InstanceLocks.whileLocked(one, () -> "one"));
+        Assertions.assertEquals("both", InstanceLocks.whileLocked(one, two, () -> "both"));
+        Assertions.assertEquals("same", InstanceLocks.whileLocked(one, one, () -> "same"));
+
+        // locks are reentrant
+        Assertions.assertEquals("nested", InstanceLocks.whileLocked(one, two,
+                () -> InstanceLocks.whileLocked(two, one, () -> "nested")));
+    }
+
+    @Test
+    void lockingPairsInEitherOrderDoesNotDeadlock() throws InterruptedException {
+
+        final ThingDefinition defn = ThingDefinition.create("thing", "things");
+        final List<ThingInstance> instances = new ArrayList<>();
+        for(int count=0; count<200; count++){
+            instances.add(ThingInstance.create(defn));
+        }
+
+        final int[] total = {0};
+        final List<Thread> threads = new ArrayList<>();
+        for(int thread=0; thread<4; thread++){
+            final boolean reversed = thread%2==0;
+            threads.add(new Thread(() -> {
+                for(int index=0; index<instances.size()-1; index++){
+                    final ThingInstance one = instances.get(index);
+                    final ThingInstance two = instances.get(index+1);
+                    InstanceLocks.whileLocked(reversed ? two : one, reversed ? one : two, () -> {
+                        synchronized (total){
+                            total[0]++;
+                        }
+                        return null;
+                    });
+                }
+            }));
+        }
+
+        for(Thread thread : threads){
+            thread.start();
+        }
+        for(Thread thread : threads){
+            thread.join(10000);
+            Assertions.assertFalse(thread.isAlive(), "expected the locks to be taken in order");
+        }
+
+        Assertions.assertEquals(4*199, total[0]);
+    }
+}
@@ -10,6 +10,7 @@ import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.Optio
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipDefinition;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipVector;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 
@@ -273,4 +274,108 @@ class RelationshipsTest {
         final ValidationReport valid = fromInstance.getRelationships().validateRelationships();
         Assertions.assertTrue(valid.isValid());
     }
+
+    @Test
+    void removingOnePeerLeavesTheOtherRelationships(){
+
+        defn.whenReversed(Cardinality.ONE_TO_MANY, "tofrom");
+
+        final ThingInstance anotherTo = thingto.createManagedInstance();
+
+        fromInstance.getRelationships().connect("fromto", toInstance);
+        fromInstance.getRelationships().connect("fromto", anotherTo);
+
+        Assertions.assertEquals(2, fromInstance.getRelationships().getConnectedItems("tofrom").size());
+        Assertions.assertEquals(2, fromInstance.getRelationships().getConnectedItemsOfType("TO").size());
+
+        toInstance.getRelationships().removeAllRelationships();
+
+        final Collection<ThingInstance> remaining = fromInstance.getRelationships().getConnectedItems("fromto");
+        Assertions.assertEquals(1, remaining.size());
+        Assertions.assertTrue(remaining.contains(anotherTo));
+        Assertions.assertFalse(toInstance.getRelationships().hasAnyRelationshipInstances());
+        Assertions.assertTrue(anotherTo.getRelationships().hasAnyRelationshipInstances());
+
+        fromInstance.getRelationships().removeRelationshipsInvolving(anotherTo, "tofrom");
+        Assertions.assertFalse(fromInstance.getRelationships().hasAnyRelationshipInstances());
+        Assertions.assertFalse(anotherTo.getRelationships().hasAnyRelationshipInstances());
+        Assertions.assertTrue(fromInstance.getRelationships().getConnectedItemsOfType("to").isEmpty());
+    }
+
+    @Test
+    void canReadRelationshipsWhileTheyAreBeingChanged() throws InterruptedException {
+
+        final List<ThingInstance> others = new ArrayList<>();
+        for(int count=0; count<2000; count++){
+            others.add(thingto.createManagedInstance());
+        }
+
+        final Thread writer = new Thread(() -> {
+            for(ThingInstance other : others){
+                fromInstance.getRelationships().connect("fromto", other);
+            }
+            for(int index=0; index<others.size(); index=index+2){
+                fromInstance.getRelationships().removeAllRelationshipsInvolving(others.get(index));
+            }
+        });
+        writer.start();
+
+        while(writer.isAlive()){
+            // must not throw while the writer is changing the relationships
+            fromInstance.getRelationships().getConnectedItems("fromto");
+            fromInstance.getRelationships().getConnectedItemsOfType("to");
+            fromInstance.getRelationships().toString();
+        }
+        writer.join();
+
+        final List<ThingInstance> remaining = fromInstance.getRelationships().getConnectedItemsOfType("to");
+        Assertions.assertEquals(1000, remaining.size());
+        Assertions.assertSame(others.get(1), remaining.get(0));
+    }
+
+    @Test
+    void cannotConnectToADeletedInstance(){
+
+        thingto.deleteInstance(toInstance.getGUID());
+
+        final IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class,
+                () -> fromInstance.getRelationships().connect("fromto", toInstance));
+
+        Assertions.assertTrue(e.getMessage().contains("deleted instance"), e.getMessage());
+        Assertions.assertFalse(fromInstance.getRelationships().hasAnyRelationshipInstances());
+    }
+
+    @Test
+    void connectingAndDeletingAtTheSameTimeLeavesNoRelationshipsToDeletedInstances() throws InterruptedException {
+
+        defn.whenReversed(Cardinality.ONE_TO_MANY, "tofrom");
+
+        final List<ThingInstance> others = new ArrayList<>();
+        for(int count=0; count<1000; count++){
+            others.add(thingto.createManagedInstance());
+        }
+
+        final Thread connector = new Thread(() -> {
+            for(ThingInstance other : others){
+                try{
+                    fromInstance.getRelationships().connect("fromto", other);
+                }catch(IllegalArgumentException e){
+                    // already deleted
+                }
+            }
+        });
+        final Thread deleter = new Thread(() -> {
+            for(ThingInstance other : others){
+                thingto.deleteInstance(other.getGUID());
+            }
+        });
+        connector.start();
+        deleter.start();
+        connector.join();
+        deleter.join();
+
+        // only the toInstance is left
+        Assertions.assertEquals(1, thingto.countInstances());
+        Assertions.assertFalse(fromInstance.getRelationships().hasAnyRelationshipInstances());
+    }
 }
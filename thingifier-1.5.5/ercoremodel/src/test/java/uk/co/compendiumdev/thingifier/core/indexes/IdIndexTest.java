@@ -0,0 +1,114 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+public class IdIndexTest {
+
+    Thing thing;
+
+    @BeforeEach
+    public void createThing(){
+        thing = Thing.create("thing", "things");
+        thing.definition().addField(Field.is("id", FieldType.ID));
+    }
+
+    @Test
+    public void canFindAndRemoveIdsFromIndex(){
+
+        IdIndex index = new IdIndex();
+        final ThingInstance one = thing.createInstance();
+        final ThingInstance two = thing.createInstance();
+
+        index.put(1, one);
+        index.put(2, two);
+
+        Assertions.assertEquals(2, index.size());
+        Assertions.assertEquals(one, index.get(1));
+        Assertions.assertEquals(two, index.get(2));
+        Assertions.assertNull(index.get(3));
+
+        index.remove(1, one);
+        Assertions.assertNull(index.get(1));
+        Assertions.assertEquals(two, index.get(2));
+        Assertions.assertEquals(1, index.size());
+    }
+
+    @Test
+    public void removeOnlyRemovesIdIfStillMappedToInstance(){
+
+        IdIndex index = new IdIndex();
+        final ThingInstance one = thing.createInstance();
+        final ThingInstance two = thing.createInstance();
+
+        index.put(1, one);
+        index.put(1, two);
+        index.remove(1, one);
+
+        Assertions.assertEquals(two, index.get(1));
+    }
+
+    @Test
+    public void indexGrowsAndSurvivesManyRemovals(){
+
+        IdIndex index = new IdIndex();
+        final ThingInstance instance = thing.createInstance();
+
+        for(int id=-500; id<5000; id++){
+            index.put(id, instance);
+        }
+        Assertions.assertEquals(5500, index.size());
+
+        for(int id=-500; id<5000; id+=2){
+            index.remove(id, instance);
+        }
+        Assertions.assertEquals(2750, index.size());
+
+        for(int id=-500; id<5000; id++){
+            if(id%2==0) {
+                Assertions.assertNull(index.get(id));
+            }else{
+                Assertions.assertEquals(instance, index.get(id));
+            }
+        }
+    }
+
+    @Test
+    public void thingFindsInstancesByIdUsingIndex(){
+
+        for(int count=0; count<100; count++){
+            thing.createManagedInstance();
+        }
+
+        final ThingInstance fifty = thing.findInstanceByGUIDorID("50");
+        Assertions.assertEquals("50", fifty.getFieldValue("id").asString());
+        Assertions.assertEquals(fifty, thing.findInstanceByField(FieldValue.is("id", "50")));
+        Assertions.assertEquals(fifty, thing.findInstanceByGUIDorID(fifty.getGUID()));
+
+        // must match the id exactly
+        Assertions.assertNull(thing.findInstanceByGUIDorID("050"));
+        Assertions.assertNull(thing.findInstanceByGUIDorID("bob"));
+
+        thing.deleteInstance(fifty.getGUID());
+        Assertions.assertNull(thing.findInstanceByGUIDorID("50"));
+        Assertions.assertNotNull(thing.findInstanceByGUIDorID("51"));
+    }
+
+    @Test
+    public void idFieldAddedAfterInstancesIsStillIndexed(){
+
+        Thing later = Thing.create("later", "laters");
+        final ThingInstance instance = later.createManagedInstance();
+
+        later.definition().addField(Field.is("id", FieldType.ID));
+        instance.overrideValue("id", "12");
+
+        Assertions.assertEquals(instance, later.findInstanceByGUIDorID("12"));
+    }
+}
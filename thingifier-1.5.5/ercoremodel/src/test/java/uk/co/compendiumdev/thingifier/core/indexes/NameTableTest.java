@@ -0,0 +1,51 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class NameTableTest {
+
+    @Test
+    public void namesAreFoundInAnyCase(){
+
+        final NameTable<String> table = NameTable.<String>empty().
+                                            with("todos", "todo").
+                                            with("Task-Of", "project");
+
+        Assertions.assertEquals("todo", table.get("todos"));
+        Assertions.assertEquals("todo", table.get("TODOS"));
+        Assertions.assertEquals("project", table.get("task-of"));
+        Assertions.assertNull(table.get("projects"));
+        Assertions.assertNull(table.get(null));
+        Assertions.assertEquals(2, table.size());
+    }
+
+    @Test
+    public void withReturnsANewTable(){
+
+        final NameTable<String> before = NameTable.<String>empty().with("todos", "todo");
+        final NameTable<String> after = before.with("TODOS", "task").with("projects", "project");
+
+        Assertions.assertEquals("todo", before.get("todos"));
+        Assertions.assertFalse(before.contains("projects"));
+
+        // a name differing only by case replaces the value
+        Assertions.assertEquals("task", after.get("todos"));
+        Assertions.assertEquals(2, after.size());
+    }
+
+    @Test
+    public void tableGrowsToHoldManyNames(){
+
+        NameTable<Integer> table = NameTable.empty();
+        for(int name=0; name<1000; name++){
+            table = table.with("name" + name, name);
+        }
+
+        Assertions.assertEquals(1000, table.size());
+        Assertions.assertEquals(1000, table.values().size());
+        for(int name=0; name<1000; name++){
+            Assertions.assertEquals(name, table.get("NAME" + name));
+        }
+    }
+}
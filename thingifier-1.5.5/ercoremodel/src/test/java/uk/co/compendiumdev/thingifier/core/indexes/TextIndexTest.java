@@ -0,0 +1,81 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+
+public class TextIndexTest {
+
+    Thing thing;
+
+    @BeforeEach
+    public void createThing(){
+        thing = Thing.create("todo", "todos");
+        thing.definition().addFields(
+                Field.is("title", FieldType.STRING).makeSearchable(),
+                Field.is("description", FieldType.STRING).makeSearchable(),
+                Field.is("notes", FieldType.STRING));
+    }
+
+    @Test
+    public void canSplitTextIntoLowercaseTerms(){
+        Assertions.assertEquals(Arrays.asList("buy", "milk", "2", "litres"),
+                TextTerms.termsIn("Buy MILK, (2 litres)!"));
+        Assertions.assertEquals(Collections.emptyList(), TextTerms.termsIn("  -- "));
+    }
+
+    @Test
+    public void canFindInstancesUsingAllTermsRankedByFrequency(){
+
+        final ThingInstance milk = thing.createManagedInstance().
+                setValue("title", "buy milk").
+                setValue("description", "milk milk milk");
+        final ThingInstance bread = thing.createManagedInstance().
+                setValue("title", "buy bread").
+                setValue("description", "and some milk");
+        thing.createManagedInstance().
+                setValue("title", "sell milk").
+                setValue("notes", "buy");
+
+        final Map<ThingInstance, Integer> found = thing.searchInstances(Arrays.asList("buy", "milk"));
+
+        Assertions.assertEquals(2, found.size());
+        Assertions.assertEquals(5, found.get(milk));
+        Assertions.assertEquals(2, found.get(bread));
+    }
+
+    @Test
+    public void changedAndDeletedInstancesAreReindexed(){
+
+        final ThingInstance todo = thing.createManagedInstance().setValue("title", "buy milk");
+
+        todo.setValue("title", "buy bread");
+        Assertions.assertTrue(thing.searchInstances(Arrays.asList("milk")).isEmpty());
+        Assertions.assertEquals(1, thing.searchInstances(Arrays.asList("bread")).size());
+
+        thing.deleteInstance(todo.getGUID());
+        Assertions.assertTrue(thing.searchInstances(Arrays.asList("bread")).isEmpty());
+    }
+
+    @Test
+    public void canIndexInstancesAddedBeforeFieldsWereSearchable(){
+
+        final Thing notes = Thing.create("note", "notes");
+        final Field text = Field.is("text", FieldType.STRING);
+        notes.definition().addField(text);
+        notes.createManagedInstance().setValue("text", "remember the milk");
+
+        Assertions.assertNull(notes.searchInstances(Arrays.asList("milk")));
+
+        text.makeSearchable();
+        Assertions.assertEquals(1, notes.searchInstances(Arrays.asList("milk")).size());
+    }
+}
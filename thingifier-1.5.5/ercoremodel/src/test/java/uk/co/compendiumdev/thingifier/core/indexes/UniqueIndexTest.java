@@ -0,0 +1,159 @@
+package uk.co.compendiumdev.thingifier.core.indexes;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+public class UniqueIndexTest {
+
+    Thing thing;
+
+    @BeforeEach
+    public void createThing(){
+        thing = Thing.create("user", "users");
+        thing.definition().addFields(
+                Field.is("username", FieldType.STRING).makeUnique(),
+                Field.is("email", FieldType.STRING).makeUnique(),
+                Field.is("nickname", FieldType.STRING));
+    }
+
+    @Test
+    public void canFindInstancesByUniqueValue(){
+
+        final ThingInstance bob = thing.createManagedInstance().setValue("username", "bob");
+        final ThingInstance eris = thing.createManagedInstance().setValue("username", "eris");
+
+        Assertions.assertEquals(bob, thing.findInstanceByField(FieldValue.is("username", "bob")));
+        Assertions.assertEquals(eris, thing.findInstanceByField(FieldValue.is("username", "eris")));
+        Assertions.assertNull(thing.findInstanceByField(FieldValue.is("username", "connie")));
+    }
+
+    @Test
+    public void canNotAddAnInstanceWithADuplicateUniqueValue(){
+
+        thing.createManagedInstance().setValue("username", "bob");
+
+        final ThingInstance duplicate = thing.createInstance().setValue("username", "bob");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            thing.addInstance(duplicate);
+        });
+        Assertions.assertEquals(1, thing.countInstances());
+    }
+
+    @Test
+    public void canNotSetADuplicateUniqueValue(){
+
+        thing.createManagedInstance().setValue("username", "bob");
+        final ThingInstance eris = thing.createManagedInstance().setValue("username", "eris");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            eris.setValue("username", "bob");
+        });
+        Assertions.assertEquals("eris", eris.getFieldValue("username").asString());
+    }
+
+    @Test
+    public void aDuplicateUniqueValueStopsAllTheChangesMadeTogether(){
+
+        thing.createManagedInstance().setValue("username", "bob");
+        final ThingInstance eris = thing.createManagedInstance().
+                                    setValue("username", "eris").
+                                    setValue("email", "eris@example.com");
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            eris.getFields().changeTogether(() -> {
+                eris.setValue("email", "discord@example.com");
+                eris.setValue("nickname", "discord");
+                eris.setValue("username", "bob");
+            });
+        });
+
+        Assertions.assertEquals("eris", eris.getFieldValue("username").asString());
+        Assertions.assertEquals("eris@example.com", eris.getFieldValue("email").asString());
+        Assertions.assertEquals("", eris.getFieldValue("nickname").asString());
+        Assertions.assertEquals(eris, thing.findInstanceByField(FieldValue.is("email", "eris@example.com")));
+
+        // the new values were not kept by the failed change
+        final ThingInstance discord = thing.createManagedInstance().setValue("email", "discord@example.com");
+        Assertions.assertEquals(discord, thing.findInstanceByField(FieldValue.is("email", "discord@example.com")));
+    }
+
+    @Test
+    public void aFieldMadeUniqueAfterInstancesAreAddedIsChecked(){
+
+        thing.createManagedInstance().setValue("nickname", "bobby");
+        final ThingInstance eris = thing.createManagedInstance().setValue("nickname", "ez");
+
+        thing.definition().getField("nickname").makeUnique();
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            eris.setValue("nickname", "bobby");
+        });
+        Assertions.assertEquals(eris, thing.findInstanceByField(FieldValue.is("nickname", "ez")));
+    }
+
+    @Test
+    public void makingAFieldUniqueInAnotherThingDoesNotChangeThisOne(){
+
+        final Thing other = Thing.create("account", "accounts");
+        final Field nickname = Field.is("nickname", FieldType.STRING);
+        other.definition().addFields(nickname);
+
+        thing.createManagedInstance().setValue("nickname", "bobby");
+        thing.createManagedInstance().setValue("nickname", "bobby");
+
+        nickname.makeUnique();
+
+        thing.createManagedInstance().setValue("nickname", "bobby");
+        Assertions.assertEquals(3, thing.countInstances());
+        other.createManagedInstance().setValue("nickname", "bobby");
+        Assertions.assertThrows(IllegalArgumentException.class, () -> {
+            other.createManagedInstance().setValue("nickname", "bobby");
+        });
+    }
+
+    @Test
+    public void nonUniqueFieldsCanHaveDuplicates(){
+
+        thing.createManagedInstance().setValue("nickname", "bobby");
+        thing.createManagedInstance().setValue("nickname", "bobby");
+
+        Assertions.assertEquals(2, thing.countInstances());
+    }
+
+    @Test
+    public void changedAndDeletedValuesCanBeReused(){
+
+        final ThingInstance bob = thing.createManagedInstance().setValue("username", "bob");
+        bob.setValue("username", "robert");
+
+        final ThingInstance newBob = thing.createManagedInstance().setValue("username", "bob");
+        Assertions.assertEquals(newBob, thing.findInstanceByField(FieldValue.is("username", "bob")));
+
+        thing.deleteInstance(bob.getGUID());
+        Assertions.assertNull(thing.findInstanceByField(FieldValue.is("username", "robert")));
+
+        thing.createManagedInstance().setValue("username", "robert");
+        Assertions.assertEquals(2, thing.countInstances());
+    }
+
+    @Test
+    public void canValidateUniqueValuesBeforeAmending(){
+
+        final ThingInstance bob = thing.createManagedInstance().setValue("username", "bob");
+        thing.createManagedInstance().setValue("username", "eris");
+
+        final ThingInstance candidate = bob.createDuplicateWithoutRelationships();
+
+        Assertions.assertTrue(thing.validateUniqueValues(candidate, bob).isValid());
+
+        candidate.setValue("username", "eris");
+        Assertions.assertFalse(thing.validateUniqueValues(candidate, bob).isValid());
+    }
+}
@@ -0,0 +1,170 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class FileJournalTest {
+
+    @Test
+    void canRecordAndReadEntries() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        try{
+            final FileJournal journal = new FileJournal(file);
+            journal.record(JournalEntry.delete("todo", "1"));
+            journal.recordAll(Arrays.asList(
+                    JournalEntry.delete("todo", "2"),
+                    JournalEntry.clear("todo", true)));
+            journal.close();
+
+            final FileJournal reopened = new FileJournal(file);
+            final List<JournalEntry> entries = reopened.readAll();
+            reopened.close();
+
+            Assertions.assertEquals(3, entries.size());
+            Assertions.assertEquals("1", entries.get(0).getValue(0));
+            Assertions.assertEquals("2", entries.get(1).getValue(0));
+            Assertions.assertEquals(JournalEntry.Operation.CLEAR, entries.get(2).getOperation());
+
+            Assertions.assertThrows(IllegalStateException.class,
+                    () -> reopened.record(JournalEntry.delete("todo", "3")));
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void aPartlyWrittenEntryIsRemovedWhenOpened() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        try{
+            Files.write(file, (JournalEntry.delete("todo", "1").asLine() + "\nDELETE\ttodo\t2").
+                                    getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+
+            final FileJournal journal = new FileJournal(file);
+            journal.record(JournalEntry.delete("todo", "3"));
+            final List<JournalEntry> entries = journal.readAll();
+            journal.close();
+
+            Assertions.assertEquals(2, entries.size());
+            Assertions.assertEquals("1", entries.get(0).getValue(0));
+            Assertions.assertEquals("3", entries.get(1).getValue(0));
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void aJournalLongerThanOneReadIsRepaired() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        try{
+            final StringBuilder lines = new StringBuilder();
+            for(int entry=0; entry<10000; entry++){
+                lines.append(JournalEntry.delete("todo", String.valueOf(entry)).asLine()).append('\n');
+            }
+            // a long partly written line, so the last complete line is more than a read back
+            for(int character=0; character<100000; character++){
+                lines.append('x');
+            }
+            Files.write(file, lines.toString().getBytes(StandardCharsets.UTF_8));
+
+            final FileJournal journal = new FileJournal(file);
+            journal.record(JournalEntry.delete("todo", "last"));
+            final List<JournalEntry> entries = journal.readAll();
+            journal.close();
+
+            Assertions.assertEquals(10001, entries.size());
+            Assertions.assertEquals("9999", entries.get(9999).getValue(0));
+            Assertions.assertEquals("last", entries.get(10000).getValue(0));
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void segmentsCanBeReadFromAndDropped() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        final Path second = file.resolveSibling(file.getFileName() + ".1");
+        final Path third = file.resolveSibling(file.getFileName() + ".2");
+        try{
+            final FileJournal journal = new FileJournal(file);
+            journal.record(JournalEntry.delete("todo", "1"));
+            Assertions.assertEquals(1, journal.startSegment());
+            journal.record(JournalEntry.delete("todo", "2"));
+            Assertions.assertEquals(2, journal.startSegment());
+            Assertions.assertTrue(Files.exists(third));
+
+            final List<String> fromSecond = new ArrayList<>();
+            journal.readFrom(1, entry -> fromSecond.add(entry.getValue(0)));
+            Assertions.assertEquals(Arrays.asList("2"), fromSecond);
+
+            journal.dropSegmentsBefore(1);
+            Assertions.assertFalse(Files.exists(file));
+            journal.close();
+
+            // the entries are added to the last segment
+            final FileJournal reopened = new FileJournal(file);
+            reopened.record(JournalEntry.delete("todo", "3"));
+            final List<String> kept = new ArrayList<>();
+            for(JournalEntry entry : reopened.readAll()){
+                kept.add(entry.getValue(0));
+            }
+            Assertions.assertThrows(IllegalArgumentException.class, () -> reopened.readFrom(3, entry -> {}));
+            reopened.close();
+
+            Assertions.assertEquals(Arrays.asList("2", "3"), kept);
+        }finally{
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(second);
+            Files.deleteIfExists(third);
+        }
+    }
+
+    @Test
+    void concurrentWritersAreAllRecorded() throws IOException, InterruptedException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        try{
+            final FileJournal journal = new FileJournal(file);
+
+            final List<Thread> writers = new ArrayList<>();
+            for(int writer=0; writer<8; writer++){
+                final int writerId = writer;
+                writers.add(new Thread(() -> {
+                    for(int entry=0; entry<50; entry++){
+                        journal.record(JournalEntry.delete("todo", writerId + "-" + entry));
+                    }
+                }));
+            }
+            for(Thread writer : writers){
+                writer.start();
+            }
+            for(Thread writer : writers){
+                writer.join();
+            }
+
+            final Set<String> guids = new HashSet<>();
+            for(JournalEntry entry : journal.readAll()){
+                guids.add(entry.getValue(0));
+            }
+            journal.close();
+
+            Assertions.assertEquals(400, guids.size());
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.EntityRelModel;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+class JournalBatchTest {
+
+    private final List<String> awaited = new ArrayList<>();
+
+    private JournalWrite write(final String name){
+        return () -> awaited.add(name);
+    }
+
+    @Test
+    void writesQueuedTogetherAreAwaitedWhenTheOutermostChangeIsDone(){
+
+        JournalBatch.recordTogether(() -> {
+            JournalBatch.queued(write("create"));
+            JournalBatch.recordTogether(() -> JournalBatch.queued(write("connect")));
+            // still inside the outermost change, e.g. holding a lock
+            Assertions.assertTrue(awaited.isEmpty());
+        });
+
+        Assertions.assertEquals(Arrays.asList("create", "connect"), awaited);
+    }
+
+    @Test
+    void aWriteQueuedOutsideAChangeIsAwaitedStraightAway(){
+
+        JournalBatch.queued(write("clear"));
+
+        Assertions.assertEquals(Arrays.asList("clear"), awaited);
+    }
+
+    @Test
+    void writesAreAwaitedWhenTheChangeFails(){
+
+        Assertions.assertThrows(IllegalArgumentException.class, () ->
+            JournalBatch.recordTogether(() -> {
+                JournalBatch.queued(write("amend"));
+                throw new IllegalArgumentException("duplicate");
+            }));
+
+        Assertions.assertEquals(Arrays.asList("amend"), awaited);
+    }
+
+    @Test
+    void aChangeWhichCouldNotBeMadeDurableIsKept(){
+
+        final EntityRelModel erm = new EntityRelModel();
+        final Thing todo = erm.createThing("todo", "todos");
+        todo.definition().addFields(Field.is("title"));
+        final ThingInstance paperwork = todo.createManagedInstance().setValue("title", "paperwork");
+
+        final FailingJournal journal = new FailingJournal();
+        erm.useJournal(journal);
+        journal.failWrites = true;
+
+        Assertions.assertThrows(UncheckedIOException.class, () -> todo.createManagedInstance());
+        Assertions.assertThrows(UncheckedIOException.class, () -> paperwork.setValue("title", "filing"));
+
+        Assertions.assertEquals(2, todo.countInstances());
+        Assertions.assertEquals("filing", paperwork.getFieldValue("title").asString());
+    }
+
+    @Test
+    void aChangeTheJournalRefusesIsNotMade(){
+
+        final EntityRelModel erm = new EntityRelModel();
+        final Thing todo = erm.createThing("todo", "todos");
+        todo.definition().addFields(Field.is("title").makeUnique());
+        final ThingInstance paperwork = todo.createManagedInstance().setValue("title", "paperwork");
+
+        final FailingJournal journal = new FailingJournal();
+        erm.useJournal(journal);
+        journal.refuseWrites = true;
+
+        Assertions.assertThrows(IllegalStateException.class,
+                () -> todo.createManagedInstance().setValue("title", "filing"));
+        Assertions.assertThrows(IllegalStateException.class, () -> paperwork.setValue("title", "filing"));
+
+        Assertions.assertEquals(1, todo.countInstances());
+        Assertions.assertEquals("paperwork", paperwork.getFieldValue("title").asString());
+
+        // the refused values are not left in the unique index
+        journal.refuseWrites = false;
+        todo.createManagedInstance().setValue("title", "filing");
+        Assertions.assertEquals(2, todo.countInstances());
+    }
+
+    private static final class FailingJournal implements Journal {
+
+        private volatile boolean failWrites;
+        private volatile boolean refuseWrites;
+
+        @Override
+        public JournalWrite enqueue(final List<JournalEntry> entries) {
+            if(refuseWrites){
+                throw new IllegalStateException("Journal could not be written");
+            }
+            if(failWrites){
+                return () -> {
+                    throw new UncheckedIOException("Could not write to journal", new IOException("disk full"));
+                };
+            }
+            return () -> {};
+        }
+
+        @Override
+        public long startSegment() {
+            return 0;
+        }
+
+        @Override
+        public void dropSegmentsBefore(final long segment) {
+        }
+
+        @Override
+        public void readFrom(final long segment, final Consumer<JournalEntry> reader) {
+        }
+
+        @Override
+        public List<JournalEntry> readAll() {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
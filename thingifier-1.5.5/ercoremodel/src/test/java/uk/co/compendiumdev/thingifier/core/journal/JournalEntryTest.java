@@ -0,0 +1,44 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+class JournalEntryTest {
+
+    @Test
+    void entriesSurviveBeingWrittenAsALine(){
+
+        final JournalEntry entry = JournalEntry.create("todo", "1234",
+                Arrays.asList("title", "tab\there", "description", "line\nbreak \\ slash \\0"));
+
+        final String line = entry.asLine();
+        Assertions.assertFalse(line.contains("\n"));
+
+        final JournalEntry read = JournalEntry.fromLine(line);
+        Assertions.assertEquals(JournalEntry.Operation.CREATE, read.getOperation());
+        Assertions.assertEquals("todo", read.getThingName());
+        Assertions.assertEquals(entry.getValues(), read.getValues());
+    }
+
+    @Test
+    void removedValuesAreNull(){
+
+        final JournalEntry read = JournalEntry.fromLine(
+                JournalEntry.amend("todo", "1234", "title", null).asLine());
+
+        Assertions.assertEquals(JournalEntry.Operation.AMEND, read.getOperation());
+        Assertions.assertEquals("title", read.getValue(1));
+        Assertions.assertNull(read.getValue(2));
+    }
+
+    @Test
+    void linesWhichAreNotEntriesAreRejected(){
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> JournalEntry.fromLine("bob"));
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> JournalEntry.fromLine("BOB\ttodo\t1234"));
+    }
+}
@@ -0,0 +1,163 @@
+package uk.co.compendiumdev.thingifier.core.journal;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.EntityRelModel;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.Cardinality;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.Optionality;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+class JournalReplayTest {
+
+    private EntityRelModel createModel(){
+        final EntityRelModel erm = new EntityRelModel();
+        final Thing project = erm.createThing("project", "projects");
+        final Thing todo = erm.createThing("todo", "todos");
+        project.definition().addFields(Field.is("title"));
+        todo.definition().addFields(Field.is("id", FieldType.ID), Field.is("title"), Field.is("description"));
+        // todos must be part of a project, so a project's delete is replayed with its todos
+        erm.defineRelationship(project, todo, "tasks", Cardinality.ONE_TO_MANY).
+                whenReversed(Cardinality.ONE_TO_ONE, "task-of").
+                getReversedRelationship().
+                setOptionality(Optionality.MANDATORY_RELATIONSHIP);
+        return erm;
+    }
+
+    @Test
+    void aModelIsRebuiltFromItsJournal() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        try{
+            final EntityRelModel erm = createModel();
+            final Thing project = erm.getThingNamed("project");
+            final Thing todo = erm.getThingNamed("todo");
+
+            // data created before the journal is used starts the journal
+            final ThingInstance office = project.createManagedInstance().setValue("title", "office");
+
+            final FileJournal journal = new FileJournal(file);
+            Assertions.assertEquals(0, erm.useJournal(journal));
+
+            final ThingInstance paperwork = todo.createManagedInstance().setValue("title", "paperwork");
+            paperwork.setValue("description", "file it");
+            paperwork.getFields().removeValue("description");
+            final ThingInstance filing = todo.createManagedInstance().setValue("title", "filing");
+            final ThingInstance shredding = todo.createManagedInstance().setValue("title", "shredding");
+            office.getRelationships().connect("tasks", paperwork);
+            office.getRelationships().connect("tasks", filing);
+            office.getRelationships().connect("tasks", shredding);
+            office.getRelationships().removeRelationshipsInvolving(filing, "tasks");
+
+            final ThingInstance home = project.createManagedInstance().setValue("title", "home");
+            home.getRelationships().connect("tasks", filing);
+
+            // deleting the project deletes the todos which must be part of a project
+            erm.deleteThing(office);
+            journal.close();
+
+            final EntityRelModel rebuilt = createModel();
+            final FileJournal reopened = new FileJournal(file);
+            Assertions.assertTrue(rebuilt.useJournal(reopened) > 0);
+
+            final Thing rebuiltTodos = rebuilt.getThingNamed("todo");
+            final Thing rebuiltProjects = rebuilt.getThingNamed("project");
+            Assertions.assertEquals(1, rebuiltProjects.countInstances());
+            Assertions.assertNull(rebuilt.findThingInstanceByGuid(office.getGUID()));
+            Assertions.assertNull(rebuilt.findThingInstanceByGuid(paperwork.getGUID()));
+            Assertions.assertNull(rebuilt.findThingInstanceByGuid(shredding.getGUID()));
+
+            final ThingInstance rebuiltFiling = rebuilt.findThingInstanceByGuid(filing.getGUID());
+            Assertions.assertEquals("filing", rebuiltFiling.getFieldValue("title").asString());
+            Assertions.assertEquals(filing.getFieldValue("id").asString(),
+                                    rebuiltFiling.getFieldValue("id").asString());
+
+            final ThingInstance rebuiltHome = rebuilt.findThingInstanceByGuid(home.getGUID());
+            Assertions.assertEquals(1, rebuiltHome.getRelationships().getConnectedItems("tasks").size());
+            Assertions.assertTrue(rebuiltHome.getRelationships().getConnectedItems("tasks").
+                    contains(rebuiltFiling));
+
+            // new ids carry on from the journal
+            final ThingInstance another = rebuiltTodos.createManagedInstance();
+            Assertions.assertEquals(
+                    String.valueOf(Integer.parseInt(shredding.getFieldValue("id").asString()) + 1),
+                    another.getFieldValue("id").asString());
+            reopened.close();
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void removedValuesAndClearedDataAreReplayed() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        try{
+            final EntityRelModel erm = createModel();
+            final Thing todo = erm.getThingNamed("todo");
+            final FileJournal journal = new FileJournal(file);
+            erm.useJournal(journal);
+
+            todo.createManagedInstance().setValue("title", "gone");
+            erm.clearAllData(true);
+            final ThingInstance kept = todo.createManagedInstance().setValue("title", "kept");
+            kept.setValue("description", "removed");
+            kept.getFields().removeValue("description");
+            journal.close();
+
+            final EntityRelModel rebuilt = createModel();
+            final FileJournal reopened = new FileJournal(file);
+            rebuilt.useJournal(reopened);
+            reopened.close();
+
+            final Thing rebuiltTodos = rebuilt.getThingNamed("todo");
+            Assertions.assertEquals(1, rebuiltTodos.countInstances());
+            final ThingInstance rebuiltKept = rebuilt.findThingInstanceByGuid(kept.getGUID());
+            Assertions.assertEquals("1", rebuiltKept.getFieldValue("id").asString());
+            Assertions.assertNull(rebuiltKept.getFields().getAssignedValue("description"));
+        }finally{
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(file.resolveSibling(file.getFileName() + ".1"));
+        }
+    }
+
+    @Test
+    void theJournalBeforeAClearIsDroppedAndIdsCarryOn() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".journal");
+        final Path afterClear = file.resolveSibling(file.getFileName() + ".1");
+        try{
+            final EntityRelModel erm = createModel();
+            final Thing todo = erm.getThingNamed("todo");
+            final FileJournal journal = new FileJournal(file);
+            erm.useJournal(journal);
+
+            todo.createManagedInstance().setValue("title", "gone");
+            todo.createManagedInstance().setValue("title", "also gone");
+            erm.clearAllData();
+            final ThingInstance kept = todo.createManagedInstance().setValue("title", "kept");
+            journal.close();
+
+            Assertions.assertFalse(Files.exists(file));
+            Assertions.assertEquals("3", kept.getFieldValue("id").asString());
+
+            final EntityRelModel rebuilt = createModel();
+            final FileJournal reopened = new FileJournal(file);
+            rebuilt.useJournal(reopened);
+
+            final Thing rebuiltTodos = rebuilt.getThingNamed("todo");
+            Assertions.assertEquals(1, rebuiltTodos.countInstances());
+            Assertions.assertEquals("4", rebuiltTodos.createManagedInstance().getFieldValue("id").asString());
+            reopened.close();
+        }finally{
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(afterClear);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+public class QueryFieldFilterTest {
+
+    @Test
+    public void canParseAnEqualityFilter(){
+        final QueryFieldFilter filter = QueryFieldFilter.from("title", "my todo");
+
+        Assertions.assertEquals("title", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.EQUALS, filter.getOperator());
+        Assertions.assertEquals("my todo", filter.getValue());
+        Assertions.assertFalse(filter.isRange());
+    }
+
+    @Test
+    public void canParseRangeFiltersSplitOnEquals(){
+        // id>=100 arrives as id> = 100
+        QueryFieldFilter filter = QueryFieldFilter.from("id>", "100");
+        Assertions.assertEquals("id", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.GREATER_THAN_OR_EQUAL, filter.getOperator());
+        Assertions.assertEquals("100", filter.getValue());
+
+        filter = QueryFieldFilter.from("priority<", "5");
+        Assertions.assertEquals("priority", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.LESS_THAN_OR_EQUAL, filter.getOperator());
+    }
+
+    @Test
+    public void canParseRangeFiltersWithoutEquals(){
+        QueryFieldFilter filter = QueryFieldFilter.from("priority<5", "");
+        Assertions.assertEquals("priority", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.LESS_THAN, filter.getOperator());
+        Assertions.assertEquals("5", filter.getValue());
+
+        filter = QueryFieldFilter.from("id>10", "");
+        Assertions.assertEquals("id", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.GREATER_THAN, filter.getOperator());
+        Assertions.assertEquals("10", filter.getValue());
+    }
+
+    @Test
+    public void rangeOfNonNumericValueIsNull(){
+        Assertions.assertNull(QueryFieldFilter.from("id>", "bob").asNumericRange());
+        Assertions.assertNull(QueryFieldFilter.from("id", "1").asNumericRange());
+    }
+
+    @Test
+    public void canParseNotEqualsInAndPrefixFilters(){
+        // status!=done arrives as status! = done
+        QueryFieldFilter filter = QueryFieldFilter.from("status!", "done");
+        Assertions.assertEquals("status", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.NOT_EQUALS, filter.getOperator());
+        Assertions.assertEquals("done", filter.getValue());
+        Assertions.assertFalse(filter.isRange());
+
+        filter = QueryFieldFilter.from("priority:in", "1,2,3");
+        Assertions.assertEquals("priority", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.IN, filter.getOperator());
+        Assertions.assertEquals(3, filter.getValues().size());
+        Assertions.assertEquals("3", filter.getValues().get(2));
+
+        filter = QueryFieldFilter.from("title:prefix", "file");
+        Assertions.assertEquals("title", filter.getFieldName());
+        Assertions.assertEquals(QueryFieldFilter.Operator.PREFIX, filter.getOperator());
+        Assertions.assertEquals("file", filter.getValue());
+    }
+}
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 import uk.co.compendiumdev.thingifier.core.EntityRelModel;
 import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.Cardinality;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
@@ -43,4 +44,510 @@ public class QueryFiltersTest {
         Assertions.assertEquals(3, instances.size(), "expected 3 true values");
 
     }
+
+    @Test
+    public void canFilterOnIndexedFieldsIncludingDefaultValues(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("truefalse", FieldType.BOOLEAN).
+                        withDefaultValue("false").makeIndexed(),
+                Field.is("colour", FieldType.STRING).makeIndexed(),
+                Field.is("size", FieldType.STRING));
+
+        thing.createManagedInstance().setValue("truefalse", "true").setValue("colour", "red").setValue("size", "big");
+        thing.createManagedInstance().setValue("truefalse", "true").setValue("colour", "red").setValue("size", "small");
+        thing.createManagedInstance().setValue("truefalse", "true").setValue("colour", "blue");
+        final ThingInstance changed = thing.createManagedInstance().setValue("colour", "red");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("truefalse", "false");
+        Assertions.assertEquals(1, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size(),
+                "default values should be indexed");
+
+        changed.setValue("truefalse", "true");
+        Assertions.assertEquals(0, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size(),
+                "changed values should be re-indexed");
+
+        params.clear();
+        params.put("truefalse", "true");
+        params.put("colour", "red");
+        Assertions.assertEquals(3, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        // mix of indexed and not indexed fields
+        params.put("size", "big");
+        final List<ThingInstance> instances = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+        Assertions.assertEquals(1, instances.size());
+        Assertions.assertEquals("big", instances.get(0).getFieldValue("size").asString());
+
+        thing.deleteInstance(instances.get(0).getGUID());
+        Assertions.assertEquals(0, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+    }
+
+    @Test
+    public void canFilterOnNumericRanges(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("id", FieldType.ID),
+                Field.is("priority", FieldType.INTEGER).makeIndexed(),
+                Field.is("estimate", FieldType.FLOAT),
+                Field.is("name", FieldType.STRING));
+
+        for(int count=1; count<=10; count++){
+            thing.createManagedInstance().
+                    setValue("priority", String.valueOf(count % 5)).
+                    setValue("estimate", String.valueOf(count / 2.0f)).
+                    setValue("name", "name" + count);
+        }
+
+        Map<String, String> params = new HashMap<>();
+        // id>=8
+        params.put("id>", "8");
+        Assertions.assertEquals(3, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        // id>=8 and priority<2
+        params.put("priority<2", "");
+        final List<ThingInstance> instances = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+        Assertions.assertEquals(1, instances.size());
+        Assertions.assertEquals("10", instances.get(0).getFieldValue("id").asString());
+
+        // not indexed field is scanned
+        params.clear();
+        params.put("estimate<", "1.5");
+        Assertions.assertEquals(3, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        // changed values are re-indexed
+        thing.findInstanceByGUIDorID("1").setValue("priority", "4");
+        params.clear();
+        params.put("priority>3", "");
+        Assertions.assertEquals(3, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        // non numeric values never match a numeric range
+        params.clear();
+        params.put("priority>", "high");
+        Assertions.assertEquals(0, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+    }
+
+    @Test
+    public void floatRangesCompareTheValueAsSetWithOrWithoutAnIndex(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("estimate", FieldType.FLOAT),
+                Field.is("cost", FieldType.FLOAT).makeIndexed());
+
+        for(String value : new String[]{"1.1", "1.2", "0.1", "0.3"}){
+            thing.createManagedInstance().
+                    setValue("estimate", value).
+                    setValue("cost", value);
+        }
+
+        // a float of 1.1 is not above the 1.1 it was set to, nor 0.3 below 0.3
+        for(String field : new String[]{"estimate", "cost"}){
+            Map<String, String> params = new HashMap<>();
+            params.put(field + ">1.1", "");
+            Assertions.assertEquals(1, new SimpleQuery(aThingifier, "things").
+                    performQuery(params).getListThingInstance().size(), field);
+
+            params.clear();
+            params.put(field + "<0.3", "");
+            Assertions.assertEquals(1, new SimpleQuery(aThingifier, "things").
+                    performQuery(params).getListThingInstance().size(), field);
+
+            params.clear();
+            params.put(field + ">0.1", "");
+            params.put("sort", "-" + field);
+            final List<ThingInstance> instances = new SimpleQuery(aThingifier, "things").
+                    performQuery(params).getListThingInstance();
+            Assertions.assertEquals(3, instances.size(), field);
+            Assertions.assertEquals("1.2", instances.get(0).getFieldValue(field).asString());
+            Assertions.assertEquals("0.3", instances.get(2).getFieldValue(field).asString());
+        }
+    }
+
+    @Test
+    public void canSearchAndFilterWithSearchResultsRanked(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("title", FieldType.STRING).makeSearchable(),
+                Field.is("done", FieldType.BOOLEAN).makeIndexed());
+
+        thing.createManagedInstance().setValue("title", "milk");
+        final ThingInstance most = thing.createManagedInstance().setValue("title", "milk, more milk");
+        thing.createManagedInstance().setValue("title", "milk milk milk").setValue("done", "true");
+        thing.createManagedInstance().setValue("title", "bread");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("search", "Milk");
+        params.put("done", "false");
+
+        final List<ThingInstance> instances = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+
+        Assertions.assertEquals(2, instances.size());
+        Assertions.assertEquals(most, instances.get(0));
+    }
+
+    @Test
+    public void searchResultsWithTheSameScoreAreRankedInGuidOrder(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(Field.is("title", FieldType.STRING).makeSearchable());
+
+        thing.createManagedInstance().setValue("title", "milk");
+        thing.createManagedInstance().setValue("title", "more milk");
+        thing.createManagedInstance().setValue("title", "milk please");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("search", "milk");
+
+        final List<ThingInstance> instances = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+
+        Assertions.assertEquals(3, instances.size());
+        for(int index=1; index<instances.size(); index++){
+            Assertions.assertTrue(instances.get(index-1).getGUID().
+                    compareTo(instances.get(index).getGUID())<0);
+        }
+    }
+
+    @Test
+    public void canPageTheResultsWithALimitAndOffset(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("id", FieldType.ID),
+                Field.is("done", FieldType.BOOLEAN));
+
+        for(int instance=0; instance<10; instance++){
+            thing.createManagedInstance().setValue("done", instance%2==0 ? "true" : "false");
+        }
+
+        Map<String, String> params = new HashMap<>();
+        params.put("limit", "3");
+        final List<ThingInstance> firstPage = new SimpleQuery(aThingifier, "things").
+                                                performQuery(params).getListThingInstance();
+        Assertions.assertEquals(3, firstPage.size());
+
+        params.put("offset", "3");
+        final List<ThingInstance> secondPage = new SimpleQuery(aThingifier, "things").
+                                                performQuery(params).getListThingInstance();
+        Assertions.assertEquals(3, secondPage.size());
+        for(ThingInstance instance : secondPage){
+            Assertions.assertFalse(firstPage.contains(instance));
+        }
+
+        // paging applies after filtering
+        params.put("done", "true");
+        Assertions.assertEquals(2, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        params.clear();
+        params.put("offset", "20");
+        Assertions.assertEquals(0, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        params.clear();
+        params.put("limit", "0");
+        Assertions.assertEquals(0, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+    }
+
+    @Test
+    public void canPageRelatedInstances(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing project = aThingifier.createThing("project", "projects");
+        Thing todo = aThingifier.createThing("todo", "todos");
+        project.definition().addField(Field.is("id", FieldType.ID));
+        todo.definition().addField(Field.is("id", FieldType.ID));
+        aThingifier.defineRelationship(project, todo, "tasks", Cardinality.ONE_TO_MANY);
+
+        final ThingInstance office = project.createManagedInstance();
+        for(int instance=0; instance<5; instance++){
+            office.getRelationships().connect("tasks", todo.createManagedInstance());
+        }
+
+        Map<String, String> params = new HashMap<>();
+        params.put("limit", "2");
+        params.put("offset", "4");
+
+        final SimpleQuery query = new SimpleQuery(aThingifier, "projects/1/tasks").performQuery(params);
+        Assertions.assertEquals(1, query.getListThingInstance().size());
+        Assertions.assertEquals(todo.definition(), query.resultContainsDefn());
+    }
+
+    @Test
+    public void pagingMustBeAWholeNumber(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        aThingifier.createThing("thing", "things");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("limit", "ten");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SimpleQuery(aThingifier, "things").performQuery(params));
+
+        params.put("limit", "-1");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SimpleQuery(aThingifier, "things").performQuery(params));
+    }
+
+    @Test
+    public void aLimitFieldIsFilteredOnRatherThanPaging(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addField(Field.is("limit", FieldType.STRING));
+
+        thing.createManagedInstance().setValue("limit", "1");
+        thing.createManagedInstance().setValue("limit", "1");
+        thing.createManagedInstance().setValue("limit", "2");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("limit", "1");
+        Assertions.assertEquals(2, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+    }
+
+    @Test
+    public void parallelQueriesReturnTheSameInstancesInTheSameOrder(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        Thing tag = aThingifier.createThing("tag", "tags");
+        thing.definition().addFields(Field.is("size", FieldType.INTEGER), Field.is("colour", FieldType.STRING));
+        tag.definition().addField(Field.is("title", FieldType.STRING));
+        aThingifier.defineRelationship(thing, tag, "tagged", Cardinality.ONE_TO_MANY);
+
+        for(int instance=0; instance<500; instance++){
+            final ThingInstance aThing = thing.createManagedInstance().
+                    setValue("size", String.valueOf(instance % 50)).
+                    setValue("colour", instance % 3 == 0 ? "red" : "blue");
+            aThing.getRelationships().connect("tagged",
+                    tag.createManagedInstance().setValue("title", "tag" + instance));
+        }
+
+        Map<String, String> params = new HashMap<>();
+        params.put("size>", "10");
+        params.put("colour", "red");
+
+        final List<ThingInstance> sequential = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+        final List<ThingInstance> parallel = new SimpleQuery(aThingifier, "things").
+                inParallelFrom(1).performQuery(params).getListThingInstance();
+        Assertions.assertFalse(sequential.isEmpty());
+        Assertions.assertEquals(sequential, parallel);
+
+        params.clear();
+        params.put("offset", "20");
+        params.put("limit", "30");
+        Assertions.assertEquals(
+                new SimpleQuery(aThingifier, "things/tagged").performQuery(params).getListThingInstance(),
+                new SimpleQuery(aThingifier, "things/tagged").inParallelFrom(1).performQuery(params).getListThingInstance());
+    }
+
+    @Test
+    public void canFilterWithNotEqualsInAndPrefix(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("status", FieldType.STRING).makeIndexed(),
+                Field.is("title", FieldType.STRING),
+                Field.is("priority", FieldType.INTEGER));
+
+        thing.createManagedInstance().setValue("status", "done").setValue("title", "file paperwork").setValue("priority", "1");
+        thing.createManagedInstance().setValue("status", "doing").setValue("title", "scan paperwork").setValue("priority", "2");
+        thing.createManagedInstance().setValue("status", "todo").setValue("title", "file tax return").setValue("priority", "3");
+        thing.createManagedInstance().setValue("title", "tidy desk").setValue("priority", "3");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("status!", "done");
+        Assertions.assertEquals(3, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size(),
+                "an instance without a status has the default value");
+
+        params.clear();
+        params.put("status:in", "done,todo,missing");
+        Assertions.assertEquals(2, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        params.clear();
+        params.put("priority:in", "2,3");
+        params.put("title:prefix", "file");
+        final List<ThingInstance> found = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+        Assertions.assertEquals(1, found.size());
+        Assertions.assertEquals("file tax return", found.get(0).getFieldValue("title").asString());
+
+        params.clear();
+        params.put("title!", "tidy desk");
+        params.put("priority>", "3");
+        Assertions.assertEquals(1, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+    }
+
+    @Test
+    public void canFilterOnTextHeldOffHeap(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("title", FieldType.STRING).storeOffHeap());
+
+        thing.createManagedInstance().setValue("title", "file paperwork");
+        thing.createManagedInstance().setValue("title", "file tax return");
+        thing.createManagedInstance().setValue("title", "tidy desk");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("title", "tidy desk");
+        Assertions.assertEquals(1, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        params.clear();
+        params.put("title!", "tidy desk");
+        Assertions.assertEquals(2, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        params.clear();
+        params.put("title:in", "tidy desk,file paperwork,missing");
+        Assertions.assertEquals(2, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+
+        params.clear();
+        params.put("title:prefix", "file");
+        Assertions.assertEquals(2, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+    }
+
+    @Test
+    public void canSortAndPageACollection(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("id", FieldType.ID),
+                Field.is("priority", FieldType.INTEGER),
+                Field.is("rank", FieldType.INTEGER).makeIndexed(),
+                Field.is("title", FieldType.STRING));
+
+        final String[] titles = {"b", "d", "a", "c", "e"};
+        final String[] priorities = {"10", "2", "2", "1", "30"};
+        final Map<String, ThingInstance> byTitle = new HashMap<>();
+        for(int instance=0; instance<titles.length; instance++){
+            byTitle.put(titles[instance], thing.createManagedInstance().
+                    setValue("title", titles[instance]).
+                    setValue("priority", priorities[instance]).
+                    setValue("rank", priorities[instance]));
+        }
+
+        Map<String, String> params = new HashMap<>();
+        params.put("sort", "title");
+        Assertions.assertEquals("a,b,c,d,e", titlesOf(aThingifier, params));
+
+        // numbers are sorted by value not as text, equal values in guid order
+        final String equalPriorities = byTitle.get("d").getGUID().compareTo(byTitle.get("a").getGUID())<0 ?
+                                            "d,a" : "a,d";
+        params.put("sort", "-priority");
+        Assertions.assertEquals("e,b," + equalPriorities + ",c", titlesOf(aThingifier, params));
+
+        // read from the range index, equal values are in the same order
+        params.put("sort", "-rank");
+        params.put("limit", "4");
+        Assertions.assertEquals("e,b," + equalPriorities, titlesOf(aThingifier, params));
+        params.remove("limit");
+
+        params.put("sort", "priority,-title");
+        params.put("offset", "1");
+        params.put("limit", "2");
+        Assertions.assertEquals("d,a", titlesOf(aThingifier, params));
+
+        // ids have a range index, so the instances are read in order
+        params.clear();
+        params.put("sort", "-id");
+        params.put("limit", "2");
+        Assertions.assertEquals("e,c", titlesOf(aThingifier, params));
+
+        params.put("title", "a");
+        Assertions.assertEquals("a", titlesOf(aThingifier, params));
+    }
+
+    @Test
+    public void topOfASortedCollectionIsTheSameAsSortingItAll(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addFields(
+                Field.is("size", FieldType.INTEGER),
+                Field.is("title", FieldType.STRING));
+
+        final java.util.Random random = new java.util.Random(17);
+        for(int instance=0; instance<300; instance++){
+            thing.createManagedInstance().
+                    setValue("size", String.valueOf(random.nextInt(40))).
+                    setValue("title", "t" + instance);
+        }
+
+        Map<String, String> params = new HashMap<>();
+        params.put("sort", "-size");
+        final List<ThingInstance> all = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+
+        params.put("offset", "25");
+        params.put("limit", "20");
+        final List<ThingInstance> page = new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance();
+
+        Assertions.assertEquals(all.subList(25, 45), page);
+    }
+
+    @Test
+    public void sortingOnAnUnknownFieldIsAnError(){
+
+        EntityRelModel aThingifier = new EntityRelModel();
+        Thing thing = aThingifier.createThing("thing", "things");
+        thing.definition().addField(Field.is("title", FieldType.STRING));
+        thing.createManagedInstance().setValue("title", "a");
+
+        Map<String, String> params = new HashMap<>();
+        params.put("sort", "-colour");
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SimpleQuery(aThingifier, "things").performQuery(params));
+
+        // a thing with a sort field filters on it
+        thing.definition().addField(Field.is("sort", FieldType.STRING));
+        Assertions.assertEquals(0, new SimpleQuery(aThingifier, "things").
+                performQuery(params).getListThingInstance().size());
+    }
+
+    private String titlesOf(final EntityRelModel model, final Map<String, String> params) {
+        final StringBuilder titles = new StringBuilder();
+        for(ThingInstance instance : new SimpleQuery(model, "things").
+                                            performQuery(params).getListThingInstance()){
+            if(titles.length()>0){
+                titles.append(",");
+            }
+            titles.append(instance.getFieldValue("title").asString());
+        }
+        return titles.toString();
+    }
 }
@@ -0,0 +1,93 @@
+package uk.co.compendiumdev.thingifier.core.query;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.EntityRelModel;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.Cardinality;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipDefinition;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+
+import static uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType.STRING;
+
+public class QueryPlansTest {
+
+    private EntityRelModel model;
+    private Thing todo;
+    private Thing project;
+
+    @BeforeEach
+    public void createDefinitions(){
+        model = new EntityRelModel();
+        todo = model.createThing("todo", "todos");
+        todo.definition().addFields(Field.is("title", STRING));
+        project = model.createThing("project", "projects");
+        project.definition().addFields(Field.is("title", STRING));
+    }
+
+    @Test
+    public void queriesOfTheSameShapeShareTheirSteps(){
+
+        model.defineRelationship(project, todo, "tasks", Cardinality.ONE_TO_MANY);
+        final ThingInstance office = project.createManagedInstance().setValue("title", "office");
+        final ThingInstance home = project.createManagedInstance().setValue("title", "home");
+
+        final QueryPlans plans = model.getQueryPlans();
+        final QueryPlans.QueryPlan plan = plans.planFor("projects/" + office.getGUID() + "/tasks");
+
+        Assertions.assertEquals("projects/:id/tasks", plan.getShape());
+        Assertions.assertArrayEquals(plan.getSteps(),
+                plans.planFor("projects/" + home.getGUID() + "/tasks").getSteps());
+        Assertions.assertArrayEquals(plan.getSteps(), plans.planFor("projects/1/tasks").getSteps());
+
+        // plurals and relationship names are not case sensitive
+        Assertions.assertEquals("Projects/:id/TASKS", plans.planFor("Projects/1/TASKS").getShape());
+        Assertions.assertSame(project, plans.planFor("Projects").getSteps()[0].getThingWithPlural());
+        Assertions.assertEquals(":id", plans.planFor("Project").getShape());
+    }
+
+    @Test
+    public void plansAreMadeAgainWhenRelationshipsAreDefined(){
+
+        final ThingInstance office = project.createManagedInstance().setValue("title", "office");
+        final ThingInstance paperwork = todo.createManagedInstance().setValue("title", "paperwork");
+
+        // tasks is not a relationship yet so is taken to be an id
+        Assertions.assertEquals("projects/:id/:id",
+                model.getQueryPlans().planFor("projects/1/tasks").getShape());
+
+        model.defineRelationship(project, todo, "tasks", Cardinality.ONE_TO_MANY);
+        office.getRelationships().connect("tasks", paperwork);
+
+        Assertions.assertEquals("projects/:id/tasks",
+                model.getQueryPlans().planFor("projects/1/tasks").getShape());
+
+        final SimpleQuery query = new SimpleQuery(model, "projects/" + office.getGUID() + "/tasks").performQuery();
+        Assertions.assertTrue(query.lastMatchWasRelationship());
+        Assertions.assertEquals(1, query.getListThingInstance().size());
+        Assertions.assertEquals(paperwork, query.getListThingInstance().get(0));
+    }
+
+    @Test
+    public void plansAreMadeAgainWhenARelationshipIsReversed(){
+
+        final ThingInstance office = project.createManagedInstance().setValue("title", "office");
+        final ThingInstance paperwork = todo.createManagedInstance().setValue("title", "paperwork");
+
+        final RelationshipDefinition tasks = model.defineRelationship(project, todo, "tasks", Cardinality.ONE_TO_MANY);
+        Assertions.assertEquals("todos/:id/:id",
+                model.getQueryPlans().planFor("todos/1/task-of").getShape());
+
+        tasks.whenReversed(Cardinality.ONE_TO_MANY, "task-of");
+        office.getRelationships().connect("tasks", paperwork);
+
+        Assertions.assertEquals("todos/:id/task-of",
+                model.getQueryPlans().planFor("todos/1/task-of").getShape());
+
+        final SimpleQuery query = new SimpleQuery(model, "todos/" + paperwork.getGUID() + "/task-of").performQuery();
+        Assertions.assertTrue(query.lastMatchWasRelationship());
+        Assertions.assertEquals(office, query.getListThingInstance().get(0));
+    }
+}
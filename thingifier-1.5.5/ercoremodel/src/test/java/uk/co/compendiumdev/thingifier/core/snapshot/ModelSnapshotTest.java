@@ -0,0 +1,247 @@
+package uk.co.compendiumdev.thingifier.core.snapshot;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import uk.co.compendiumdev.thingifier.core.EntityRelModel;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.Cardinality;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.instance.FieldValue;
+import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.journal.FileJournal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+
+class ModelSnapshotTest {
+
+    private EntityRelModel createModel(){
+        final EntityRelModel erm = new EntityRelModel();
+        final Thing project = erm.createThing("project", "projects");
+        final Thing todo = erm.createThing("todo", "todos");
+        project.definition().addFields(Field.is("title").makeUnique());
+        todo.definition().addFields(Field.is("id", FieldType.ID), Field.is("title"),
+                                    Field.is("done", FieldType.BOOLEAN));
+        erm.defineRelationship(project, todo, "tasks", Cardinality.ONE_TO_MANY).
+                whenReversed(Cardinality.ONE_TO_ONE, "task-of");
+        return erm;
+    }
+
+    @Test
+    void aModelIsRestoredFromASnapshot() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".snapshot");
+        try{
+            final EntityRelModel erm = createModel();
+            final Thing project = erm.getThingNamed("project");
+            final Thing todo = erm.getThingNamed("todo");
+
+            final ThingInstance office = project.createManagedInstance().setValue("title", "office");
+            final ThingInstance paperwork = todo.createManagedInstance().
+                                                setValue("title", "paperwork é\t\n").
+                                                setValue("done", "true");
+            final ThingInstance filing = todo.createManagedInstance().setValue("title", "filing");
+            final ThingInstance deleted = todo.createManagedInstance();
+            erm.deleteThing(deleted);
+            office.getRelationships().connect("tasks", paperwork);
+            filing.getRelationships().connect("task-of", office);
+
+            final ModelSnapshot snapshot = new ModelSnapshot(file);
+            Assertions.assertEquals(3, snapshot.write(erm));
+
+            final EntityRelModel restored = createModel();
+            restored.getThingNamed("todo").createManagedInstance().setValue("title", "replaced");
+            Assertions.assertEquals(3, snapshot.load(restored));
+
+            final Thing restoredTodos = restored.getThingNamed("todo");
+            Assertions.assertEquals(2, restoredTodos.countInstances());
+
+            final ThingInstance restoredPaperwork = restored.findThingInstanceByGuid(paperwork.getGUID());
+            Assertions.assertEquals("paperwork é\t\n", restoredPaperwork.getFieldValue("title").asString());
+            Assertions.assertEquals("true", restoredPaperwork.getFieldValue("done").asString());
+            Assertions.assertEquals(paperwork.getFieldValue("id").asString(),
+                                    restoredPaperwork.getFieldValue("id").asString());
+
+            Assertions.assertNull(restored.findThingInstanceByGuid(filing.getGUID()).
+                                    getFields().getAssignedValue("done"));
+
+            final ThingInstance restoredOffice = restored.findThingInstanceByGuid(office.getGUID());
+            Assertions.assertEquals(2, restoredOffice.getRelationships().getConnectedItems("tasks").size());
+            Assertions.assertTrue(restoredOffice.getRelationships().getConnectedItems("tasks").
+                    contains(restored.findThingInstanceByGuid(filing.getGUID())));
+
+            // the deleted instance's id is not used again
+            Assertions.assertEquals("4",
+                    restoredTodos.createManagedInstance().getFieldValue("id").asString());
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void snapshotsCanBeWrittenInTheBackground() throws IOException, ExecutionException, InterruptedException {
+
+        final Path file = Files.createTempFile("thingifier", ".snapshot");
+        try{
+            final EntityRelModel erm = createModel();
+            for(int instance=0; instance<100; instance++){
+                erm.getThingNamed("todo").createManagedInstance().setValue("title", "todo " + instance);
+            }
+
+            final ModelSnapshot snapshot = new ModelSnapshot(file);
+            Assertions.assertEquals(100, snapshot.writeInBackground(erm).get());
+
+            final EntityRelModel restored = createModel();
+            Assertions.assertEquals(100, snapshot.load(restored));
+            Assertions.assertEquals(100, restored.getThingNamed("todo").countInstances());
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void onlyTheJournalEntriesAfterASnapshotAreReplayedOntoIt() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".snapshot");
+        final Path journalFile = Files.createTempFile("thingifier", ".journal");
+        try{
+            final EntityRelModel erm = createModel();
+            final Thing todo = erm.getThingNamed("todo");
+            final FileJournal journal = new FileJournal(journalFile);
+            erm.useJournal(journal);
+
+            final ThingInstance paperwork = todo.createManagedInstance().setValue("title", "paperwork");
+            final ModelSnapshot snapshot = new ModelSnapshot(file);
+            snapshot.write(erm);
+            // the journal before the snapshot is no longer needed
+            Assertions.assertEquals(1, snapshot.getJournalSegment());
+            Assertions.assertFalse(Files.exists(journalFile));
+
+            final ThingInstance filing = todo.createManagedInstance().setValue("title", "filing");
+            paperwork.setValue("title", "paperwork done");
+            journal.close();
+
+            final EntityRelModel restored = createModel();
+            final ModelSnapshot reloaded = new ModelSnapshot(file);
+            reloaded.load(restored);
+            final FileJournal reopened = new FileJournal(journalFile);
+            // creating and titling filing, then the new title of paperwork
+            Assertions.assertEquals(3, restored.useJournal(reopened, reloaded.getJournalSegment()));
+            reopened.close();
+
+            Assertions.assertEquals(2, restored.getThingNamed("todo").countInstances());
+            Assertions.assertEquals("paperwork done",
+                    restored.findThingInstanceByGuid(paperwork.getGUID()).getFieldValue("title").asString());
+            Assertions.assertEquals("filing",
+                    restored.findThingInstanceByGuid(filing.getGUID()).getFieldValue("title").asString());
+        }finally{
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(journalFile.resolveSibling(journalFile.getFileName() + ".1"));
+        }
+    }
+
+    @Test
+    void aSnapshotCopiedWhileChangesWereMadeIsBroughtUpToDate() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".snapshot");
+        final Path journalFile = Files.createTempFile("thingifier", ".journal");
+        final Path firstSegment = journalFile.resolveSibling(journalFile.getFileName() + ".1");
+        final Path secondSegment = journalFile.resolveSibling(journalFile.getFileName() + ".2");
+        try{
+            final EntityRelModel erm = createModel();
+            final Thing project = erm.getThingNamed("project");
+            final Thing todo = erm.getThingNamed("todo");
+            final FileJournal journal = new FileJournal(journalFile);
+            erm.useJournal(journal);
+            final ModelSnapshot snapshot = new ModelSnapshot(file);
+            snapshot.write(erm);
+
+            final ThingInstance office = project.createManagedInstance().setValue("title", "office");
+            final ThingInstance home = project.createManagedInstance().setValue("title", "home");
+            final ThingInstance paperwork = todo.createManagedInstance().setValue("title", "paperwork");
+            office.getRelationships().connect("tasks", paperwork);
+            office.setValue("title", "old office");
+            home.setValue("title", "office");
+
+            // as if the snapshot of segment 1 had been copied once all the changes in it were made
+            final byte[] changes = Files.readAllBytes(firstSegment);
+            snapshot.write(erm);
+            journal.close();
+            Files.write(firstSegment, changes);
+
+            final EntityRelModel restored = createModel();
+            new ModelSnapshot(file).load(restored);
+            final FileJournal reopened = new FileJournal(journalFile);
+            // home takes the title office had in the snapshot before office gives it up
+            restored.useJournal(reopened, 1);
+
+            final Thing restoredProjects = restored.getThingNamed("project");
+            Assertions.assertEquals(2, restoredProjects.countInstances());
+            Assertions.assertEquals(1, restored.getThingNamed("todo").countInstances());
+            Assertions.assertEquals(1, restored.findThingInstanceByGuid(office.getGUID()).
+                                        getRelationships().getConnectedItems("tasks").size());
+            Assertions.assertSame(restored.findThingInstanceByGuid(home.getGUID()),
+                    restoredProjects.findInstanceByField(FieldValue.is("title", "office")));
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> restoredProjects.createManagedInstance().setValue("title", "old office"));
+            Assertions.assertEquals("2",
+                    restored.getThingNamed("todo").createManagedInstance().getFieldValue("id").asString());
+            reopened.close();
+        }finally{
+            Files.deleteIfExists(file);
+            Files.deleteIfExists(journalFile);
+            Files.deleteIfExists(firstSegment);
+            Files.deleteIfExists(secondSegment);
+        }
+    }
+
+    @Test
+    void aSnapshotWhichEndsEarlyLeavesTheModelAsItWas() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".snapshot");
+        try{
+            final EntityRelModel erm = createModel();
+            for(int instance=0; instance<10; instance++){
+                erm.getThingNamed("todo").createManagedInstance().setValue("title", "todo " + instance);
+            }
+            new ModelSnapshot(file).write(erm);
+            final byte[] contents = Files.readAllBytes(file);
+            Files.write(file, Arrays.copyOf(contents, contents.length-20));
+
+            final EntityRelModel restored = createModel();
+            final ThingInstance kept = restored.getThingNamed("todo").createManagedInstance();
+
+            Assertions.assertThrows(UncheckedIOException.class,
+                    () -> new ModelSnapshot(file).load(restored));
+            Assertions.assertEquals(1, restored.getThingNamed("todo").countInstances());
+            Assertions.assertSame(kept, restored.findThingInstanceByGuid(kept.getGUID()));
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void onlySnapshotsCanBeLoaded() throws IOException {
+
+        final Path file = Files.createTempFile("thingifier", ".snapshot");
+        try{
+            Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+
+            final EntityRelModel erm = createModel();
+            erm.getThingNamed("todo").createManagedInstance();
+
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> new ModelSnapshot(file).load(erm));
+            Assertions.assertEquals(1, erm.getThingNamed("todo").countInstances());
+        }finally{
+            Files.deleteIfExists(file);
+        }
+    }
+}
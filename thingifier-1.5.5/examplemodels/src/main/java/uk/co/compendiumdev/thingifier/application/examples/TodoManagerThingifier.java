@@ -55,10 +55,13 @@ public class TodoManagerThingifier {
                         Field.is("title", STRING).
                                 makeMandatory().
                                 withValidation(
-                                        VRule.notEmpty()),
+                                        VRule.notEmpty()).
+                                makeSearchable(),
                         Field.is("doneStatus", FieldType.BOOLEAN).
-                                withDefaultValue("false"),
-                        Field.is("description", STRING)
+                                withDefaultValue("false").
+                                makeIndexed(),
+                        Field.is("description", STRING).
+                                makeSearchable()
                         );
 
         Thing project = todoManager.createThing("project", "projects");
@@ -10,9 +10,13 @@ import uk.co.compendiumdev.thingifier.core.domain.datapopulator.DataPopulator;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.*;
 import uk.co.compendiumdev.thingifier.core.domain.definitions.relationship.RelationshipDefinition;
 import uk.co.compendiumdev.thingifier.core.domain.instances.ThingInstance;
+import uk.co.compendiumdev.thingifier.core.journal.Journal;
+import uk.co.compendiumdev.thingifier.core.reporting.DeletionReport;
+import uk.co.compendiumdev.thingifier.core.snapshot.ModelSnapshot;
 import uk.co.compendiumdev.thingifier.reporting.ThingReporter;
 
 import java.util.*;
+import java.util.concurrent.Future;
 
 
 final public class Thingifier {
@@ -85,8 +89,32 @@ final public class Thingifier {
         erm.clearAllData();
     }
 
-    public void deleteThing(final ThingInstance aThingInstance) {
-        erm.deleteThing(aThingInstance);
+    public void clearAllData(final boolean resetIds) {
+        erm.clearAllData(resetIds);
+    }
+
+    public int useJournal(final Journal journal) {
+        return erm.useJournal(journal);
+    }
+
+    public int useJournal(final Journal journal, final long snapshotSegment) {
+        return erm.useJournal(journal, snapshotSegment);
+    }
+
+    public int loadSnapshot(final ModelSnapshot snapshot) {
+        return snapshot.load(erm);
+    }
+
+    public int writeSnapshot(final ModelSnapshot snapshot) {
+        return snapshot.write(erm);
+    }
+
+    public Future<Integer> writeSnapshotInBackground(final ModelSnapshot snapshot) {
+        return snapshot.writeInBackground(erm);
+    }
+
+    public DeletionReport deleteThing(final ThingInstance aThingInstance) {
+        return erm.deleteThing(aThingInstance);
     }
 
     public List<String> getThingNames() {
@@ -4,6 +4,7 @@ import uk.co.compendiumdev.thingifier.Thingifier;
 import uk.co.compendiumdev.thingifier.api.http.bodyparser.BodyParser;
 import uk.co.compendiumdev.thingifier.api.response.ApiResponse;
 import uk.co.compendiumdev.thingifier.api.restapihandlers.*;
+import uk.co.compendiumdev.thingifier.core.journal.JournalBatch;
 
 import java.util.Map;
 
@@ -46,16 +47,20 @@ public class ThingifierRestAPIHandler {
         return response;
     }
 
+    /*
+        every change made by a request is journalled, and the response
+        waits for them all to be durable together
+     */
     public ApiResponse delete(final String url) {
-        return delete.handle(url);
+        return JournalBatch.recordTogether(() -> delete.handle(url));
     }
 
     public ApiResponse post(final String url, final BodyParser args) {
-        return post.handle(url, args);
+        return JournalBatch.recordTogether(() -> post.handle(url, args));
     }
 
     public ApiResponse put(final String url, final BodyParser args) {
-        return put.handle(url, args);
+        return JournalBatch.recordTogether(() -> put.handle(url, args));
     }
 
 
@@ -27,12 +27,21 @@ public class RestApiGetHandler {
         }
 
         SimpleQuery queryResults;
+        final int parallelThreshold = thingifier.apiConfig().getParallelQueryThreshold();
 
         if(thingifier.apiConfig().forParams().willAllowFilteringThroughUrlParams()){
-           queryResults = new SimpleQuery(thingifier.getERmodel(), url).performQuery(
-                   queryParams);
+            try{
+                queryResults = new SimpleQuery(thingifier.getERmodel(), url).
+                                    inParallelFrom(parallelThreshold).
+                                    performQuery(queryParams);
+            }catch(IllegalArgumentException e){
+                // e.g. a limit which is not a number
+                return ApiResponse.error(400, e.getMessage());
+            }
         }else{
-            queryResults = new SimpleQuery(thingifier.getERmodel(), url).performQuery();
+            queryResults = new SimpleQuery(thingifier.getERmodel(), url).
+                                inParallelFrom(parallelThreshold).
+                                performQuery();
         }
 
         List<ThingInstance> queryItems = queryResults.getListThingInstance();
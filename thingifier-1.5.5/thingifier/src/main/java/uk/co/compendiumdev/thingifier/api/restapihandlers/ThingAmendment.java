@@ -1,6 +1,7 @@
 package uk.co.compendiumdev.thingifier.api.restapihandlers;
 
 import uk.co.compendiumdev.thingifier.Thingifier;
+import uk.co.compendiumdev.thingifier.core.Thing;
 import uk.co.compendiumdev.thingifier.core.reporting.ValidationReport;
 import uk.co.compendiumdev.thingifier.api.http.bodyparser.BodyParser;
 import uk.co.compendiumdev.thingifier.api.response.ApiResponse;
@@ -59,18 +60,41 @@ public class ThingAmendment {
         ValidationReport relationshipsValidation = new BodyRelationshipValidator(thingifier).validate(bodyargs, cloned.getEntity());
         validation.combine(relationshipsValidation);
 
+        if(validation.isValid()){
+            final Thing thing = thingifier.getThingNamed(instance.getEntity().getName());
+            if(thing!=null){
+                final ValidationReport uniqueness = thing.validateUniqueValues(cloned, instance);
+                if(!uniqueness.isValid()){
+                    return ApiResponse.error(409,"Cannot Amend with duplicate values: "+
+                            uniqueness.getCombinedErrorMessages());
+                }
+            }
+        }
+
         if (validation.isValid()) {
+            List<FieldValue> fieldValues = FieldValues.
+                    fromListMapEntryStringString(
+                            new BodyArgsProcessor(thingifier, bodyargs).
+                                    removeRelationshipsFrom(instance));
+            try{
+                // a GET at the same time sees the instance before or after the amend, never part way
+                instance.getFields().changeTogether(() -> {
+                    if(clearFieldsBeforeSettingFromArgs){
+                        instance.clearAllFields();
+                    }
+                    instance.setFieldValuesFrom(fieldValues);
+                });
+            }catch(IllegalArgumentException e){
+                // another instance took one of the unique values since we validated
+                // none of the changes were made
+                return ApiResponse.error(409, "Cannot Amend with duplicate values: " + e.getMessage());
+            }
+
             if(clearFieldsBeforeSettingFromArgs){
-                instance.clearAllFields();
                 // delete all existing relationships for idempotent amend
                 // todo: this returns a list of 'items' to be removed based on relationship
                 instance.getRelationships().removeAllRelationships();
             }
-            List<FieldValue> fieldValues = FieldValues.
-                    fromListMapEntryStringString(
-                            new BodyArgsProcessor(thingifier, bodyargs).
-                                    removeRelationshipsFrom(instance));
-            instance.setFieldValuesFrom(fieldValues);
 
             // todo: should we check that this was actually a success?
             final ApiResponse relresponse = new RelationshipCreator(thingifier).createRelationships(bodyargs, instance);
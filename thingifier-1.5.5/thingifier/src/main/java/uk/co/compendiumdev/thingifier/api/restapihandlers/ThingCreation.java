@@ -49,7 +49,7 @@ public class ThingCreation {
 
         validated = new BodyCreationValidator(thingifier).
                 areFieldsUnique(bodyargs, thing,
-                        thing.definition().getFieldNamesOfType(FieldType.ID, FieldType.GUID));
+                        thing.definition().getUniqueFieldNames());
         if(!validated.isValid()){
             return ApiResponse.error(409,"Cannot Create with duplicate values: "+
                     validated.getCombinedErrorMessages());
@@ -115,7 +115,12 @@ public class ThingCreation {
         ValidationReport validation = instance.validateFieldValues(protectedFieldNames, false);
 
         if (validation.isValid()) {
-            thing.addInstance(instance);
+            try{
+                thing.addInstance(instance);
+            }catch(IllegalArgumentException e){
+                // another instance has one of our unique values
+                return duplicateValuesError(e);
+            }
 
             return new RelationshipCreator(thingifier).createRelationships(bodyargs, instance);
 
@@ -154,7 +159,12 @@ public class ThingCreation {
         ValidationReport validation = instance.validateFieldValues(new ArrayList<>(), true);
 
         if (validation.isValid()) {
-            thing.addInstance(instance);
+            try{
+                thing.addInstance(instance);
+            }catch(IllegalArgumentException e){
+                // another instance has one of our unique values
+                return duplicateValuesError(e);
+            }
 
             return new RelationshipCreator(thingifier).createRelationships(bodyargs, instance);
 
@@ -164,5 +174,9 @@ public class ThingCreation {
         }
     }
 
+    private ApiResponse duplicateValuesError(final IllegalArgumentException e) {
+        return ApiResponse.error(409,"Cannot Create with duplicate values: "+
+                new ValidationReport().setValid(false).
+                        addErrorMessage(e.getMessage()).getCombinedErrorMessages());
+    }
 }
-
@@ -59,6 +59,11 @@ public class ThingifierApiConfig {
     private boolean willShowIdsInUrlsIfAvailable;
     private final StatusCodeConfig statusCodeConfig;
 
+    // Queries
+    // collections of at least this many instances are filtered and traversed in parallel
+    private int parallelQueryThreshold;
+    public static final int DEFAULT_PARALLEL_QUERY_THRESHOLD = 10000;
+
     public ThingifierApiConfig(){
 
 
@@ -85,6 +90,8 @@ public class ThingifierApiConfig {
         jsonOutputConfig.setRelationshipsUseIdsIfAvailable(willShowIdsInResponsesIfAvailable);
 
         statusCodeConfig = new StatusCodeConfig();
+
+        parallelQueryThreshold = DEFAULT_PARALLEL_QUERY_THRESHOLD;
     }
 
     public void setFrom(final ThingifierApiConfig apiConfig) {
@@ -97,6 +104,7 @@ public class ThingifierApiConfig {
         willApiAllowXmlResponses = apiConfig.willApiAllowXmlForResponses();
         willApiAllowJsonResponses = apiConfig.willApiAllowJsonForResponses();
         willApiEnforceAcceptHeaderForResponses = willApiEnforceAcceptHeaderForResponses();
+        parallelQueryThreshold = apiConfig.getParallelQueryThreshold();
 
         paramsConfig.setFrom(apiConfig.forParams());
         statusCodeConfig.setFrom(apiConfig.statusCodes());
@@ -216,4 +224,20 @@ public class ThingifierApiConfig {
         return this;
     }
 
+    /*
+        Integer.MAX_VALUE to always query on the request thread
+     */
+    public ThingifierApiConfig setParallelQueryThreshold(int instances) {
+        if(instances<1){
+            throw new IllegalArgumentException(
+                    String.format("Parallel query threshold must be at least 1, not %d", instances));
+        }
+        parallelQueryThreshold = instances;
+        return this;
+    }
+
+    public int getParallelQueryThreshold() {
+        return parallelQueryThreshold;
+    }
+
 }
@@ -9,11 +9,19 @@ import uk.co.compendiumdev.thingifier.apiconfig.ThingifierApiConfigProfiles;
 import uk.co.compendiumdev.thingifier.application.sparkhttpmessageHooks.ClearDataPreSparkRequestHook;
 import uk.co.compendiumdev.thingifier.application.sparkhttpmessageHooks.LogTheSparkRequestHook;
 import uk.co.compendiumdev.thingifier.application.sparkhttpmessageHooks.LogTheResponseHook;
+import uk.co.compendiumdev.thingifier.application.sparkhttpmessageHooks.SnapshotPreSparkRequestHook;
 import uk.co.compendiumdev.thingifier.application.routehandlers.ShutdownRouteHandler;
 import uk.co.compendiumdev.thingifier.htmlgui.DefaultGUI;
+import uk.co.compendiumdev.thingifier.core.Thing;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.Field;
+import uk.co.compendiumdev.thingifier.core.domain.definitions.field.definition.FieldType;
+import uk.co.compendiumdev.thingifier.core.journal.FileJournal;
+import uk.co.compendiumdev.thingifier.core.snapshot.ModelSnapshot;
 import uk.co.compendiumdev.thingifier.htmlgui.DefaultGUIHTML;
 
+import java.nio.file.Paths;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -42,6 +50,15 @@ public class MainImplementation {
     int clearDownMinutes;
     // impact the logging detail -verbose
     boolean verboseMode;
+    // persist the data to a journal file e.g. -journal=todos.journal
+    String journalFileName;
+    // restore the data from, and save it to, a snapshot file e.g. -snapshot=todos.snapshot
+    // -snapshotminutes=5
+    String snapshotFileName;
+    int snapshotMinutes;
+    private ModelSnapshot snapshot;
+    // hold the text of fields outside the heap e.g. -offheap=todo.description,project.description
+    List<String> offHeapFieldNames;
 
     int desiredVersionNumber;
     String desiredVersionName;
@@ -68,6 +85,10 @@ public class MainImplementation {
         clearDataPeriodically = false;
         clearDownMinutes=10;
         verboseMode=false;
+        journalFileName=null;
+        snapshotFileName=null;
+        snapshotMinutes=10;
+        offHeapFieldNames = new ArrayList<>();
         profileToUse = null;
 
         desiredVersionNumber=-1;
@@ -172,6 +193,44 @@ public class MainImplementation {
                 }
             }
 
+            if (arg.startsWith("-journal")) {
+                String[] details = arg.split("=");
+                if (details != null && details.length > 1) {
+                    journalFileName = details[1].trim();
+                    System.out.println("Will persist data to journal " + journalFileName);
+                }
+            }
+
+            if (arg.startsWith("-snapshotminutes")) {
+                String[] details = arg.split("=");
+                if (details != null && details.length > 1) {
+                    String minutes = details[1].trim();
+                    try{
+                        snapshotMinutes = Integer.valueOf(minutes);
+                    }catch(Exception e){
+                        System.out.println("Invalid minutes " + minutes + " " +e.getMessage());
+                    }
+                }
+            }else if (arg.startsWith("-snapshot")) {
+                String[] details = arg.split("=");
+                if (details != null && details.length > 1) {
+                    snapshotFileName = details[1].trim();
+                    System.out.println("Will save data to snapshot " + snapshotFileName);
+                }
+            }
+
+            if (arg.startsWith("-offheap")) {
+                String[] details = arg.split("=");
+                if (details != null && details.length > 1) {
+                    for(String fieldName : details[1].split(",")){
+                        if(fieldName.trim().length()>0){
+                            offHeapFieldNames.add(fieldName.trim());
+                        }
+                    }
+                    System.out.println("Will hold the text of fields off heap " + offHeapFieldNames);
+                }
+            }
+
             if (arg.startsWith("-version")) {
                 String[] details = arg.split("=");
                 if (details != null && details.length > 1) {
@@ -233,6 +292,20 @@ public class MainImplementation {
         allowShutdown=config;
     }
 
+    public void setJournalFileName(final String fileName){
+        journalFileName=fileName;
+    }
+
+    public void setSnapshotFileName(final String fileName, final int minutes){
+        snapshotFileName=fileName;
+        snapshotMinutes=minutes;
+    }
+
+    // field names are thing.field e.g. todo.description
+    public void setOffHeapFields(final String... fieldNames){
+        offHeapFieldNames = new ArrayList<>(Arrays.asList(fieldNames));
+    }
+
     public void setClearDataPeriodically(boolean config, int minutes){
         clearDataPeriodically=config;
         clearDownMinutes=minutes;
@@ -289,6 +362,32 @@ public class MainImplementation {
 
         apiDefn.setThingifier(thingifier);
 
+        // before any data is loaded, so all the values are held off heap
+        storeFieldsOffHeap();
+
+        // the journal segments from this one on are not in the snapshot
+        long snapshotSegment = 0;
+
+        if(snapshotFileName!=null){
+            snapshot = new ModelSnapshot(Paths.get(snapshotFileName));
+            if(snapshot.exists()){
+                final long startTime = System.currentTimeMillis();
+                final int loaded = thingifier.loadSnapshot(snapshot);
+                System.out.println(String.format("Loaded %d instances from snapshot %s in %d ms",
+                        loaded, snapshotFileName, System.currentTimeMillis()-startTime));
+                snapshotSegment = snapshot.getJournalSegment();
+            }
+            final Thingifier saveFrom = thingifier;
+            final ModelSnapshot saveTo = snapshot;
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> saveFrom.writeSnapshot(saveTo)));
+        }
+
+        // the journal entries made since the snapshot are replayed onto it
+        if(journalFileName!=null){
+            final int replayed = thingifier.useJournal(new FileJournal(Paths.get(journalFileName)), snapshotSegment);
+            System.out.println(String.format("Replayed %d journal entries from %s", replayed, journalFileName));
+        }
+
         restServer = new ThingifierRestServer( "",
                                     thingifier,
                                     apiDefn,
@@ -300,6 +399,20 @@ public class MainImplementation {
         return restServer;
     }
 
+    private void storeFieldsOffHeap() {
+        for(String thingAndField : offHeapFieldNames){
+            final String[] names = thingAndField.split("\\.");
+            final Thing thing = names.length==2 ? thingifier.getThingNamed(names[0]) : null;
+            final Field field = thing==null ? null : thing.definition().getField(names[1]);
+            if(field==null || field.getType()!=FieldType.STRING){
+                System.out.println("Invalid off heap field " + thingAndField + ", expected thing.field for a STRING field");
+                continue;
+            }
+            field.storeOffHeap();
+            System.out.println("Holding the text of " + thingAndField + " off heap");
+        }
+    }
+
     public void addBuiltInArgConfiguredHooks() {
 
         if(clearDataPeriodically) {
@@ -307,6 +420,11 @@ public class MainImplementation {
                     new ClearDataPreSparkRequestHook(clearDownMinutes, thingifier));
         }
 
+        if(snapshot!=null && snapshotMinutes>0) {
+            restServer.registerPreRequestHook(
+                    new SnapshotPreSparkRequestHook(snapshotMinutes, thingifier, snapshot));
+        }
+
         if(verboseMode){
             restServer.registerPreRequestHook(
                     new LogTheSparkRequestHook());
@@ -0,0 +1,34 @@
+package uk.co.compendiumdev.thingifier.application.sparkhttpmessageHooks;
+
+import spark.Request;
+import spark.Response;
+import uk.co.compendiumdev.thingifier.Thingifier;
+import uk.co.compendiumdev.thingifier.core.snapshot.ModelSnapshot;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SnapshotPreSparkRequestHook implements SparkRequestResponseHook {
+    private final AtomicLong lastSnapshot;
+    private final Thingifier thingifier;
+    private final ModelSnapshot snapshot;
+    private final long maxgap;
+
+    public SnapshotPreSparkRequestHook(final int minutes, Thingifier thingifier, ModelSnapshot snapshot) {
+        this.lastSnapshot = new AtomicLong(System.currentTimeMillis());
+        this.thingifier = thingifier;
+        this.snapshot = snapshot;
+        this.maxgap = minutes*60_000L;
+    }
+
+    @Override
+    public void run(final Request request, final Response response) {
+        long currentTime = System.currentTimeMillis();
+        long previousSnapshot = lastSnapshot.get();
+        long gap = currentTime-previousSnapshot;
+        // only the request which moves the time on writes the snapshot
+        if(gap>maxgap && lastSnapshot.compareAndSet(previousSnapshot, currentTime)){
+            // the request does not wait for the snapshot to be written
+            thingifier.writeSnapshotInBackground(snapshot);
+        }
+    }
+}
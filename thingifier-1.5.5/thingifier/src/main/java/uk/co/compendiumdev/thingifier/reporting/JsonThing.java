@@ -57,15 +57,19 @@ public class JsonThing {
 
 
 
-    public JsonObject asJsonObject(final InstanceFields fields){
+    public JsonObject asJsonObject(final InstanceFields instanceFields){
         final JsonObject jsonobj = new JsonObject();
 
-        if (fields == null) {
+        if (instanceFields == null) {
             return jsonobj;
         }
 
-        for (String fieldName : fields.getDefinition().getFieldNames()) {
-            Field theField = fields.getDefinition().getField(fieldName);
+        // render one version of the values even if they are being amended
+        final FieldValue[] values = instanceFields.getValues();
+
+        // read with the Field handles so no names are looked up for each instance
+        for (Field theField : instanceFields.getDefinition().getFields()) {
+            final String fieldName = theField.getName();
             // if hiding guids then skip them
             if(!apiConfig.willRenderGuidsInResponse() && theField.getType()== FieldType.GUID)
                 continue;
@@ -73,24 +77,26 @@ public class JsonThing {
             String fieldValue = "";
 
             try {
-                fieldValue = fields.getFieldValue(theField.getName()).asString();
+                final FieldValue value = instanceFields.getFieldValue(values, theField);
+                fieldValue = value.asString();
 
                 if(apiConfig.willRenderFieldsAsDefinedTypes()) {
+                    // values are typed when set so these do not parse the string
                     switch (theField.getType()) {
                         case BOOLEAN:
-                            jsonobj.addProperty(fieldName, Boolean.valueOf(fieldValue));
+                            jsonobj.addProperty(fieldName, value.asBoolean());
                             break;
                         case INTEGER:
-                            jsonobj.addProperty(fieldName, Integer.valueOf(fieldValue));
+                            jsonobj.addProperty(fieldName, value.asInteger());
                             break;
                         case FLOAT:
-                            jsonobj.addProperty(fieldName, Float.valueOf(fieldValue));
+                            jsonobj.addProperty(fieldName, value.asFloat());
                             break;
                         case ID:
-                            jsonobj.addProperty(fieldName, Integer.valueOf(fieldValue));
+                            jsonobj.addProperty(fieldName, value.asInteger());
                             break;
                         case OBJECT:
-                            final FieldValue objectFieldValue = fields.getFieldValue(fieldName);
+                            final FieldValue objectFieldValue = value;
                             if(objectFieldValue!=null) {
                                 jsonobj.add(fieldName, asJsonObject(
                                         objectFieldValue.asObject()));
@@ -102,7 +108,7 @@ public class JsonThing {
                 }else {
                     // output as string
                     if(theField.getType()==FieldType.OBJECT){
-                        final FieldValue objectFieldValue = fields.getFieldValue(fieldName);
+                        final FieldValue objectFieldValue = value;
                         if(objectFieldValue!=null) {
                             jsonobj.add(fieldName, asJsonObject(
                                     objectFieldValue.asObject()));
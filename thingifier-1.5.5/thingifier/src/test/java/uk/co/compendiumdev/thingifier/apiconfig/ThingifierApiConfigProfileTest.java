@@ -16,4 +16,22 @@ public class ThingifierApiConfigProfileTest {
         Assertions.assertEquals("desc", profile.getDescription());
         Assertions.assertNotNull(profile.apiConfig());
     }
+
+    @Test
+    public void parallelQueryThresholdIsCopiedFromAProfile(){
+
+        final ThingifierApiConfigProfile profile =
+                new ThingifierApiConfigProfile("name", "desc");
+        profile.apiConfig().setParallelQueryThreshold(500);
+
+        final ThingifierApiConfig config = new ThingifierApiConfig();
+        Assertions.assertEquals(ThingifierApiConfig.DEFAULT_PARALLEL_QUERY_THRESHOLD,
+                config.getParallelQueryThreshold());
+
+        config.setFrom(profile.apiConfig());
+        Assertions.assertEquals(500, config.getParallelQueryThreshold());
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> config.setParallelQueryThreshold(0));
+    }
 }